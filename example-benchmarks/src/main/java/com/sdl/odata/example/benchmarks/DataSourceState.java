@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.benchmarks;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.processor.query.QueryOperation;
+import com.sdl.odata.example.Person;
+import com.sdl.odata.example.datasource.ChangeJournal;
+import com.sdl.odata.example.datasource.ColumnarDataSource;
+import com.sdl.odata.example.datasource.EntityAccessorRegistry;
+import com.sdl.odata.example.datasource.InMemoryDataSource;
+import com.sdl.odata.example.datasource.ParallelScanExecutor;
+import com.sdl.odata.example.datasource.PersonDataSource;
+import com.sdl.odata.example.datasource.QueryMetrics;
+import com.sdl.odata.example.datasource.QueryPlanCache;
+import com.sdl.odata.example.datasource.StrategyBuilder;
+import com.sdl.odata.example.datasource.WriteAheadLog;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+
+/**
+ * A data source seeded with synthetic persons, shared by all benchmark threads. The number of persons, the storage
+ * backend, parallel scanning, metrics recording and the query plan cache are benchmark parameters, so they can be
+ * overridden from the command line, for example '-p size=10000000 -p storage=columnar'.
+ */
+@State(Scope.Benchmark)
+public class DataSourceState {
+    private static final int LOAD_BATCH_SIZE = 100000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"heap", "columnar"})
+    public String storage;
+
+    @Param({"false"})
+    public boolean parallel;
+
+    @Param({"true"})
+    public boolean metrics;
+
+    @Param({"true", "false"})
+    public boolean planCache;
+
+    private ParallelScanExecutor scanExecutor;
+    private PersonDataSource dataSource;
+    private QueryPlanCache queryPlanCache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ODataException {
+        EntityAccessorRegistry entityAccessorRegistry = new EntityAccessorRegistry();
+        scanExecutor = parallel ? new ParallelScanExecutor(true, 100000, 0) : ParallelScanExecutor.sequential();
+        dataSource = createDataSource(entityAccessorRegistry, new QueryMetrics(metrics));
+        queryPlanCache = new QueryPlanCache(entityAccessorRegistry, planCache, 1024);
+
+        for (int from = 0; from < size; from += LOAD_BATCH_SIZE) {
+            dataSource.createAll(SyntheticPersons.generate(from, Math.min(LOAD_BATCH_SIZE, size - from)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        scanExecutor.destroy();
+    }
+
+    private PersonDataSource createDataSource(EntityAccessorRegistry entityAccessorRegistry, QueryMetrics queryMetrics) {
+        switch (storage) {
+            case "heap":
+                return new InMemoryDataSource(entityAccessorRegistry, scanExecutor, WriteAheadLog.disabled(),
+                        queryMetrics, ChangeJournal.disabled());
+            case "columnar":
+                return new ColumnarDataSource(entityAccessorRegistry, scanExecutor, queryMetrics,
+                        ChangeJournal.disabled());
+            default:
+                throw new IllegalArgumentException("Unknown storage: " + storage);
+        }
+    }
+
+    public PersonDataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Plans the given query the way the data source provider does for a request without an inline count.
+     */
+    public StrategyBuilder plan(QueryOperation operation) throws ODataException {
+        return queryPlanCache.plan(operation, false);
+    }
+
+    /**
+     * Plans and runs the given query the way the data source provider does for a request without an inline count.
+     */
+    public List<Person> query(QueryOperation operation) throws ODataException {
+        return dataSource.query(plan(operation));
+    }
+
+    public long count(QueryOperation operation) throws ODataException {
+        return dataSource.count(queryPlanCache.plan(operation, false));
+    }
+}
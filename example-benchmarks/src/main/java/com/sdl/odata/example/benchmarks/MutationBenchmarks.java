@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.benchmarks;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.processor.query.CriteriaFilterOperation;
+import com.sdl.odata.api.processor.query.LiteralCriteriaValue;
+import com.sdl.odata.api.processor.query.PropertyCriteriaValue;
+import com.sdl.odata.api.processor.query.SelectOperation;
+import com.sdl.odata.example.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks of concurrent writes, mixing creates and updates with queries on the same data source. Creates add
+ * persons after the seeded ones, so the data source grows for the duration of a trial; updates change the age of
+ * a random seeded person, which moves it in the sorted age index and the maintained aggregates.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class MutationBenchmarks {
+
+    /**
+     * Hands out the indexes of the persons to create, counted from after the seeded persons. JMH 1.11 rejects a
+     * state whose setup takes another state, so the seeded size is added when a key is handed out.
+     */
+    @State(Scope.Benchmark)
+    public static class NewKeys {
+        private final AtomicInteger next = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            next.set(0);
+        }
+
+        int next(DataSourceState state) {
+            return state.size + next.getAndIncrement();
+        }
+    }
+
+    @Benchmark
+    @Group("writes")
+    @GroupThreads(1)
+    public Object writesCreate(DataSourceState state, NewKeys keys) throws ODataException {
+        return create(state, keys);
+    }
+
+    @Benchmark
+    @Group("writes")
+    @GroupThreads(3)
+    public Object writesUpdate(DataSourceState state) throws ODataException {
+        return update(state);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Object mixedCreate(DataSourceState state, NewKeys keys) throws ODataException {
+        return create(state, keys);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Object mixedUpdate(DataSourceState state) throws ODataException {
+        return update(state);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public List<Person> mixedQuery(DataSourceState state) throws ODataException {
+        String lastName = SyntheticPersons.lastName(ThreadLocalRandom.current().nextInt(SyntheticPersons.LAST_NAMES));
+        return state.query(new CriteriaFilterOperation(new SelectOperation("Persons", false),
+                new PropertyCriteriaValue("lastName").eq(new LiteralCriteriaValue(lastName))));
+    }
+
+    private static Object create(DataSourceState state, NewKeys keys) throws ODataException {
+        return state.getDataSource().create(null, SyntheticPersons.person(keys.next(state)), null);
+    }
+
+    private static Object update(DataSourceState state) throws ODataException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Person person = SyntheticPersons.person(random.nextInt(state.size));
+        return state.getDataSource().update(null, new Person(person.getPersonId(), person.getFirstName(),
+                person.getLastName(), random.nextInt(SyntheticPersons.AGES)), null);
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.benchmarks;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.parser.ODataUriUtil;
+import com.sdl.odata.api.processor.query.CountOperation;
+import com.sdl.odata.api.processor.query.CriteriaFilterOperation;
+import com.sdl.odata.api.processor.query.LimitOperation;
+import com.sdl.odata.api.processor.query.LiteralCriteriaValue;
+import com.sdl.odata.api.processor.query.OrderByOperation;
+import com.sdl.odata.api.processor.query.OrderByProperty;
+import com.sdl.odata.api.processor.query.PropertyCriteriaValue;
+import com.sdl.odata.api.processor.query.QueryOperation;
+import com.sdl.odata.api.processor.query.SelectByKeyOperation;
+import com.sdl.odata.api.processor.query.SelectOperation;
+import com.sdl.odata.api.processor.query.SkipOperation;
+import com.sdl.odata.example.Person;
+import com.sdl.odata.example.datasource.StrategyBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import scala.collection.immutable.Map;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the query paths of the data sources. Every invocation builds its query operation from random
+ * values, as the OData framework does for every request, so the numbers include planning against the plan cache but
+ * never hit the same results twice. Throughput and sampled latency percentiles are reported for every benchmark.
+ *
+ * The planning benchmark only plans a query without running it, so its allocation rate per operation, as reported
+ * by the GC profiler, can be compared with and without the plan cache ('-p planCache=true,false').
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class QueryBenchmarks {
+    private static final String ENTITY_SET = "Persons";
+    private static final int PAGE_SIZE = 20;
+    private static final int MAX_PAGE_OFFSET = 10000;
+    private static final int RANGE_LIMIT = 100;
+
+    @Benchmark
+    public List<Person> keyLookup(DataSourceState state) throws ODataException {
+        String key = SyntheticPersons.key(ThreadLocalRandom.current().nextInt(state.size));
+        return state.query(new SelectByKeyOperation(select(), new Map.Map1<>("id", key)));
+    }
+
+    @Benchmark
+    public List<Person> equalityFilter(DataSourceState state) throws ODataException {
+        String lastName = SyntheticPersons.lastName(ThreadLocalRandom.current().nextInt(SyntheticPersons.LAST_NAMES));
+        return state.query(new CriteriaFilterOperation(select(), property("lastName").eq(literal(lastName))));
+    }
+
+    @Benchmark
+    public List<Person> rangeFilter(DataSourceState state) throws ODataException {
+        int from = ThreadLocalRandom.current().nextInt(SyntheticPersons.AGES - 5);
+        return state.query(new LimitOperation(new CriteriaFilterOperation(select(),
+                property("age").ge(literal(from)).and(property("age").lt(literal(from + 5)))), RANGE_LIMIT));
+    }
+
+    @Benchmark
+    public List<Person> paging(DataSourceState state) throws ODataException {
+        int skip = ThreadLocalRandom.current().nextInt(Math.max(1, Math.min(state.size - PAGE_SIZE, MAX_PAGE_OFFSET)));
+        QueryOperation ordered = new OrderByOperation(select(),
+                ODataUriUtil.asScalaList(Collections.singletonList(OrderByProperty.asc("age"))));
+        return state.query(new LimitOperation(new SkipOperation(ordered, skip), PAGE_SIZE));
+    }
+
+    @Benchmark
+    public long count(DataSourceState state) throws ODataException {
+        int age = ThreadLocalRandom.current().nextInt(SyntheticPersons.AGES);
+        return state.count(new CountOperation(new CriteriaFilterOperation(select(),
+                property("age").gt(literal(age))), true));
+    }
+
+    @Benchmark
+    public StrategyBuilder planning(DataSourceState state) throws ODataException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String lastName = SyntheticPersons.lastName(random.nextInt(SyntheticPersons.LAST_NAMES));
+        int from = random.nextInt(SyntheticPersons.AGES - 5);
+        QueryOperation filtered = new CriteriaFilterOperation(select(), property("lastName").eq(literal(lastName))
+                .and(property("age").ge(literal(from)).and(property("age").lt(literal(from + 5)))));
+        QueryOperation ordered = new OrderByOperation(filtered,
+                ODataUriUtil.asScalaList(Collections.singletonList(OrderByProperty.asc("age"))));
+        return state.plan(new LimitOperation(new SkipOperation(ordered, random.nextInt(MAX_PAGE_OFFSET)), PAGE_SIZE));
+    }
+
+    @Benchmark
+    public OptionalDouble averageAge(DataSourceState state) {
+        return state.getDataSource().averageAge();
+    }
+
+    private static SelectOperation select() {
+        return new SelectOperation(ENTITY_SET, false);
+    }
+
+    private static PropertyCriteriaValue property(String name) {
+        return new PropertyCriteriaValue(name);
+    }
+
+    private static LiteralCriteriaValue literal(Object value) {
+        return new LiteralCriteriaValue(value);
+    }
+}
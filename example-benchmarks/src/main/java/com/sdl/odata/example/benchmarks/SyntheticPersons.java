@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.benchmarks;
+
+import com.sdl.odata.example.Person;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates the synthetic persons the benchmarks run against. Every person is derived from its index only, so a
+ * benchmark can pick existing keys and property values at random without looking at the data source.
+ */
+public final class SyntheticPersons {
+    public static final int LAST_NAMES = 1000;
+    public static final int AGES = 100;
+
+    private static final String[] FIRST_NAMES = {
+            "Darkwing", "Mickey", "Minnie", "Donald", "Daisy", "Scrooge", "Huey", "Dewey", "Louie", "Goofy",
+            "Pluto", "Gyro", "Launchpad", "Gosalyn", "Webby", "Ludwig", "Gladstone", "Magica", "Fethry", "Clarabelle"
+    };
+
+    private SyntheticPersons() {
+    }
+
+    public static String key(int index) {
+        return "person-" + index;
+    }
+
+    public static String lastName(int index) {
+        return "Lastname" + (index % LAST_NAMES);
+    }
+
+    public static Person person(int index) {
+        //Spread the ages with a multiplicative hash so they are not correlated with the last names
+        int age = (int) (((index * 2654435761L) >>> 16) % AGES);
+        return new Person(key(index), FIRST_NAMES[index % FIRST_NAMES.length], lastName(index), age);
+    }
+
+    public static List<Person> generate(int from, int count) {
+        List<Person> persons = new ArrayList<>(count);
+        for (int i = from; i < from + count; i++) {
+            persons.add(person(i));
+        }
+        return persons;
+    }
+}
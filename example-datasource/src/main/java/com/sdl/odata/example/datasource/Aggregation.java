@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataBadRequestException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A grouping and aggregation request, in the groupby and aggregate transformations of the OData data aggregation
+ * extension:
+ * <pre>
+ *     groupby((lastName),aggregate(age with average as averageAge,$count as count))
+ *     groupby((lastName,firstName))
+ *     aggregate(age with max as oldest,firstName with countdistinct as firstNames)
+ * </pre>
+ * Sum, min, max and average apply to int properties, countdistinct to any property.
+ */
+public final class Aggregation {
+    private static final Pattern GROUP_BY = Pattern.compile(
+            "groupby\\(\\(([^)]*)\\)(?:\\s*,\\s*(aggregate\\(.*\\)))?\\)");
+    private static final Pattern AGGREGATE = Pattern.compile("aggregate\\((.*)\\)");
+    private static final Pattern EXPRESSION = Pattern.compile("(\\S+)\\s+with\\s+(\\w+)\\s+as\\s+(\\w+)");
+    private static final Pattern COUNT = Pattern.compile("\\$count\\s+as\\s+(\\w+)");
+
+    /**
+     * The aggregation methods.
+     */
+    public enum Method {
+        SUM, MIN, MAX, AVERAGE, COUNTDISTINCT, COUNT
+    }
+
+    private final List<String> groupBy;
+    private final List<Aggregate> aggregates;
+
+    public Aggregation(List<String> groupBy, List<Aggregate> aggregates) {
+        this.groupBy = Collections.unmodifiableList(new ArrayList<>(groupBy));
+        this.aggregates = Collections.unmodifiableList(new ArrayList<>(aggregates));
+    }
+
+    public static Aggregation parse(String apply) throws ODataBadRequestException {
+        String transformation = apply == null ? "" : apply.trim();
+
+        Matcher groupBy = GROUP_BY.matcher(transformation);
+        if (groupBy.matches()) {
+            List<String> properties = new ArrayList<>();
+            for (String property : groupBy.group(1).split(",")) {
+                if (!property.trim().isEmpty()) {
+                    properties.add(property.trim());
+                }
+            }
+            if (properties.isEmpty()) {
+                throw new ODataBadRequestException("groupby needs at least one property: " + apply);
+            }
+            String aggregate = groupBy.group(2);
+            return new Aggregation(properties,
+                    aggregate == null ? Collections.<Aggregate>emptyList() : parseAggregates(aggregate, apply));
+        }
+
+        return new Aggregation(Collections.<String>emptyList(), parseAggregates(transformation, apply));
+    }
+
+    private static List<Aggregate> parseAggregates(String transformation, String apply)
+            throws ODataBadRequestException {
+        Matcher aggregate = AGGREGATE.matcher(transformation);
+        if (!aggregate.matches()) {
+            throw new ODataBadRequestException("Unsupported aggregation, expected groupby or aggregate: " + apply);
+        }
+
+        List<Aggregate> aggregates = new ArrayList<>();
+        for (String expression : aggregate.group(1).split(",")) {
+            String trimmed = expression.trim();
+            Matcher count = COUNT.matcher(trimmed);
+            Matcher with = EXPRESSION.matcher(trimmed);
+            if (count.matches()) {
+                aggregates.add(new Aggregate(null, Method.COUNT, count.group(1)));
+            } else if (with.matches()) {
+                aggregates.add(new Aggregate(with.group(1), method(with.group(2)), with.group(3)));
+            } else {
+                throw new ODataBadRequestException("Invalid aggregate expression: " + trimmed);
+            }
+        }
+        return aggregates;
+    }
+
+    private static Method method(String name) throws ODataBadRequestException {
+        try {
+            Method method = Method.valueOf(name.toUpperCase(Locale.ENGLISH));
+            if (method != Method.COUNT) {
+                return method;
+            }
+        } catch (IllegalArgumentException e) {
+            //reported below
+        }
+        throw new ODataBadRequestException("Unsupported aggregation method: " + name);
+    }
+
+    public List<String> getGroupBy() {
+        return groupBy;
+    }
+
+    public List<Aggregate> getAggregates() {
+        return aggregates;
+    }
+
+    /**
+     * A single aggregated value: the method applied to a property, or the count of the group, under an alias.
+     */
+    public static final class Aggregate {
+        private final String property;
+        private final Method method;
+        private final String alias;
+
+        public Aggregate(String property, Method method, String alias) {
+            this.property = property;
+            this.method = method;
+            this.alias = alias;
+        }
+
+        /**
+         * The aggregated property, null for the count of the group.
+         */
+        public String getProperty() {
+            return property;
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+
+        public String getAlias() {
+            return alias;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataBadRequestException;
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.ODataNotImplementedException;
+import com.sdl.odata.example.Person;
+import com.sdl.odata.example.PersonChange;
+import com.sdl.odata.example.PersonChanges;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Append-only journal of the changes to persons, for clients that keep a copy of the persons in sync. Every
+ * create, update and delete gets the next sequence number, and clients ask for the changes after the delta token of
+ * their last sync instead of reading all persons again, so syncing costs in proportion to the changes.
+ *
+ * The journal is compacted as it is written: a new change to a person replaces its earlier change, so the journal
+ * holds at most one change per person, the latest. Retention is bounded by 'odata.example.changes.retention'
+ * changes, the oldest are dropped beyond that. A delta token from before the oldest dropped change, or from before a
+ * restart, has expired and the client has to read all persons again.
+ *
+ * Changes are written under the monitor of the journal, reads never wait.
+ *
+ * The journal is switched on with 'odata.example.changes.enabled', as it costs memory and a synchronized write on
+ * every change whether any client syncs or not.
+ */
+@Component
+public class ChangeJournal {
+    private static final Logger LOG = LoggerFactory.getLogger(ChangeJournal.class);
+
+    private final boolean enabled;
+    private final int retention;
+    private final int maxPageSize;
+    //Sequences restart with the journal, the epoch tells the tokens of an earlier journal apart
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final NavigableMap<Long, Change> changes = new ConcurrentSkipListMap<>();
+    private final Map<String, Long> sequences = new HashMap<>();
+    private volatile long lastSequence;
+    private volatile long droppedThrough;
+
+    @Autowired
+    public ChangeJournal(@Value("${odata.example.changes.enabled:false}") boolean enabled,
+                         @Value("${odata.example.changes.retention:100000}") int retention,
+                         @Value("${odata.example.changes.max-page-size:1000}") int maxPageSize) {
+        this.enabled = enabled;
+        this.retention = retention;
+        this.maxPageSize = maxPageSize;
+        LOG.debug("Change journal enabled: {}, retention: {}", enabled, retention);
+    }
+
+    /**
+     * Returns a journal that records nothing, for use outside of a Spring context.
+     */
+    public static ChangeJournal disabled() {
+        return new ChangeJournal(false, 0, 0);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records a change to a person, called by the data source with the person it replaced or removed and the
+     * person it stored, either one null for a create or a delete. Changes to one person must be recorded in the
+     * order they were applied, and only once they are as durable as the data source makes them: a client that synced
+     * a change must not see it disappear after a failed commit or a restart.
+     */
+    public void record(Person previous, Person current) {
+        if (!enabled || (previous == null && current == null)) {
+            return;
+        }
+
+        String key = current != null ? current.getPersonId() : previous.getPersonId();
+        synchronized (this) {
+            long sequence = lastSequence + 1;
+            Long superseded = sequences.put(key, sequence);
+            if (superseded != null) {
+                changes.remove(superseded);
+            }
+            changes.put(sequence, new Change(key, current));
+            //Published after the change is in place, so readers see every change up to the last sequence
+            lastSequence = sequence;
+
+            while (sequences.size() > retention) {
+                Map.Entry<Long, Change> oldest = changes.pollFirstEntry();
+                sequences.remove(oldest.getValue().key);
+                droppedThrough = oldest.getKey();
+            }
+        }
+    }
+
+    /**
+     * Returns the changes after the given delta token, at most 'odata.example.changes.max-page-size' of them. An
+     * empty token returns no changes but the current token: a client reads it before reading all persons, and
+     * syncs from it after.
+     *
+     * @throws ODataBadRequestException If the token is malformed or has expired
+     */
+    public PersonChanges changesSince(String deltaToken) throws ODataException {
+        if (!enabled) {
+            throw new ODataNotImplementedException("Change tracking is switched off");
+        }
+
+        long last = lastSequence;
+        if (deltaToken == null || deltaToken.isEmpty()) {
+            return new PersonChanges(token(last), false, Collections.emptyList());
+        }
+
+        long since = parse(deltaToken);
+        if (since > last) {
+            throw new ODataBadRequestException("Invalid delta token: " + deltaToken);
+        }
+
+        List<PersonChange> page = new ArrayList<>();
+        long through = last;
+        boolean hasMore = false;
+        for (Map.Entry<Long, Change> entry : changes.subMap(since, false, last, true).entrySet()) {
+            if (page.size() == maxPageSize) {
+                hasMore = true;
+                break;
+            }
+            page.add(new PersonChange(entry.getKey(), entry.getValue().key, entry.getValue().person));
+            through = entry.getKey();
+        }
+
+        //Checked after reading, as changes after the token may have been dropped while they were read
+        if (since < droppedThrough) {
+            throw new ODataBadRequestException("The delta token has expired, all persons have to be read again");
+        }
+        return new PersonChanges(token(through), hasMore, page);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("enabled", enabled);
+        values.put("size", changes.size());
+        values.put("lastSequence", lastSequence);
+        values.put("droppedThrough", droppedThrough);
+        return values;
+    }
+
+    private String token(long sequence) {
+        return epoch + "." + sequence;
+    }
+
+    private long parse(String deltaToken) throws ODataException {
+        int separator = deltaToken.indexOf('.');
+        if (separator < 0 || !deltaToken.substring(0, separator).equals(epoch)) {
+            throw new ODataBadRequestException("The delta token has expired, all persons have to be read again");
+        }
+        try {
+            return Long.parseLong(deltaToken.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new ODataBadRequestException("Invalid delta token: " + deltaToken);
+        }
+    }
+
+    /**
+     * The latest change to a person, its state after the change or null if it was deleted.
+     */
+    private static final class Change {
+        private final String key;
+        private final Person person;
+
+        private Change(String key, Person person) {
+            this.key = key;
+            this.person = person;
+        }
+    }
+}
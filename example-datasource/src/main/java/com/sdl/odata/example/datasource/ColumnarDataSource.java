@@ -0,0 +1,354 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.ODataSystemException;
+import com.sdl.odata.api.edm.model.EntityDataModel;
+import com.sdl.odata.api.parser.ODataUri;
+import com.sdl.odata.api.parser.ODataUriUtil;
+import com.sdl.odata.api.processor.datasource.ODataDataSourceException;
+import com.sdl.odata.api.processor.datasource.TransactionalDataSource;
+import com.sdl.odata.api.processor.link.ODataLink;
+import com.sdl.odata.example.AggregateGroup;
+import com.sdl.odata.example.Person;
+import com.sdl.odata.example.datasource.PersonColumns.PersonRow;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import scala.Option;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Data source keeping persons in {@link PersonColumns} instead of as one object per person. Filters and orderings
+ * are compiled against the columns and counts run directly over them, persons are only materialized for the
+ * rows in the returned page.
+ *
+ * This backend scans the columns for every query, the secondary indexes of the {@link InMemoryDataSource} are not
+ * maintained here.
+ */
+@Component
+public class ColumnarDataSource implements PersonDataSource {
+    private final PersonColumns columns;
+
+    private final EntityAggregates<Person> aggregates;
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final PersonLinks links = new PersonLinks(version::incrementAndGet);
+
+    private final ParallelScanExecutor scanExecutor;
+
+    private final QueryMetrics metrics;
+
+    private final ChangeJournal changeJournal;
+
+    @Autowired
+    public ColumnarDataSource(EntityAccessorRegistry entityAccessorRegistry, ParallelScanExecutor scanExecutor,
+                              QueryMetrics queryMetrics, ChangeJournal changeJournal) {
+        this.scanExecutor = scanExecutor;
+        this.metrics = queryMetrics;
+        this.changeJournal = changeJournal;
+        this.aggregates = new EntityAggregates<>(this::persons);
+        this.columns = new PersonColumns(this::changed);
+        aggregates.registerNumericProperties(entityAccessorRegistry.getAccessors(Person.class));
+    }
+
+    @Override
+    public Object create(ODataUri oDataUri, Object o, EntityDataModel entityDataModel) throws ODataException {
+        Person person = (Person) o;
+        if(!aggregates.maintain(() -> columns.insert(person))) {
+            throw new ODataDataSourceException("Could not create entity, already exists");
+        }
+        return person;
+    }
+
+    @Override
+    public Object update(ODataUri oDataUri, Object o, EntityDataModel entityDataModel) throws ODataException {
+        Person person = (Person) o;
+        if(!aggregates.maintain(() -> columns.update(person))) {
+            throw new ODataDataSourceException("Unable to update person, entity does not exist");
+        }
+        return person;
+    }
+
+    @Override
+    public int createAll(Collection<Person> persons) {
+        return aggregates.maintain(() -> columns.insertAll(persons));
+    }
+
+    @Override
+    public void delete(ODataUri oDataUri, EntityDataModel entityDataModel) throws ODataException {
+        Option<Object> entity = ODataUriUtil.extractEntityWithKeys(oDataUri, entityDataModel);
+        if(entity.isDefined()) {
+            Person person = (Person) entity.get();
+            aggregates.maintain(() -> columns.delete(person.getPersonId()));
+        }
+    }
+
+    @Override
+    public TransactionalDataSource startTransaction() {
+        throw new ODataSystemException("No support for transactions");
+    }
+
+    @Override
+    public void createLink(ODataUri oDataUri, ODataLink oDataLink, EntityDataModel entityDataModel) throws ODataException {
+        changeLink(PersonLinks.toAssignment(oDataLink));
+    }
+
+    @Override
+    public void deleteLink(ODataUri oDataUri, ODataLink oDataLink, EntityDataModel entityDataModel) throws ODataException {
+        changeLink(PersonLinks.toRemoval(oDataLink));
+    }
+
+    /**
+     * Changes a link under the write lock of the columns, which deletes hold as well, so neither person can be
+     * deleted between checking that it exists and changing the link.
+     */
+    private void changeLink(PersonLinks.Assignment assignment) throws ODataException {
+        columns.write(() -> {
+            assignment.checkExists(key -> columns.rowOf(key) >= 0);
+            if (links.changes(assignment)) {
+                links.assign(assignment);
+            }
+            return null;
+        });
+    }
+
+    public PersonColumns getColumns() {
+        return columns;
+    }
+
+    @Override
+    public List<AggregateGroup> aggregate(Aggregation aggregation) throws ODataException {
+        GroupAggregator<PersonRow> aggregator = new GroupAggregator<>(columns.getAccessors(), aggregation);
+        return columns.read(() -> {
+            boolean parallel = scanExecutor.isParallel(columns.size());
+            return scan(parallel, () -> aggregator.aggregate(liveRows(parallel).mapToObj(PersonRow::new)));
+        });
+    }
+
+    @Override
+    public EntityAggregates<Person> getAggregates() {
+        return aggregates;
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    public long size() throws ODataException {
+        return columns.read(columns::size);
+    }
+
+    @Override
+    public Map<String, Person> getAll(Collection<String> keys) throws ODataException {
+        return columns.read(() -> {
+            Map<String, Person> persons = new HashMap<>();
+            for (String key : keys) {
+                int row = columns.rowOf(key);
+                if (row >= 0) {
+                    persons.put(key, columns.materialize(row));
+                }
+            }
+            return persons;
+        });
+    }
+
+    @Override
+    public PersonLinks getLinks() {
+        return links;
+    }
+
+    @Override
+    public ChangeJournal getChangeJournal() {
+        return changeJournal;
+    }
+
+    @Override
+    public long count(StrategyBuilder builder) throws ODataException {
+        Predicate<PersonRow> predicate = compile(builder);
+        return columns.read(() -> {
+            recordAccess(builder);
+            if (isParallel(builder)) {
+                return scanExecutor.execute(() -> rows(builder, predicate, true).count());
+            }
+            return rows(builder, predicate, false).count();
+        });
+    }
+
+    @Override
+    public List<Person> query(StrategyBuilder builder) throws ODataException {
+        Predicate<PersonRow> predicate = compilePage(builder);
+        Comparator<PersonRow> orderBy = StrategyBuilder.buildComparator(columns.getAccessors(),
+                builder.getOrderByProperties(), row -> columns.key(row.getRow()));
+        int skip = builder.getSkip();
+        int limit = builder.getLimit();
+
+        return columns.read(() -> {
+            recordAccess(builder);
+            boolean parallel = isParallel(builder);
+            if (orderBy != null) {
+                long pageEnd = (long) skip + limit;
+                if (limit != Integer.MAX_VALUE && pageEnd <= Integer.MAX_VALUE) {
+                    List<PersonRow> top = scan(parallel, () -> rows(builder, predicate, parallel)
+                            .mapToObj(PersonRow::new).collect(TopK.collector(orderBy, (int) pageEnd)));
+                    return skip >= top.size() ? Collections.<Person>emptyList() : materialize(top.subList(skip, top.size()));
+                }
+
+                List<PersonRow> sorted = scan(parallel, () -> paginate(rows(builder, predicate, parallel)
+                        .mapToObj(PersonRow::new).sorted(orderBy), skip, limit));
+                return materialize(sorted);
+            }
+
+            if (skip == 0 && limit == Integer.MAX_VALUE && parallel) {
+                return scanExecutor.execute(() -> rows(builder, predicate, true)
+                        .mapToObj(columns::materialize).collect(Collectors.toList()));
+            }
+
+            //unordered pages are cut from the row stream before any person is materialized
+            IntStream rows = rows(builder, predicate, false);
+            if (skip != 0) {
+                rows = rows.skip(skip);
+            }
+            if (limit != Integer.MAX_VALUE) {
+                rows = rows.limit(limit);
+            }
+            return rows.mapToObj(columns::materialize).collect(Collectors.toList());
+        });
+    }
+
+
+    /**
+     * Called by the columns for every change, under their write lock, which link changes take as well.
+     */
+    private void changed(Person previous, Person current) {
+        if (current == null) {
+            links.remove(previous.getPersonId());
+        }
+        aggregates.replace(previous, current);
+        changeJournal.record(previous, current);
+        version.incrementAndGet();
+    }
+
+    /**
+     * All persons, for filling an aggregate that is registered while no change is applied.
+     */
+    private Stream<Person> persons() {
+        return liveRows(false).mapToObj(columns::materialize);
+    }
+
+    private IntStream liveRows(boolean parallel) {
+        IntStream rows = IntStream.range(0, columns.getRowCount()).filter(columns::isLive);
+        return parallel ? rows.parallel() : rows;
+    }
+
+    private Predicate<PersonRow> compile(StrategyBuilder builder) throws ODataException {
+        return builder.compileFilters(columns.getAccessors());
+    }
+
+    /**
+     * Compiles the filters of the query, restricted to the rows after its $skiptoken position. There is no index to
+     * seek to the position in, so the rows before it are filtered out during the scan.
+     */
+    private Predicate<PersonRow> compilePage(StrategyBuilder builder) throws ODataException {
+        Predicate<PersonRow> predicate = compile(builder);
+        if (builder.getPosition() == null) {
+            return predicate;
+        }
+
+        Predicate<PersonRow> after = builder.getPosition().after(columns.getAccessors(),
+                builder.getOrderByProperties(), row -> columns.key(row.getRow()));
+        return predicate == null ? after : predicate.and(after);
+    }
+
+    /**
+     * Records the access path of the query and its number of candidate rows. Must be called within a scan of the
+     * columns.
+     */
+    private void recordAccess(StrategyBuilder builder) {
+        if (builder.isKeyLookup()) {
+            metrics.increment("access.key");
+            metrics.add("rows.candidates", columns.rowOf(builder.getKeyLookup()) < 0 ? 0 : 1);
+            return;
+        }
+
+        metrics.increment("access.scan");
+        if (scanExecutor.isParallel(columns.size())) {
+            metrics.increment("access.parallel");
+        }
+        metrics.add("rows.candidates", columns.size());
+    }
+
+    private boolean isParallel(StrategyBuilder builder) {
+        return !builder.isKeyLookup() && scanExecutor.isParallel(columns.size());
+    }
+
+    private <R> R scan(boolean parallel, Supplier<R> scan) throws ODataException {
+        return parallel ? scanExecutor.execute(scan) : scan.get();
+    }
+
+    /**
+     * Streams the numbers of the rows matching the query. Must be called within a scan of the columns.
+     */
+    private IntStream rows(StrategyBuilder builder, Predicate<PersonRow> predicate, boolean parallel) {
+        IntStream rows;
+        if (builder.isKeyLookup()) {
+            int row = columns.rowOf(builder.getKeyLookup());
+            rows = row < 0 ? IntStream.empty() : IntStream.of(row);
+        } else {
+            rows = liveRows(parallel);
+        }
+        return predicate == null ? rows : rows.filter(rowFilter(predicate, parallel));
+    }
+
+    private static IntPredicate rowFilter(Predicate<PersonRow> predicate, boolean parallel) {
+        if (parallel) {
+            ThreadLocal<PersonRow> cursors = ThreadLocal.withInitial(PersonRow::new);
+            return row -> predicate.test(cursors.get().at(row));
+        }
+        PersonRow cursor = new PersonRow();
+        return row -> predicate.test(cursor.at(row));
+    }
+
+    private static <T> List<T> paginate(Stream<T> stream, int skip, int limit) {
+        if (skip != 0) {
+            stream = stream.skip(skip);
+        }
+        if (limit != Integer.MAX_VALUE) {
+            stream = stream.limit(limit);
+        }
+        return stream.collect(Collectors.toList());
+    }
+
+    private List<Person> materialize(List<PersonRow> rows) {
+        return rows.stream().map(row -> columns.materialize(row.getRow())).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,868 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataBadRequestException;
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.ODataNotImplementedException;
+import com.sdl.odata.api.processor.query.AddOperator$;
+import com.sdl.odata.api.processor.query.AndOperator$;
+import com.sdl.odata.api.processor.query.ArithmeticCriteriaValue;
+import com.sdl.odata.api.processor.query.ArithmeticOperator;
+import com.sdl.odata.api.processor.query.ComparisonCriteria;
+import com.sdl.odata.api.processor.query.ComparisonOperator;
+import com.sdl.odata.api.processor.query.CompositeCriteria;
+import com.sdl.odata.api.processor.query.Criteria;
+import com.sdl.odata.api.processor.query.CriteriaValue;
+import com.sdl.odata.api.processor.query.DivOperator$;
+import com.sdl.odata.api.processor.query.EqOperator$;
+import com.sdl.odata.api.processor.query.GeOperator$;
+import com.sdl.odata.api.processor.query.GtOperator$;
+import com.sdl.odata.api.processor.query.LeOperator$;
+import com.sdl.odata.api.processor.query.LiteralCriteriaValue;
+import com.sdl.odata.api.processor.query.LtOperator$;
+import com.sdl.odata.api.processor.query.ModOperator$;
+import com.sdl.odata.api.processor.query.MulOperator$;
+import com.sdl.odata.api.processor.query.NeOperator$;
+import com.sdl.odata.api.processor.query.OrOperator$;
+import com.sdl.odata.api.processor.query.PropertyCriteriaValue;
+import com.sdl.odata.api.processor.query.SubOperator$;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Objects;
+import java.util.function.BinaryOperator;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.LongBinaryOperator;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Compiles a filter {@link Criteria} tree into a single short-circuiting {@link Predicate}. Literals are converted
+ * once to the type of the property they are compared with, and comparisons between an int property and an integral
+ * literal are compiled to unboxed int comparisons. Equality comparisons between a dictionary encoded property and a
+ * literal look the literal up in the dictionary once and compare int codes. Constant sub-expressions are folded at
+ * compile time.
+ *
+ * Arithmetic is integer arithmetic if both operands are of an integral type, and floating point arithmetic
+ * otherwise. A division by zero that can only be detected while evaluating raises an {@link ArithmeticException},
+ * which the provider reports as a bad request.
+ *
+ * Criteria shapes that cannot be evaluated result in an {@link ODataNotImplementedException} rather than being
+ * ignored, so an unsupported filter never returns unfiltered data.
+ *
+ * A filter can also be compiled into a {@link Template}, in which every literal is a parameter. Property access
+ * and everything that does not depend on a literal is resolved once. A comparison between an operand and a literal
+ * is chosen once for the type of the literal the template is compiled from, binding a literal of that type only
+ * converts and captures its value. Dictionary codes are looked up when binding, as the dictionary grows between
+ * queries.
+ *
+ * @param <T> The entity type the predicate is evaluated on
+ */
+public class CriteriaCompiler<T> {
+    private static final Predicate<Object> ALWAYS = e -> true;
+    private static final Predicate<Object> NEVER = e -> false;
+
+    private final EntityAccessors<T> accessors;
+
+    private int parameterCount;
+
+    public CriteriaCompiler(EntityAccessors<T> accessors) {
+        this.accessors = accessors;
+    }
+
+    /**
+     * The number of parameters of all templates compiled so far. The literals of consecutively compiled templates
+     * are numbered on from each other, left to right.
+     */
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    public Predicate<T> compile(Criteria criteria) throws ODataException {
+        if (criteria instanceof CompositeCriteria) {
+            return compileComposite((CompositeCriteria) criteria);
+        } else if (criteria instanceof ComparisonCriteria) {
+            return compileComparison((ComparisonCriteria) criteria);
+        }
+        throw new ODataNotImplementedException("Unsupported filter criteria: " + criteria);
+    }
+
+    /**
+     * Compiles the criteria into a template whose literals are parameters, numbered from left to right.
+     */
+    public Template<T> compileTemplate(Criteria criteria) throws ODataException {
+        if (criteria instanceof CompositeCriteria) {
+            CompositeCriteria composite = (CompositeCriteria) criteria;
+            Template<T> left = compileTemplate(composite.getLeft());
+            Template<T> right = compileTemplate(composite.getRight());
+            BinaryOperator<Predicate<T>> combiner = combiner(composite);
+            if (left instanceof Fixed && right instanceof Fixed) {
+                return new Fixed<>(combiner.apply(((Fixed<T>) left).predicate, ((Fixed<T>) right).predicate));
+            }
+            return parameters -> combiner.apply(left.bind(parameters), right.bind(parameters));
+        } else if (criteria instanceof ComparisonCriteria) {
+            ComparisonOperator operator = ((ComparisonCriteria) criteria).getOperator();
+            OperandTemplate<T> left = compileValueTemplate(((ComparisonCriteria) criteria).getLeft());
+            OperandTemplate<T> right = compileValueTemplate(((ComparisonCriteria) criteria).getRight());
+            if (left.isFixed() && right.isFixed()) {
+                return new Fixed<>(compileComparison(operator, left.fixed, right.fixed));
+            }
+            if (left.isFixed() && !left.fixed.isConstant() && right.isLiteral()) {
+                return compileLiteralComparison(operator, left.fixed, right);
+            }
+            if (right.isFixed() && !right.fixed.isConstant() && left.isLiteral()) {
+                return compileLiteralComparison(flip(operator), right.fixed, left);
+            }
+            return parameters -> compileComparison(operator, left.bind(parameters), right.bind(parameters));
+        }
+        throw new ODataNotImplementedException("Unsupported filter criteria: " + criteria);
+    }
+
+    private OperandTemplate<T> compileValueTemplate(CriteriaValue value) throws ODataException {
+        if (value instanceof LiteralCriteriaValue) {
+            return OperandTemplate.literal(parameterCount++, ((LiteralCriteriaValue) value).getValue());
+        } else if (value instanceof PropertyCriteriaValue) {
+            return OperandTemplate.fixed(compileValue(value));
+        } else if (value instanceof ArithmeticCriteriaValue) {
+            ArithmeticOperator operator = ((ArithmeticCriteriaValue) value).getOperator();
+            OperandTemplate<T> left = compileValueTemplate(((ArithmeticCriteriaValue) value).getLeft());
+            OperandTemplate<T> right = compileValueTemplate(((ArithmeticCriteriaValue) value).getRight());
+            if (left.isFixed() && right.isFixed()) {
+                return OperandTemplate.fixed(compileArithmetic(operator, left.fixed, right.fixed));
+            }
+            return OperandTemplate.parameter(parameters ->
+                    compileArithmetic(operator, left.bind(parameters), right.bind(parameters)));
+        }
+        throw new ODataNotImplementedException("Unsupported filter value: " + value);
+    }
+
+    /**
+     * Compiles a comparison between an operand and a literal parameter, oriented so that the literal is on the right.
+     * A bound literal of another type than the one the template is compiled from is compiled like any literal.
+     */
+    private Template<T> compileLiteralComparison(ComparisonOperator operator, Operand<T> value,
+                                                 OperandTemplate<T> literal) throws ODataException {
+        int index = literal.index;
+        Class<?> type = literal.sample == null ? null : literal.sample.getClass();
+        LiteralBinder<T> binder = literalBinder(operator, value, literal.sample);
+        return parameters -> {
+            Object parameter = parameters[index];
+            if (parameter == null ? type != null : parameter.getClass() != type) {
+                return compileComparison(operator, value, Operand.constant(parameter));
+            }
+            return binder.bind(parameter);
+        };
+    }
+
+    private LiteralBinder<T> literalBinder(ComparisonOperator operator, Operand<T> value, Object sample)
+            throws ODataException {
+        if (sample == null) {
+            Predicate<T> predicate = compileOrientedComparison(operator, value, Operand.constant(null));
+            return literal -> predicate;
+        }
+        if (value.isNumeric() && sample instanceof Number) {
+            return numericBinder(operator, value, (Number) sample);
+        }
+        if (value.isNumeric() || sample instanceof Number) {
+            throw new ODataBadRequestException("Cannot compare a numeric value with a non-numeric value");
+        }
+
+        Class<?> type = value.type;
+        Function<T, Object> getter = value.asObject();
+        boolean eq = operator instanceof EqOperator$;
+        if (eq || operator instanceof NeOperator$) {
+            if (value.accessor != null && value.accessor.isEncoded()) {
+                PropertyAccessor<T> accessor = value.accessor;
+                return literal -> compileCodeComparison(eq, accessor, convertConstant(literal, type));
+            }
+            return literal -> {
+                Object constant = convertConstant(literal, type);
+                return eq ? entity -> constant.equals(getter.apply(entity))
+                        : entity -> !constant.equals(getter.apply(entity));
+            };
+        }
+        IntPredicate test = comparisonTest(operator);
+        return literal -> {
+            Object constant = comparable(convertConstant(literal, type));
+            return entity -> {
+                Object entityValue = getter.apply(entity);
+                return entityValue != null && test.test(compare(entityValue, constant));
+            };
+        };
+    }
+
+    /**
+     * Chooses between int, long and floating point comparisons by the type of the literal. Whether a long or
+     * BigInteger literal fits an int or a long depends on its value and is tested when binding.
+     */
+    private LiteralBinder<T> numericBinder(ComparisonOperator operator, Operand<T> value, Number sample)
+            throws ODataException {
+        IntPredicate test = comparisonTest(operator);
+        UnaryOperator<Predicate<T>> guard = nullGuard(operator, value);
+
+        ToDoubleFunction<T> doubles = value.asDouble();
+        LiteralBinder<T> doubleBinder = literal -> {
+            double constant = ((Number) literal).doubleValue();
+            return guard.apply(entity -> test.test(Double.compare(doubles.applyAsDouble(entity), constant)));
+        };
+        if (!value.isIntegral() || !isIntegralType(sample.getClass())) {
+            return doubleBinder;
+        }
+
+        ToLongFunction<T> longs = value.asLong();
+        LiteralBinder<T> longBinder = literal -> {
+            long constant = ((Number) literal).longValue();
+            return guard.apply(entity -> test.test(Long.compare(longs.applyAsLong(entity), constant)));
+        };
+        if (sample instanceof BigInteger) {
+            return literal -> isIntegral((Number) literal) ? longBinder.bind(literal) : doubleBinder.bind(literal);
+        }
+        if (value.kind != Kind.INT) {
+            return longBinder;
+        }
+
+        IntFunction<Predicate<T>> ints = intComparison(operator, value.intValue);
+        if (sample instanceof Long) {
+            return literal -> fitsInt((Number) literal) ? ints.apply(((Number) literal).intValue())
+                    : longBinder.bind(literal);
+        }
+        return literal -> ints.apply(((Number) literal).intValue());
+    }
+
+    /**
+     * The null test of a comparison between a nullable operand and a literal, see
+     * {@link #guardNulls(ComparisonOperator, Operand, Operand, Predicate)}.
+     */
+    private UnaryOperator<Predicate<T>> nullGuard(ComparisonOperator operator, Operand<T> value) {
+        Predicate<T> isNull = value.isNull;
+        if (isNull == null) {
+            return comparison -> comparison;
+        } else if (operator instanceof NeOperator$) {
+            return comparison -> entity -> isNull.test(entity) || comparison.test(entity);
+        }
+        return comparison -> entity -> !isNull.test(entity) && comparison.test(entity);
+    }
+
+    private Predicate<T> compileComposite(CompositeCriteria criteria) throws ODataException {
+        return combiner(criteria).apply(compile(criteria.getLeft()), compile(criteria.getRight()));
+    }
+
+    private BinaryOperator<Predicate<T>> combiner(CompositeCriteria criteria) throws ODataException {
+        if (criteria.getOperator() instanceof AndOperator$) {
+            return (left, right) -> {
+                if (left == ALWAYS || right == NEVER) {
+                    return right;
+                }
+                return right == ALWAYS || left == NEVER ? left : left.and(right);
+            };
+        } else if (criteria.getOperator() instanceof OrOperator$) {
+            return (left, right) -> {
+                if (left == NEVER || right == ALWAYS) {
+                    return right;
+                }
+                return right == NEVER || left == ALWAYS ? left : left.or(right);
+            };
+        }
+        throw new ODataNotImplementedException("Unsupported composite operator: " + criteria.getOperator());
+    }
+
+    private Predicate<T> compileComparison(ComparisonCriteria criteria) throws ODataException {
+        return compileComparison(criteria.getOperator(), compileValue(criteria.getLeft()),
+                compileValue(criteria.getRight()));
+    }
+
+    private Predicate<T> compileComparison(ComparisonOperator operator, Operand<T> left, Operand<T> right)
+            throws ODataException {
+        if (left.isConstant() && right.isConstant()) {
+            return constant(evaluateConstant(operator, left.constant, right.constant));
+        }
+        //Normalize so that a constant, if any, is always on the right hand side
+        if (left.isConstant()) {
+            return compileOrientedComparison(flip(operator), right, left);
+        }
+        return compileOrientedComparison(operator, left, right);
+    }
+
+    private Predicate<T> compileOrientedComparison(ComparisonOperator operator, Operand<T> left, Operand<T> right)
+            throws ODataException {
+        if (right.isConstant() && right.constant == null) {
+            Function<T, Object> value = left.asObject();
+            if (operator instanceof EqOperator$) {
+                return entity -> value.apply(entity) == null;
+            } else if (operator instanceof NeOperator$) {
+                return entity -> value.apply(entity) != null;
+            }
+            return constant(false);
+        }
+
+        if (left.isNumeric() && right.isNumeric()) {
+            return guardNulls(operator, left, right, compileNumericComparison(operator, left, right));
+        }
+        if (left.isNumeric() || right.isNumeric()) {
+            throw new ODataBadRequestException("Cannot compare a numeric value with a non-numeric value");
+        }
+
+        Function<T, Object> leftValue = left.asObject();
+        if (right.isConstant()) {
+            Object constant = convertConstant(right.constant, left.type);
+            boolean equality = operator instanceof EqOperator$ || operator instanceof NeOperator$;
+            if (equality && left.accessor != null && left.accessor.isEncoded()) {
+                return compileCodeComparison(operator instanceof EqOperator$, left.accessor, constant);
+            }
+            if (operator instanceof EqOperator$) {
+                return entity -> constant.equals(leftValue.apply(entity));
+            } else if (operator instanceof NeOperator$) {
+                return entity -> !constant.equals(leftValue.apply(entity));
+            }
+            comparable(constant);
+            IntPredicate test = comparisonTest(operator);
+            return entity -> {
+                Object value = leftValue.apply(entity);
+                return value != null && test.test(compare(value, constant));
+            };
+        }
+
+        Function<T, Object> rightValue = right.asObject();
+        if (!(operator instanceof EqOperator$ || operator instanceof NeOperator$)
+                && !(left.type != null && Comparable.class.isAssignableFrom(left.type))) {
+            throw new ODataBadRequestException("Values of type " + left.type + " can only be compared for equality");
+        }
+        if (operator instanceof EqOperator$) {
+            return entity -> Objects.equals(leftValue.apply(entity), rightValue.apply(entity));
+        } else if (operator instanceof NeOperator$) {
+            return entity -> !Objects.equals(leftValue.apply(entity), rightValue.apply(entity));
+        }
+        IntPredicate test = comparisonTest(operator);
+        return entity -> {
+            Object l = leftValue.apply(entity);
+            Object r = rightValue.apply(entity);
+            return l != null && r != null && test.test(compare(l, r));
+        };
+    }
+
+    /**
+     * Numeric comparisons are compiled on unboxed values, nullable operands are tested for null before. A null
+     * is only equal to null and neither less nor greater than any value.
+     */
+    private Predicate<T> guardNulls(ComparisonOperator operator, Operand<T> left, Operand<T> right,
+                                    Predicate<T> comparison) {
+        if (left.isNull == null && right.isNull == null) {
+            return comparison;
+        }
+        Predicate<T> leftNull = left.isNull != null ? left.isNull : entity -> false;
+        Predicate<T> rightNull = right.isNull != null ? right.isNull : entity -> false;
+        boolean eq = operator instanceof EqOperator$;
+        if (eq || operator instanceof NeOperator$) {
+            return entity -> {
+                boolean l = leftNull.test(entity);
+                boolean r = rightNull.test(entity);
+                return l || r ? (l && r) == eq : comparison.test(entity);
+            };
+        }
+        return entity -> !leftNull.test(entity) && !rightNull.test(entity) && comparison.test(entity);
+    }
+
+    private Predicate<T> compileCodeComparison(boolean eq, PropertyAccessor<T> accessor, Object constant) {
+        int code = accessor.codeOf(constant);
+        if (code == PropertyAccessor.NO_CODE) {
+            //No stored value is equal to the literal
+            return constant(!eq);
+        }
+        ToIntFunction<T> codes = accessor.codeGetter();
+        return eq ? entity -> codes.applyAsInt(entity) == code : entity -> codes.applyAsInt(entity) != code;
+    }
+
+    private Predicate<T> compileNumericComparison(ComparisonOperator operator, Operand<T> left, Operand<T> right)
+            throws ODataException {
+        IntPredicate test = comparisonTest(operator);
+
+        if (left.kind == Kind.INT && right.isConstant() && isIntegral((Number) right.constant)
+                && fitsInt((Number) right.constant)) {
+            return intComparison(operator, left.intValue).apply(((Number) right.constant).intValue());
+        }
+
+        if (left.isIntegral() && right.isIntegral()) {
+            ToLongFunction<T> l = left.asLong();
+            if (right.isConstant()) {
+                long constant = ((Number) right.constant).longValue();
+                return entity -> test.test(Long.compare(l.applyAsLong(entity), constant));
+            }
+            ToLongFunction<T> r = right.asLong();
+            return entity -> test.test(Long.compare(l.applyAsLong(entity), r.applyAsLong(entity)));
+        }
+
+        ToDoubleFunction<T> l = left.asDouble();
+        if (right.isConstant()) {
+            double constant = ((Number) right.constant).doubleValue();
+            return entity -> test.test(Double.compare(l.applyAsDouble(entity), constant));
+        }
+        ToDoubleFunction<T> r = right.asDouble();
+        return entity -> test.test(Double.compare(l.applyAsDouble(entity), r.applyAsDouble(entity)));
+    }
+
+    private IntFunction<Predicate<T>> intComparison(ComparisonOperator operator, ToIntFunction<T> value) {
+        if (operator instanceof EqOperator$) {
+            return constant -> entity -> value.applyAsInt(entity) == constant;
+        } else if (operator instanceof NeOperator$) {
+            return constant -> entity -> value.applyAsInt(entity) != constant;
+        } else if (operator instanceof GtOperator$) {
+            return constant -> entity -> value.applyAsInt(entity) > constant;
+        } else if (operator instanceof GeOperator$) {
+            return constant -> entity -> value.applyAsInt(entity) >= constant;
+        } else if (operator instanceof LtOperator$) {
+            return constant -> entity -> value.applyAsInt(entity) < constant;
+        }
+        return constant -> entity -> value.applyAsInt(entity) <= constant;
+    }
+
+    private Operand<T> compileValue(CriteriaValue value) throws ODataException {
+        if (value instanceof LiteralCriteriaValue) {
+            return Operand.constant(((LiteralCriteriaValue) value).getValue());
+        } else if (value instanceof PropertyCriteriaValue) {
+            return Operand.property(accessors.getAccessor(((PropertyCriteriaValue) value).getPropertyName()));
+        } else if (value instanceof ArithmeticCriteriaValue) {
+            return compileArithmetic((ArithmeticCriteriaValue) value);
+        }
+        throw new ODataNotImplementedException("Unsupported filter value: " + value);
+    }
+
+    private Operand<T> compileArithmetic(ArithmeticCriteriaValue value) throws ODataException {
+        return compileArithmetic(value.getOperator(), compileValue(value.getLeft()), compileValue(value.getRight()));
+    }
+
+    private Operand<T> compileArithmetic(ArithmeticOperator operator, Operand<T> left, Operand<T> right)
+            throws ODataException {
+        if (!left.isNumeric() || !right.isNumeric()) {
+            throw new ODataBadRequestException("Arithmetic operators can only be applied to numeric values");
+        }
+
+        if (left.isIntegral() && right.isIntegral()) {
+            if (right.isConstant() && ((Number) right.constant).longValue() == 0
+                    && (operator instanceof DivOperator$ || operator instanceof ModOperator$)) {
+                throw new ODataBadRequestException("Division by zero in filter expression");
+            }
+            LongBinaryOperator op = longOperator(operator);
+            if (left.isConstant() && right.isConstant()) {
+                return Operand.constant(op.applyAsLong(((Number) left.constant).longValue(),
+                        ((Number) right.constant).longValue()));
+            }
+            ToLongFunction<T> l = left.asLong();
+            ToLongFunction<T> r = right.asLong();
+            return Operand.longValue(entity -> op.applyAsLong(l.applyAsLong(entity), r.applyAsLong(entity)),
+                    Operand.isNull(left, right));
+        }
+
+        DoubleBinaryOperator op = doubleOperator(operator);
+        if (left.isConstant() && right.isConstant()) {
+            return Operand.constant(op.applyAsDouble(((Number) left.constant).doubleValue(),
+                    ((Number) right.constant).doubleValue()));
+        }
+        ToDoubleFunction<T> l = left.asDouble();
+        ToDoubleFunction<T> r = right.asDouble();
+        return Operand.doubleValue(entity -> op.applyAsDouble(l.applyAsDouble(entity), r.applyAsDouble(entity)),
+                Operand.isNull(left, right));
+    }
+
+    private static LongBinaryOperator longOperator(ArithmeticOperator operator) throws ODataException {
+        if (operator instanceof AddOperator$) {
+            return (l, r) -> l + r;
+        } else if (operator instanceof SubOperator$) {
+            return (l, r) -> l - r;
+        } else if (operator instanceof MulOperator$) {
+            return (l, r) -> l * r;
+        } else if (operator instanceof DivOperator$) {
+            return (l, r) -> l / r;
+        } else if (operator instanceof ModOperator$) {
+            return (l, r) -> l % r;
+        }
+        throw new ODataNotImplementedException("Unsupported arithmetic operator: " + operator);
+    }
+
+    private static DoubleBinaryOperator doubleOperator(ArithmeticOperator operator) throws ODataException {
+        if (operator instanceof AddOperator$) {
+            return (l, r) -> l + r;
+        } else if (operator instanceof SubOperator$) {
+            return (l, r) -> l - r;
+        } else if (operator instanceof MulOperator$) {
+            return (l, r) -> l * r;
+        } else if (operator instanceof DivOperator$) {
+            return (l, r) -> l / r;
+        } else if (operator instanceof ModOperator$) {
+            return (l, r) -> l % r;
+        }
+        throw new ODataNotImplementedException("Unsupported arithmetic operator: " + operator);
+    }
+
+    private static IntPredicate comparisonTest(ComparisonOperator operator) throws ODataException {
+        if (operator instanceof EqOperator$) {
+            return c -> c == 0;
+        } else if (operator instanceof NeOperator$) {
+            return c -> c != 0;
+        } else if (operator instanceof GtOperator$) {
+            return c -> c > 0;
+        } else if (operator instanceof GeOperator$) {
+            return c -> c >= 0;
+        } else if (operator instanceof LtOperator$) {
+            return c -> c < 0;
+        } else if (operator instanceof LeOperator$) {
+            return c -> c <= 0;
+        }
+        throw new ODataNotImplementedException("Unsupported comparison operator: " + operator);
+    }
+
+    /**
+     * Returns the operator to use when the operands of a comparison are swapped, e.g. '5 lt age' becomes 'age gt 5'.
+     */
+    static ComparisonOperator flip(ComparisonOperator operator) {
+        if (operator instanceof GtOperator$) {
+            return LtOperator$.MODULE$;
+        } else if (operator instanceof GeOperator$) {
+            return LeOperator$.MODULE$;
+        } else if (operator instanceof LtOperator$) {
+            return GtOperator$.MODULE$;
+        } else if (operator instanceof LeOperator$) {
+            return GeOperator$.MODULE$;
+        }
+        return operator;
+    }
+
+    private static boolean evaluateConstant(ComparisonOperator operator, Object left, Object right)
+            throws ODataException {
+        if (left == null || right == null) {
+            boolean equal = left == right;
+            if (operator instanceof EqOperator$) {
+                return equal;
+            } else if (operator instanceof NeOperator$) {
+                return !equal;
+            }
+            return false;
+        }
+        if (left instanceof Number && right instanceof Number) {
+            return comparisonTest(operator).test(toBigDecimal((Number) left).compareTo(toBigDecimal((Number) right)));
+        }
+        return comparisonTest(operator).test(comparable(left).compareTo(right));
+    }
+
+    private static Object convertConstant(Object constant, Class<?> targetType) throws ODataException {
+        if (targetType == null || targetType.isInstance(constant)) {
+            return constant;
+        }
+        if (targetType == String.class) {
+            return constant.toString();
+        }
+        if (targetType.isEnum() && constant instanceof String) {
+            for (Object enumConstant : targetType.getEnumConstants()) {
+                if (((Enum<?>) enumConstant).name().equals(constant)) {
+                    return enumConstant;
+                }
+            }
+        }
+        throw new ODataBadRequestException("Value '" + constant + "' is not compatible with type "
+                + targetType.getSimpleName());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> comparable(Object value) throws ODataBadRequestException {
+        if (value instanceof Comparable) {
+            return (Comparable<Object>) value;
+        }
+        throw new ODataBadRequestException("Values of type " + value.getClass().getSimpleName()
+                + " can only be compared for equality");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object left, Object right) {
+        return ((Comparable<Object>) left).compareTo(right);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Predicate<T> constant(boolean value) {
+        return (Predicate<T>) (value ? ALWAYS : NEVER);
+    }
+
+    /**
+     * Whether a literal is of an integral type. Arithmetic on integral operands is integer arithmetic, so this is
+     * decided by the type of the literal and not by its value: '2.0' is a floating point literal.
+     */
+    static boolean isIntegral(Number number) {
+        if (number instanceof BigInteger) {
+            return ((BigInteger) number).bitLength() < Long.SIZE;
+        }
+        return number instanceof Integer || number instanceof Long || number instanceof Short
+                || number instanceof Byte;
+    }
+
+    /**
+     * Whether a number has no fractional part, whatever its type, for matching it against an int index.
+     */
+    static boolean isWholeNumber(Number number) {
+        if (number instanceof Double || number instanceof Float) {
+            double d = number.doubleValue();
+            return d == Math.rint(d) && !Double.isInfinite(d);
+        }
+        BigDecimal decimal = toBigDecimal(number);
+        return decimal.signum() == 0 || decimal.stripTrailingZeros().scale() <= 0;
+    }
+
+    static boolean fitsInt(Number number) {
+        if (number instanceof BigInteger && ((BigInteger) number).bitLength() >= Long.SIZE) {
+            return false;
+        }
+        long value = number.longValue();
+        return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE;
+    }
+
+    private static BigDecimal toBigDecimal(Number number) {
+        if (number instanceof BigDecimal) {
+            return (BigDecimal) number;
+        }
+        return new BigDecimal(number.toString());
+    }
+
+    private static boolean isNumericType(Class<?> type) {
+        return type == int.class || type == long.class || type == short.class || type == byte.class
+                || type == double.class || type == float.class || Number.class.isAssignableFrom(type);
+    }
+
+    private static boolean isIntegralType(Class<?> type) {
+        return type == int.class || type == long.class || type == short.class || type == byte.class
+                || type == Integer.class || type == Long.class || type == Short.class || type == Byte.class
+                || type == BigInteger.class;
+    }
+
+    /**
+     * A compiled filter with parameters for its literals.
+     *
+     * @param <T> The entity type the predicate is evaluated on
+     */
+    @FunctionalInterface
+    public interface Template<T> {
+
+        /**
+         * Returns the predicate for the given literal values, in the order the literals appear in the criteria.
+         */
+        Predicate<T> bind(Object[] parameters) throws ODataException;
+    }
+
+    /**
+     * A template without parameters, which is compiled once.
+     */
+    private static final class Fixed<T> implements Template<T> {
+        private final Predicate<T> predicate;
+
+        Fixed(Predicate<T> predicate) {
+            this.predicate = predicate;
+        }
+
+        @Override
+        public Predicate<T> bind(Object[] parameters) {
+            return predicate;
+        }
+    }
+
+    @FunctionalInterface
+    private interface OperandBinder<T> {
+        Operand<T> bind(Object[] parameters) throws ODataException;
+    }
+
+    /**
+     * Compiles the comparison of a template with the value of its literal.
+     */
+    @FunctionalInterface
+    private interface LiteralBinder<T> {
+        Predicate<T> bind(Object literal) throws ODataException;
+    }
+
+    /**
+     * An operand of a template, either resolved at compile time or depending on the parameters. A literal knows
+     * its parameter index and the value the template is compiled from.
+     */
+    private static final class OperandTemplate<T> {
+        private final Operand<T> fixed;
+        private final OperandBinder<T> binder;
+        private final int index;
+        private final Object sample;
+
+        private OperandTemplate(Operand<T> fixed, OperandBinder<T> binder, int index, Object sample) {
+            this.fixed = fixed;
+            this.binder = binder;
+            this.index = index;
+            this.sample = sample;
+        }
+
+        static <T> OperandTemplate<T> fixed(Operand<T> operand) {
+            return new OperandTemplate<>(operand, null, -1, null);
+        }
+
+        static <T> OperandTemplate<T> parameter(OperandBinder<T> binder) {
+            return new OperandTemplate<>(null, binder, -1, null);
+        }
+
+        static <T> OperandTemplate<T> literal(int index, Object sample) {
+            return new OperandTemplate<>(null, parameters -> Operand.constant(parameters[index]), index, sample);
+        }
+
+        boolean isFixed() {
+            return binder == null;
+        }
+
+        boolean isLiteral() {
+            return index >= 0;
+        }
+
+        Operand<T> bind(Object[] parameters) throws ODataException {
+            return binder == null ? fixed : binder.bind(parameters);
+        }
+    }
+
+    private enum Kind {
+        CONSTANT, INT, LONG, DOUBLE, OBJECT
+    }
+
+    /**
+     * A compiled comparison or arithmetic operand, either a constant or a typed function of the entity. A numeric
+     * operand that can be null has a test for null, its typed function may only be applied if the test fails.
+     */
+    private static final class Operand<T> {
+        private final Kind kind;
+        private final Class<?> type;
+        private final Object constant;
+        private final ToIntFunction<T> intValue;
+        private final ToLongFunction<T> longValue;
+        private final ToDoubleFunction<T> doubleValue;
+        private final Function<T, Object> objectValue;
+        private final Predicate<T> isNull;
+        private final PropertyAccessor<T> accessor;
+
+        private Operand(Kind kind, Class<?> type, Object constant, ToIntFunction<T> intValue,
+                        ToLongFunction<T> longValue, ToDoubleFunction<T> doubleValue,
+                        Function<T, Object> objectValue, Predicate<T> isNull, PropertyAccessor<T> accessor) {
+            this.kind = kind;
+            this.type = type;
+            this.constant = constant;
+            this.intValue = intValue;
+            this.longValue = longValue;
+            this.doubleValue = doubleValue;
+            this.objectValue = objectValue;
+            this.isNull = isNull;
+            this.accessor = accessor;
+        }
+
+        static <T> Operand<T> constant(Object value) {
+            return new Operand<>(Kind.CONSTANT, value == null ? null : value.getClass(), value,
+                    null, null, null, null, null, null);
+        }
+
+        static <T> Operand<T> property(PropertyAccessor<T> accessor) {
+            if (accessor.isInt()) {
+                return new Operand<>(Kind.INT, int.class, null, accessor.intGetter(), null, null, null, null,
+                        null);
+            }
+            Function<T, Object> getter = accessor.getter();
+            Class<?> type = accessor.getType();
+            Predicate<T> isNull = type.isPrimitive() ? null : entity -> getter.apply(entity) == null;
+            if (isIntegralType(type)) {
+                return new Operand<>(Kind.LONG, type, null, null,
+                        entity -> ((Number) getter.apply(entity)).longValue(), null, getter, isNull, null);
+            } else if (isNumericType(type)) {
+                return new Operand<>(Kind.DOUBLE, type, null, null, null,
+                        entity -> ((Number) getter.apply(entity)).doubleValue(), getter, isNull, null);
+            }
+            return new Operand<>(Kind.OBJECT, type, null, null, null, null, getter, null, accessor);
+        }
+
+        static <T> Operand<T> longValue(ToLongFunction<T> value, Predicate<T> isNull) {
+            return new Operand<>(Kind.LONG, long.class, null, null, value, null, null, isNull, null);
+        }
+
+        static <T> Operand<T> doubleValue(ToDoubleFunction<T> value, Predicate<T> isNull) {
+            return new Operand<>(Kind.DOUBLE, double.class, null, null, null, value, null, isNull, null);
+        }
+
+        /**
+         * The null test of an arithmetic expression, which is null if either of its operands is.
+         */
+        static <T> Predicate<T> isNull(Operand<T> left, Operand<T> right) {
+            if (left.isNull == null || right.isNull == null) {
+                return left.isNull != null ? left.isNull : right.isNull;
+            }
+            return left.isNull.or(right.isNull);
+        }
+
+        boolean isConstant() {
+            return kind == Kind.CONSTANT;
+        }
+
+        boolean isNumeric() {
+            return kind == Kind.INT || kind == Kind.LONG || kind == Kind.DOUBLE
+                    || (kind == Kind.CONSTANT && constant instanceof Number);
+        }
+
+        boolean isIntegral() {
+            return kind == Kind.INT || kind == Kind.LONG
+                    || (kind == Kind.CONSTANT && constant instanceof Number && CriteriaCompiler.isIntegral((Number) constant));
+        }
+
+        ToLongFunction<T> asLong() {
+            if (kind == Kind.INT) {
+                ToIntFunction<T> value = intValue;
+                return value::applyAsInt;
+            } else if (kind == Kind.CONSTANT) {
+                long value = ((Number) constant).longValue();
+                return entity -> value;
+            }
+            return longValue;
+        }
+
+        ToDoubleFunction<T> asDouble() {
+            if (kind == Kind.INT) {
+                ToIntFunction<T> value = intValue;
+                return value::applyAsInt;
+            } else if (kind == Kind.LONG) {
+                ToLongFunction<T> value = longValue;
+                return value::applyAsLong;
+            } else if (kind == Kind.CONSTANT) {
+                double value = ((Number) constant).doubleValue();
+                return entity -> value;
+            }
+            return doubleValue;
+        }
+
+        Function<T, Object> asObject() {
+            if (objectValue != null) {
+                return objectValue;
+            } else if (kind == Kind.INT) {
+                ToIntFunction<T> value = intValue;
+                return value::applyAsInt;
+            } else if (kind == Kind.LONG) {
+                ToLongFunction<T> value = longValue;
+                return value::applyAsLong;
+            } else if (kind == Kind.DOUBLE) {
+                ToDoubleFunction<T> value = doubleValue;
+                return value::applyAsDouble;
+            }
+            Object value = constant;
+            return entity -> value;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataSystemException;
+import com.sdl.odata.api.edm.annotations.EdmProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Registry of compiled property accessors per entity type. The accessors are built once from the
+ * {@link EdmProperty} annotated fields of an entity class, binding the matching public getters through
+ * {@link LambdaMetafactory} so that reading a property costs a plain interface call instead of reflection.
+ */
+@Component
+public class EntityAccessorRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(EntityAccessorRegistry.class);
+
+    private final ConcurrentMap<Class<?>, EntityAccessors<?>> registry = new ConcurrentHashMap<>();
+
+    public <T> EntityAccessors<T> register(Class<T> entityType) {
+        return getAccessors(entityType);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> EntityAccessors<T> getAccessors(Class<T> entityType) {
+        return (EntityAccessors<T>) registry.computeIfAbsent(entityType, this::buildAccessors);
+    }
+
+    private <T> EntityAccessors<T> buildAccessors(Class<T> entityType) {
+        LOG.debug("Building property accessors for entity type: {}", entityType.getName());
+
+        List<PropertyAccessor<T>> accessors = new ArrayList<>();
+        for (Class<?> c = entityType; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                EdmProperty edmProperty = field.getAnnotation(EdmProperty.class);
+                if (edmProperty == null || Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+
+                String propertyName = edmProperty.name().isEmpty() ? field.getName() : edmProperty.name();
+                accessors.add(buildAccessor(entityType, field, propertyName));
+            }
+        }
+
+        LOG.debug("Built accessors for {}: {}", entityType.getSimpleName(), accessors);
+        return new EntityAccessors<>(entityType, accessors);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> PropertyAccessor<T> buildAccessor(Class<T> entityType, Field field, String propertyName) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Method getter = findGetter(entityType, field);
+        try {
+            if (getter == null) {
+                //No public getter, fall back to a direct field handle which is still far cheaper than Field.get
+                LOG.debug("No getter found for field {}, using a field handle", field.getName());
+                field.setAccessible(true);
+                MethodHandle handle = lookup.unreflectGetter(field)
+                        .asType(MethodType.methodType(Object.class, Object.class));
+                return PropertyAccessor.of(propertyName, field.getType(), entity -> invoke(handle, entity));
+            }
+
+            MethodHandle handle = lookup.unreflect(getter);
+            if (getter.getReturnType() == int.class) {
+                CallSite site = LambdaMetafactory.metafactory(lookup, "applyAsInt",
+                        MethodType.methodType(ToIntFunction.class),
+                        MethodType.methodType(int.class, Object.class),
+                        handle, MethodType.methodType(int.class, entityType));
+                return PropertyAccessor.ofInt(propertyName, (ToIntFunction<T>) site.getTarget().invoke());
+            }
+
+            CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                    MethodType.methodType(Function.class),
+                    MethodType.methodType(Object.class, Object.class),
+                    handle, MethodType.methodType(boxed(getter.getReturnType()), entityType));
+            return PropertyAccessor.of(propertyName, field.getType(), (Function<T, Object>) site.getTarget().invoke());
+        } catch (Throwable e) {
+            throw new ODataSystemException("Unable to build accessor for property: " + propertyName, e);
+        }
+    }
+
+    private static Method findGetter(Class<?> entityType, Field field) {
+        String suffix = Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+        String[] candidates = field.getType() == boolean.class
+                ? new String[]{"is" + suffix, "get" + suffix} : new String[]{"get" + suffix};
+
+        for (String candidate : candidates) {
+            try {
+                Method method = entityType.getMethod(candidate);
+                if (method.getReturnType() == field.getType() && Modifier.isPublic(method.getModifiers())) {
+                    return method;
+                }
+            } catch (NoSuchMethodException e) {
+                LOG.trace("No getter {} on {}", candidate, entityType.getName());
+            }
+        }
+        return null;
+    }
+
+    private static Object invoke(MethodHandle handle, Object entity) {
+        try {
+            return handle.invokeExact(entity);
+        } catch (Throwable e) {
+            throw new ODataSystemException("Unable to read property value", e);
+        }
+    }
+
+    private static Class<?> boxed(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        return MethodType.methodType(type).wrap().returnType();
+    }
+}
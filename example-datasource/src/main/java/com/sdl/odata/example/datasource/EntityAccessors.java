@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataBadRequestException;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The set of property accessors of one entity type, keyed by their EDM property name.
+ *
+ * @param <T> The entity type
+ */
+public final class EntityAccessors<T> {
+    private final Class<T> entityType;
+    private final Map<String, PropertyAccessor<T>> accessors;
+
+    public EntityAccessors(Class<T> entityType, Collection<PropertyAccessor<T>> accessors) {
+        this.entityType = entityType;
+
+        Map<String, PropertyAccessor<T>> byName = new LinkedHashMap<>();
+        for (PropertyAccessor<T> accessor : accessors) {
+            byName.put(accessor.getName(), accessor);
+        }
+        this.accessors = Collections.unmodifiableMap(byName);
+    }
+
+    public Class<T> getEntityType() {
+        return entityType;
+    }
+
+    public Collection<PropertyAccessor<T>> getAccessors() {
+        return accessors.values();
+    }
+
+    public boolean hasProperty(String propertyName) {
+        return accessors.containsKey(propertyName);
+    }
+
+    public PropertyAccessor<T> getAccessor(String propertyName) throws ODataBadRequestException {
+        PropertyAccessor<T> accessor = accessors.get(propertyName);
+        if (accessor == null) {
+            throw new ODataBadRequestException("Unknown property '" + propertyName + "' on entity type "
+                    + entityType.getSimpleName());
+        }
+        return accessor;
+    }
+}
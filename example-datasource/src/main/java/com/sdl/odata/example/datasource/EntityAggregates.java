@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataSystemException;
+import com.sdl.odata.example.datasource.WriteAheadLog.Mutation;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * The incremental aggregates of one data source, by name. The data source runs each change through
+ * {@link #maintain} and reports the entity it replaced or removed and the entity it stored with
+ * {@link #replace}, so that every aggregate is updated without scanning.
+ *
+ * Operations register their own aggregate once, typically at startup, and read it on every call:
+ * <pre>
+ *     dataSource.getAggregates().register("adults", new NumericAggregate&lt;&gt;(p -&gt; p.getAge() &gt;= 18 ? 1 : 0));
+ *     ...
+ *     dataSource.getAggregates().getAggregate("adults", NumericAggregate.class).getSum();
+ * </pre>
+ * An aggregate registered while the data source already holds entities is first filled from its contents. No
+ * change is applied while that happens, so no entity is missed or counted twice. Changes only wait for that while it
+ * happens: otherwise a change only counts itself in on a counter picked by its thread, so concurrent changes do not
+ * contend on a shared lock.
+ *
+ * Aggregates created with {@link #lazy} are not filled on registration but all at once when one of them is read for
+ * the first time, so a data source that is reopened with many entities does not read all of them at startup. Until
+ * then changes are not reported to the aggregates, the fill reads them from the contents.
+ *
+ * @param <T> The entity type
+ */
+public final class EntityAggregates<T> {
+    private final Supplier<Stream<T>> contents;
+
+    private final Map<String, IncrementalAggregate<T>> byName = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<IncrementalAggregate<T>> aggregates = new CopyOnWriteArrayList<>();
+    private final ReadWriteLock registration = new ReentrantReadWriteLock();
+    private final ChangeGate changes = new ChangeGate();
+    private volatile boolean filled;
+
+    public EntityAggregates(Supplier<Stream<T>> contents) {
+        this(contents, true);
+    }
+
+    private EntityAggregates(Supplier<Stream<T>> contents, boolean filled) {
+        this.contents = contents;
+        this.filled = filled;
+    }
+
+    /**
+     * Aggregates that are filled from the contents when one of them is read for the first time.
+     */
+    public static <T> EntityAggregates<T> lazy(Supplier<Stream<T>> contents) {
+        return new EntityAggregates<>(contents, false);
+    }
+
+    /**
+     * Registers a {@link NumericAggregate} for every int property, by property name.
+     */
+    public EntityAggregates<T> registerNumericProperties(EntityAccessors<T> accessors) {
+        for (PropertyAccessor<T> accessor : accessors.getAccessors()) {
+            if (accessor.isInt()) {
+                register(accessor.getName(), new NumericAggregate<>(accessor.intGetter()::applyAsInt));
+            }
+        }
+        return this;
+    }
+
+    public <A extends IncrementalAggregate<T>> A register(String name, A aggregate) {
+        registration.writeLock().lock();
+        changes.close();
+        try {
+            if (byName.containsKey(name)) {
+                throw new ODataSystemException("An aggregate is already registered with name: " + name);
+            }
+            if (filled) {
+                try (Stream<T> entities = contents.get()) {
+                    entities.forEach(aggregate::add);
+                }
+            }
+            byName.put(name, aggregate);
+            aggregates.add(aggregate);
+            return aggregate;
+        } finally {
+            changes.open();
+            registration.writeLock().unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <A extends IncrementalAggregate<?>> A getAggregate(String name, Class<A> type) {
+        IncrementalAggregate<T> aggregate = byName.get(name);
+        if (aggregate == null || !type.isInstance(aggregate)) {
+            throw new ODataSystemException("No aggregate of type " + type.getSimpleName() + " with name: " + name);
+        }
+        if (!filled) {
+            fill();
+        }
+        return (A) aggregate;
+    }
+
+    private void fill() {
+        registration.writeLock().lock();
+        changes.close();
+        try {
+            if (!filled) {
+                try (Stream<T> entities = contents.get()) {
+                    entities.forEach(entity -> {
+                        for (IncrementalAggregate<T> aggregate : aggregates) {
+                            aggregate.add(entity);
+                        }
+                    });
+                }
+                filled = true;
+            }
+        } finally {
+            changes.open();
+            registration.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a change to the data source, which must report what it changed with {@link #replace} before it returns.
+     * The registration lock is only taken while an aggregate is registered or the aggregates are filled.
+     */
+    public <R, E extends Exception> R maintain(Mutation<R, E> change) throws E {
+        int stripe = changes.enter();
+        if (stripe >= 0) {
+            try {
+                return change.run();
+            } finally {
+                changes.exit(stripe);
+            }
+        }
+        registration.readLock().lock();
+        try {
+            return change.run();
+        } finally {
+            registration.readLock().unlock();
+        }
+    }
+
+    /**
+     * Updates all aggregates for an entity that was stored, replaced or removed. The previous entity is null when
+     * the entity was created, the current one when it was removed.
+     */
+    public void replace(T previous, T current) {
+        if (!filled) {
+            return;
+        }
+        for (IncrementalAggregate<T> aggregate : aggregates) {
+            if (previous != null) {
+                aggregate.remove(previous);
+            }
+            if (current != null) {
+                aggregate.add(current);
+            }
+        }
+    }
+
+    /**
+     * Counts the changes in progress on counters striped by thread, so changes can run without a shared lock. Closing
+     * the gate makes new changes take the registration lock instead, and waits for the changes that entered before.
+     */
+    private static final class ChangeGate {
+        //A stripe per cache line, so changes on different threads do not write to the same line
+        private static final int PADDING = 16;
+
+        private final int mask;
+        private final AtomicIntegerArray counts;
+        private volatile boolean closed;
+
+        ChangeGate() {
+            int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2);
+            this.mask = stripes - 1;
+            this.counts = new AtomicIntegerArray(stripes * PADDING);
+        }
+
+        /**
+         * Counts a change in, returning its stripe, or -1 if the gate is closed.
+         */
+        int enter() {
+            if (closed) {
+                return -1;
+            }
+            int stripe = (int) (Thread.currentThread().getId() & mask) * PADDING;
+            counts.incrementAndGet(stripe);
+            //Either this change sees the gate closed, or the closing thread sees it counted in and waits for it
+            if (closed) {
+                counts.decrementAndGet(stripe);
+                return -1;
+            }
+            return stripe;
+        }
+
+        void exit(int stripe) {
+            counts.decrementAndGet(stripe);
+        }
+
+        /**
+         * Closes the gate and waits until every change that entered has left. Called with the registration lock held.
+         */
+        void close() {
+            closed = true;
+            for (int stripe = 0; stripe < counts.length(); stripe += PADDING) {
+                while (counts.get(stripe) != 0) {
+                    Thread.yield();
+                }
+            }
+        }
+
+        void open() {
+            closed = false;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.ODataSystemException;
+import com.sdl.odata.api.edm.annotations.EdmProperty;
+import com.sdl.odata.example.Indexed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The secondary indexes declared through {@link Indexed} on the properties of an entity type. All index
+ * maintenance for an entity goes through here, callers are expected to invoke it while holding the entity key
+ * so that the indexes never observe two concurrent mutations of the same entity.
+ *
+ * Readers look up candidates in the indexes without locking and recheck them against the stored entity, so an
+ * entity is added to the indexes before it is stored and its old entries are removed after it was replaced or
+ * removed. An index may briefly hold a stale key, but never misses an entity that is visible in the store.
+ *
+ * @param <T> The entity type
+ */
+public class EntityIndexes<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(EntityIndexes.class);
+
+    private final Function<T, String> keyFunction;
+    private final Map<String, SecondaryIndex<T>> indexes;
+
+    public EntityIndexes(Function<T, String> keyFunction, Collection<SecondaryIndex<T>> indexes) {
+        this.keyFunction = keyFunction;
+
+        Map<String, SecondaryIndex<T>> byProperty = new LinkedHashMap<>();
+        for (SecondaryIndex<T> index : indexes) {
+            byProperty.put(index.getPropertyName(), index);
+        }
+        this.indexes = Collections.unmodifiableMap(byProperty);
+    }
+
+    public static <T> EntityIndexes<T> fromAnnotations(EntityAccessors<T> accessors, Function<T, String> keyFunction) {
+        Map<String, SecondaryIndex<T>> indexes = new LinkedHashMap<>();
+        for (Class<?> c = accessors.getEntityType(); c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                Indexed indexed = field.getAnnotation(Indexed.class);
+                EdmProperty edmProperty = field.getAnnotation(EdmProperty.class);
+                if (indexed == null || edmProperty == null) {
+                    continue;
+                }
+
+                String propertyName = edmProperty.name().isEmpty() ? field.getName() : edmProperty.name();
+                PropertyAccessor<T> accessor = getAccessor(accessors, propertyName);
+                if (indexed.value() == Indexed.Type.SORTED) {
+                    indexes.put(propertyName, new SortedIndex<>(accessor));
+                } else {
+                    indexes.put(propertyName, new HashIndex<>(accessor));
+                }
+                LOG.debug("Declared {} index on {}.{}", indexed.value(), accessors.getEntityType().getSimpleName(),
+                        propertyName);
+            }
+        }
+        return new EntityIndexes<>(keyFunction, indexes.values());
+    }
+
+    public SecondaryIndex<T> getIndex(String propertyName) {
+        return indexes.get(propertyName);
+    }
+
+    public Collection<SecondaryIndex<T>> getIndexes() {
+        return indexes.values();
+    }
+
+    public boolean isEmpty() {
+        return indexes.isEmpty();
+    }
+
+    public void add(T entity) {
+        String key = keyFunction.apply(entity);
+        for (SecondaryIndex<T> index : indexes.values()) {
+            index.add(entity, key);
+        }
+    }
+
+    /**
+     * Removes the entries of an entity that was replaced, the replacing entity must have been added before.
+     */
+    public void removeReplaced(T oldEntity, T newEntity) {
+        String key = keyFunction.apply(newEntity);
+        for (SecondaryIndex<T> index : indexes.values()) {
+            index.removeReplaced(oldEntity, newEntity, key);
+        }
+    }
+
+    public void remove(T entity) {
+        String key = keyFunction.apply(entity);
+        for (SecondaryIndex<T> index : indexes.values()) {
+            index.remove(entity, key);
+        }
+    }
+
+    private static <T> PropertyAccessor<T> getAccessor(EntityAccessors<T> accessors, String propertyName) {
+        try {
+            return accessors.getAccessor(propertyName);
+        } catch (ODataException e) {
+            throw new ODataSystemException("Cannot index property without accessor: " + propertyName, e);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataBadRequestException;
+import com.sdl.odata.example.AggregateGroup;
+import com.sdl.odata.example.AggregateValue;
+import com.sdl.odata.example.datasource.Aggregation.Aggregate;
+import com.sdl.odata.example.datasource.Aggregation.Method;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+/**
+ * Executes an {@link Aggregation} by hash aggregation: every entity is added to the accumulators of its group in
+ * a hash map, so only one row per group is ever materialized. The accumulators keep counts, sums and extremes in
+ * primitive fields and read int properties through their unboxed getters.
+ *
+ * A parallel stream aggregates each partition into its own map, the maps are merged when partitions join.
+ *
+ * @param <T> The entity type
+ */
+public final class GroupAggregator<T> {
+    private static final Comparator<Object> GROUP_VALUE_ORDER = Comparator.nullsFirst(GroupAggregator::compareValues);
+    private static final Comparator<List<?>> GROUP_ORDER = GroupAggregator::compareGroups;
+
+    private final List<Function<T, Object>> groupBy = new ArrayList<>();
+    private final List<Aggregate> aggregates;
+    private final List<ToIntFunction<T>> intGetters = new ArrayList<>();
+    private final List<Function<T, Object>> getters = new ArrayList<>();
+
+    public GroupAggregator(EntityAccessors<T> accessors, Aggregation aggregation) throws ODataBadRequestException {
+        for (String property : aggregation.getGroupBy()) {
+            groupBy.add(accessors.getAccessor(property).getter());
+        }
+
+        this.aggregates = aggregation.getAggregates();
+        for (Aggregate aggregate : aggregates) {
+            PropertyAccessor<T> accessor = aggregate.getProperty() == null ? null
+                    : accessors.getAccessor(aggregate.getProperty());
+            boolean numeric = aggregate.getMethod() != Method.COUNT && aggregate.getMethod() != Method.COUNTDISTINCT;
+            if (numeric && !accessor.isInt()) {
+                throw new ODataBadRequestException("Cannot aggregate with " + aggregate.getMethod().name().toLowerCase()
+                        + " over non numeric property: " + aggregate.getProperty());
+            }
+            intGetters.add(numeric ? accessor.intGetter() : null);
+            getters.add(accessor == null ? null : accessor.getter());
+        }
+    }
+
+    /**
+     * Aggregates the given entities, returning one row per group ordered by the group values.
+     */
+    public List<AggregateGroup> aggregate(Stream<T> entities) {
+        Map<Object, Accumulator[]> groups = entities.collect(Collector.of(HashMap::new, this::accumulate, this::merge));
+        if (groupBy.isEmpty() && groups.isEmpty()) {
+            //aggregating without grouping always yields a row, also over no entities
+            groups.put(Collections.emptyList(), accumulators());
+        }
+
+        List<Map.Entry<Object, Accumulator[]>> sorted = new ArrayList<>(groups.entrySet());
+        sorted.sort(Comparator.comparing(group -> groupValues(group.getKey()), GROUP_ORDER));
+
+        List<AggregateGroup> rows = new ArrayList<>(sorted.size());
+        for (Map.Entry<Object, Accumulator[]> group : sorted) {
+            List<AggregateValue> values = new ArrayList<>(aggregates.size());
+            for (int i = 0; i < aggregates.size(); i++) {
+                values.add(new AggregateValue(aggregates.get(i).getAlias(),
+                        group.getValue()[i].result(aggregates.get(i).getMethod())));
+            }
+            rows.add(new AggregateGroup(toStrings(groupValues(group.getKey())), values));
+        }
+        return rows;
+    }
+
+    private void accumulate(Map<Object, Accumulator[]> groups, T entity) {
+        Accumulator[] accumulators = groups.computeIfAbsent(groupKey(entity), key -> accumulators());
+        for (int i = 0; i < accumulators.length; i++) {
+            Accumulator accumulator = accumulators[i];
+            switch (aggregates.get(i).getMethod()) {
+                case COUNT:
+                    accumulator.count++;
+                    break;
+                case COUNTDISTINCT:
+                    accumulator.distinct.add(getters.get(i).apply(entity));
+                    break;
+                default:
+                    accumulator.add(intGetters.get(i).applyAsInt(entity));
+            }
+        }
+    }
+
+    private Map<Object, Accumulator[]> merge(Map<Object, Accumulator[]> left, Map<Object, Accumulator[]> right) {
+        for (Map.Entry<Object, Accumulator[]> group : right.entrySet()) {
+            Accumulator[] merged = left.putIfAbsent(group.getKey(), group.getValue());
+            if (merged != null) {
+                for (int i = 0; i < merged.length; i++) {
+                    merged[i].merge(group.getValue()[i]);
+                }
+            }
+        }
+        return left;
+    }
+
+    /**
+     * The group of an entity: the value of the only grouping property, or the list of the grouping values.
+     */
+    private Object groupKey(T entity) {
+        if (groupBy.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (groupBy.size() == 1) {
+            return groupBy.get(0).apply(entity);
+        }
+        Object[] values = new Object[groupBy.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = groupBy.get(i).apply(entity);
+        }
+        return Arrays.asList(values);
+    }
+
+    private List<?> groupValues(Object groupKey) {
+        return groupBy.size() == 1 ? Collections.singletonList(groupKey) : (List<?>) groupKey;
+    }
+
+    private static List<String> toStrings(List<?> values) {
+        List<String> group = new ArrayList<>(values.size());
+        for (Object value : values) {
+            group.add(value == null ? null : value.toString());
+        }
+        return group;
+    }
+
+    private Accumulator[] accumulators() {
+        Accumulator[] accumulators = new Accumulator[aggregates.size()];
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i] = new Accumulator(aggregates.get(i).getMethod() == Method.COUNTDISTINCT);
+        }
+        return accumulators;
+    }
+
+    private static int compareGroups(List<?> left, List<?> right) {
+        for (int i = 0; i < left.size(); i++) {
+            int compared = GROUP_VALUE_ORDER.compare(left.get(i), right.get(i));
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Orders the values of a group by their natural order. All values of one grouping property are of the same
+     * type, anything not comparable is ordered by its text.
+     */
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Object left, Object right) {
+        if (left instanceof Comparable && left.getClass() == right.getClass()) {
+            return ((Comparable<Object>) left).compareTo(right);
+        }
+        return left.toString().compareTo(right.toString());
+    }
+
+    /**
+     * The running state of one aggregate of one group.
+     */
+    private static final class Accumulator {
+        private long count;
+        private long sum;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+        private final Set<Object> distinct;
+
+        Accumulator(boolean distinct) {
+            this.distinct = distinct ? new HashSet<>() : null;
+        }
+
+        void add(int value) {
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        void merge(Accumulator other) {
+            count += other.count;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            if (distinct != null) {
+                distinct.addAll(other.distinct);
+            }
+        }
+
+        Double result(Method method) {
+            switch (method) {
+                case COUNT:
+                    return (double) count;
+                case COUNTDISTINCT:
+                    return (double) distinct.size();
+                case SUM:
+                    return (double) sum;
+                case MIN:
+                    return count == 0 ? null : (double) min;
+                case MAX:
+                    return count == 0 ? null : (double) max;
+                default:
+                    return count == 0 ? null : (double) sum / count;
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Secondary index serving equality lookups on a property.
+ *
+ * @param <T> The entity type
+ */
+public class HashIndex<T> extends SecondaryIndex<T> {
+    private final Map<Object, Object> entries = new ConcurrentHashMap<>();
+
+    public HashIndex(PropertyAccessor<T> accessor) {
+        super(accessor);
+    }
+
+    @Override
+    protected Map<Object, Object> entries() {
+        return entries;
+    }
+}
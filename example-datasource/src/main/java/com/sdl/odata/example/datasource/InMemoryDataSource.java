@@ -16,77 +16,348 @@
 package com.sdl.odata.example.datasource;
 
 import com.sdl.odata.api.ODataException;
-import com.sdl.odata.api.ODataSystemException;
 import com.sdl.odata.api.edm.model.EntityDataModel;
 import com.sdl.odata.api.parser.ODataUri;
 import com.sdl.odata.api.parser.ODataUriUtil;
-import com.sdl.odata.api.processor.datasource.DataSource;
 import com.sdl.odata.api.processor.datasource.ODataDataSourceException;
 import com.sdl.odata.api.processor.datasource.TransactionalDataSource;
 import com.sdl.odata.api.processor.link.ODataLink;
+import com.sdl.odata.example.AggregateGroup;
 import com.sdl.odata.example.Person;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import scala.Option;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author rdevries
  */
 @Component
-public class InMemoryDataSource implements DataSource {
+public class InMemoryDataSource implements PersonDataSource {
 
     private ConcurrentMap<String, Person> personConcurrentMap = new ConcurrentHashMap<>();
 
+    private final EntityAccessors<Person> personAccessors;
+
+    private final EntityIndexes<Person> personIndexes;
+
+    private final ParallelScanExecutor scanExecutor;
+
+    private final QueryExecutor queryExecutor;
+
+    private final WriteAheadLog writeAheadLog;
+
+    private final KeyVersions keyVersions = new KeyVersions();
+
+    private final EntityAggregates<Person> personAggregates;
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final PersonLinks personLinks = new PersonLinks(version::incrementAndGet);
+
+    private final ChangeJournal changeJournal;
+
+    @Autowired
+    public InMemoryDataSource(EntityAccessorRegistry entityAccessorRegistry, ParallelScanExecutor scanExecutor,
+                              WriteAheadLog writeAheadLog, QueryMetrics queryMetrics, ChangeJournal changeJournal) {
+        this.scanExecutor = scanExecutor;
+        this.writeAheadLog = writeAheadLog;
+        this.changeJournal = changeJournal;
+        this.personAccessors = entityAccessorRegistry.getAccessors(Person.class);
+        this.personIndexes = EntityIndexes.fromAnnotations(personAccessors, Person::getPersonId);
+        this.personAggregates = new EntityAggregates<Person>(() -> personConcurrentMap.values().stream())
+                .registerNumericProperties(personAccessors);
+        this.queryExecutor = new QueryExecutor(personConcurrentMap::get, () -> personConcurrentMap.values().stream(),
+                personConcurrentMap::size, personIndexes, scanExecutor, queryMetrics);
+        writeAheadLog.open(this::restore, this::restoreDeleted, personLinks::setManager, personConcurrentMap::values,
+                personLinks::getManagers);
+    }
+
+    /*
+     * Every mutation of a person holds the lock of its key while it checks the current state, logs its write-ahead
+     * log record and waits for it to be durable, and only then changes the map entry, the secondary indexes, the
+     * aggregates and the change journal. A change is never visible before it is durable and a failed commit leaves
+     * nothing to undo. Mutations of different keys wait for their commits in parallel, so they still share group
+     * commits. Readers never take the key lock.
+     */
 
     @Override
     public Object create(ODataUri oDataUri, Object o, EntityDataModel entityDataModel) throws ODataException {
         Person person = (Person) o;
-        if(personConcurrentMap.putIfAbsent(person.getPersonId(), person) != null) {
-            throw new ODataDataSourceException("Could not create entity, already exists");
-        }
-
+        keyVersions.withLock(person.getPersonId(), () -> writeAheadLog.mutate(() -> {
+            if(personConcurrentMap.containsKey(person.getPersonId())) {
+                throw new ODataDataSourceException("Could not create entity, already exists");
+            }
+            writeAheadLog.await(writeAheadLog.logPut(person));
+            return apply(person.getPersonId(), person);
+        }));
         return person;
     }
 
     @Override
     public Object update(ODataUri oDataUri, Object o, EntityDataModel entityDataModel) throws ODataException {
         Person person = (Person) o;
-        if(personConcurrentMap.containsKey(person.getPersonId())) {
-            personConcurrentMap.put(person.getPersonId(), person);
-
-            return person;
-        } else {
-            throw new ODataDataSourceException("Unable to update person, entity does not exist");
-        }
+        keyVersions.withLock(person.getPersonId(), () -> writeAheadLog.mutate(() -> {
+            if(!personConcurrentMap.containsKey(person.getPersonId())) {
+                throw new ODataDataSourceException("Unable to update person, entity does not exist");
+            }
+            writeAheadLog.await(writeAheadLog.logPut(person));
+            return apply(person.getPersonId(), person);
+        }));
+        return person;
     }
 
     @Override
     public void delete(ODataUri oDataUri, EntityDataModel entityDataModel) throws ODataException {
         Option<Object> entity = ODataUriUtil.extractEntityWithKeys(oDataUri, entityDataModel);
         if(entity.isDefined()) {
-            Person person = (Person) entity.get();
-            personConcurrentMap.remove(person.getPersonId());
+            String key = ((Person) entity.get()).getPersonId();
+            keyVersions.withLock(key, () -> writeAheadLog.mutate(() -> {
+                if(!personConcurrentMap.containsKey(key)) {
+                    return null;
+                }
+                writeAheadLog.await(writeAheadLog.logDelete(key));
+                return apply(key, null);
+            }));
+        }
+    }
+
+    /**
+     * Creates the persons whose key does not exist yet while holding the keys of all of them, logging them as a
+     * single record so the whole batch takes a single commit.
+     */
+    @Override
+    public int createAll(Collection<Person> persons) throws ODataException {
+        Map<String, Person> batch = new LinkedHashMap<>();
+        for (Person person : persons) {
+            batch.putIfAbsent(person.getPersonId(), person);
         }
+
+        return keyVersions.withLocks(new TreeSet<>(batch.keySet()), () -> writeAheadLog.mutate(() -> {
+            List<Person> created = new ArrayList<>();
+            for (Person person : batch.values()) {
+                if(!personConcurrentMap.containsKey(person.getPersonId())) {
+                    created.add(person);
+                }
+            }
+            if (created.isEmpty()) {
+                return 0;
+            }
+
+            writeAheadLog.await(writeAheadLog.logChanges(created, Collections.emptyList()));
+            for (Person person : created) {
+                apply(person.getPersonId(), person);
+            }
+            return created.size();
+        }));
+    }
+
+    /**
+     * Reads a person together with the version of its key, for transactions.
+     */
+    KeyVersions.Versioned<Person> readVersioned(String key) {
+        return keyVersions.read(key, personConcurrentMap::get);
+    }
+
+    void releaseVersioned(KeyVersions.Versioned<Person> snapshot) {
+        keyVersions.release(snapshot);
+    }
+
+    /**
+     * The number of keys with a version slot: those being written, or read by a transaction that is still active.
+     */
+    int getVersionedKeyCount() {
+        return keyVersions.size();
+    }
+
+    /**
+     * Logs the changes of a committing transaction, which holds the locks of all keys involved, as a single record
+     * and applies them once it is durable. A null person deletes the person with that key. The link assignments are
+     * resolved against the links as they are under those locks, logged in the same record and applied after the
+     * persons, so the persons and links of a transaction are committed together or not at all.
+     */
+    void applyChanges(Map<String, Person> changes, List<PersonLinks.Assignment> assignments)
+            throws ODataDataSourceException {
+        writeAheadLog.mutate(() -> {
+            List<Person> puts = new ArrayList<>();
+            List<String> deletes = new ArrayList<>();
+            for (Map.Entry<String, Person> change : changes.entrySet()) {
+                if (change.getValue() != null) {
+                    puts.add(change.getValue());
+                } else {
+                    deletes.add(change.getKey());
+                }
+            }
+
+            Map<String, String> managers = personLinks.resolve(assignments,
+                    key -> changes.containsKey(key) && changes.get(key) == null);
+            if (puts.isEmpty() && deletes.isEmpty() && managers.isEmpty()) {
+                return null;
+            }
+
+            writeAheadLog.await(writeAheadLog.logChanges(puts, deletes, managers));
+            for (Map.Entry<String, Person> change : changes.entrySet()) {
+                apply(change.getKey(), change.getValue());
+            }
+            managers.forEach(personLinks::setManager);
+            return null;
+        });
+    }
+
+    /**
+     * Applies a change whose write-ahead log record is durable and records it in the change journal, so the journal
+     * never hands out a change that a failed commit or a restart loses. Returns the person that was replaced or
+     * removed.
+     */
+    private Person apply(String key, Person person) {
+        Person existing = store(key, person);
+        changeJournal.record(existing, person);
+        return existing;
+    }
+
+    /**
+     * Stores or, for a null person, removes the person with the given key and maintains the secondary indexes and
+     * the aggregates. The new index entries are added before the map entry changes and the old ones removed after,
+     * so an index-served query never misses a person that is in the map. Returns the person that was replaced or
+     * removed.
+     */
+    private Person store(String key, Person person) {
+        return personAggregates.maintain(() -> {
+            Person existing;
+            if (person != null) {
+                personIndexes.add(person);
+                existing = personConcurrentMap.put(key, person);
+                if (existing != null) {
+                    personIndexes.removeReplaced(existing, person);
+                }
+            } else {
+                existing = personConcurrentMap.remove(key);
+                if (existing != null) {
+                    personIndexes.remove(existing);
+                    personLinks.remove(key);
+                }
+            }
+            personAggregates.replace(existing, person);
+            if (existing != null || person != null) {
+                version.incrementAndGet();
+            }
+            return existing;
+        });
+    }
+
+    //Restored persons are not changes, a journal of an earlier run is gone with its delta tokens
+    private void restore(Person person) {
+        store(person.getPersonId(), person);
+    }
+
+    private void restoreDeleted(String key) {
+        store(key, null);
     }
 
     @Override
     public TransactionalDataSource startTransaction() {
-        throw new ODataSystemException("No support for transactions");
+        return new InMemoryTransaction(this);
     }
 
     public ConcurrentMap<String, Person> getPersonConcurrentMap() {
         return personConcurrentMap;
     }
 
+    public EntityIndexes<Person> getPersonIndexes() {
+        return personIndexes;
+    }
+
     @Override
-    public void createLink(ODataUri oDataUri, ODataLink oDataLink, EntityDataModel entityDataModel) throws ODataException {
+    public EntityAggregates<Person> getAggregates() {
+        return personAggregates;
+    }
+
+    public ParallelScanExecutor getScanExecutor() {
+        return scanExecutor;
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    public long size() {
+        return personConcurrentMap.size();
+    }
+
+    @Override
+    public Map<String, Person> getAll(Collection<String> keys) {
+        Map<String, Person> persons = new HashMap<>();
+        for (String key : keys) {
+            Person person = personConcurrentMap.get(key);
+            if (person != null) {
+                persons.put(key, person);
+            }
+        }
+        return persons;
+    }
 
+    @Override
+    public PersonLinks getLinks() {
+        return personLinks;
+    }
+
+    @Override
+    public ChangeJournal getChangeJournal() {
+        return changeJournal;
+    }
+
+    @Override
+    public long count(StrategyBuilder builder) throws ODataException {
+        return queryExecutor.count(builder, builder.getPredicate());
+    }
+
+    @Override
+    public List<Person> query(StrategyBuilder builder) throws ODataException {
+        return queryExecutor.page(builder, builder.getPagePredicate());
+    }
+
+    @Override
+    public List<AggregateGroup> aggregate(Aggregation aggregation) throws ODataException {
+        return queryExecutor.aggregate(new GroupAggregator<>(personAccessors, aggregation));
+    }
+
+
+    @Override
+    public void createLink(ODataUri oDataUri, ODataLink oDataLink, EntityDataModel entityDataModel) throws ODataException {
+        changeLink(PersonLinks.toAssignment(oDataLink));
     }
 
     @Override
     public void deleteLink(ODataUri oDataUri, ODataLink oDataLink, EntityDataModel entityDataModel) throws ODataException {
+        changeLink(PersonLinks.toRemoval(oDataLink));
+    }
 
+    /**
+     * Changes a link like a mutation of the persons it links: while holding their keys, so neither can be deleted
+     * between checking that it exists and changing the link, and only once its record is durable.
+     */
+    private void changeLink(PersonLinks.Assignment assignment) throws ODataException {
+        keyVersions.withLocks(assignment.getKeys(), () -> writeAheadLog.mutate(() -> {
+            assignment.checkExists(personConcurrentMap::containsKey);
+            if (!personLinks.changes(assignment)) {
+                return null;
+            }
+            writeAheadLog.await(writeAheadLog.logManager(assignment.getPerson(), assignment.getManager()));
+            personLinks.assign(assignment);
+            return null;
+        }));
     }
 }
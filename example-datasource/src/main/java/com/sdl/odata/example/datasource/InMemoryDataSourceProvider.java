@@ -15,8 +15,9 @@
  */
 package com.sdl.odata.example.datasource;
 
+import com.sdl.odata.api.ODataBadRequestException;
 import com.sdl.odata.api.ODataException;
-import com.sdl.odata.api.edm.util.EdmUtil;
+import com.sdl.odata.api.ODataSystemException;
 import com.sdl.odata.api.parser.TargetType;
 import com.sdl.odata.api.processor.datasource.DataSource;
 import com.sdl.odata.api.processor.datasource.DataSourceProvider;
@@ -26,16 +27,13 @@ import com.sdl.odata.api.processor.query.QueryResult;
 import com.sdl.odata.api.processor.query.strategy.QueryOperationStrategy;
 import com.sdl.odata.api.service.ODataRequestContext;
 import com.sdl.odata.example.Person;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 
 /**
@@ -44,11 +42,31 @@ import java.util.stream.Stream;
  */
 @Component
 public class InMemoryDataSourceProvider implements DataSourceProvider {
-    private static final Logger LOG = LoggerFactory.getLogger(InMemoryDataSourceProvider.class);
 
     @Autowired
     private InMemoryDataSource inMemoryDataSource;
 
+    @Autowired
+    private ColumnarDataSource columnarDataSource;
+
+    @Autowired
+    private ObjectFactory<MappedDataSource> mappedDataSource;
+
+    @Autowired
+    private QueryPlanCache queryPlanCache;
+
+    @Autowired
+    private QueryResultCache resultCache;
+
+    @Autowired
+    private QueryMetrics queryMetrics;
+
+    @Autowired
+    private ServerDrivenPaging serverDrivenPaging;
+
+    @Value("${odata.example.storage:heap}")
+    private String storage;
+
     @Override
     public boolean isSuitableFor(ODataRequestContext oDataRequestContext, String entityType) throws ODataDataSourceException {
         return oDataRequestContext.getEntityDataModel().getType(entityType).getJavaType().equals(Person.class);
@@ -56,56 +74,105 @@ public class InMemoryDataSourceProvider implements DataSourceProvider {
 
     @Override
     public DataSource getDataSource(ODataRequestContext oDataRequestContext) {
-        return inMemoryDataSource;
+        PersonDataSource dataSource = getPersonDataSource();
+        return queryMetrics.isEnabled() ? new TimedDataSource(dataSource, queryMetrics) : dataSource;
+    }
+
+    /**
+     * The storage backend selected by 'odata.example.storage': 'heap' keeps a map of person objects with
+     * secondary indexes, 'columnar' keeps the persons in primitive columns and 'mapped' keeps them in a
+     * memory-mapped log file that survives restarts.
+     */
+    public PersonDataSource getPersonDataSource() {
+        switch (storage) {
+            case "heap":
+                return inMemoryDataSource;
+            case "columnar":
+                return columnarDataSource;
+            case "mapped":
+                return mappedDataSource.getObject();
+            default:
+                throw new ODataSystemException("Unknown storage backend: " + storage);
+        }
     }
 
     @Override
     public QueryOperationStrategy getStrategy(ODataRequestContext oDataRequestContext, QueryOperation queryOperation, TargetType targetType) throws ODataException {
-        StrategyBuilder builder = new StrategyBuilder();
-        List<Predicate<Person>> predicateList = builder.buildCriteria(queryOperation, oDataRequestContext);
-
-        int limit = builder.getLimit();
+        StrategyBuilder builder = queryMetrics.time("query.plan",
+                () -> queryPlanCache.plan(queryOperation, oDataRequestContext));
+        PersonDataSource dataSource = getPersonDataSource();
+
+        int pageSize = serverDrivenPaging.getPageSize(oDataRequestContext);
+        boolean paged = serverDrivenPaging.isPaged(builder, pageSize);
+        //The last page of a paged query may fit in a single page, but still continues in the order of the others
+        String skipToken = builder.isCount() || builder.isKeyLookup()
+                ? null : serverDrivenPaging.getSkipToken(oDataRequestContext);
+        if (paged || skipToken != null) {
+            builder.orderByKey();
+        }
+        if (skipToken != null) {
+            builder.startAfter(skipToken);
+        }
+
+        if (!paged) {
+            return () -> queryMetrics.time("query.total", () -> resultCache.get(dataSource, queryOperation,
+                    builder.includeCount(), Integer.MAX_VALUE, skipToken,
+                    () -> execute(builder, dataSource, queryMetrics)));
+        }
+
+        //The next link is added to every result, cached or not, as it depends on the URI of the request
         int skip = builder.getSkip();
-        List<String> propertyNames = builder.getPropertyNames();
-
-        return () -> {
-            LOG.debug("Executing query against in memory data");
-            Stream<Person> personStream = inMemoryDataSource.getPersonConcurrentMap().values().stream();
-
-            List<Person> filteredPersons = personStream.filter(p -> predicateList.stream()
-                    .allMatch(f -> f.test(p))).collect(Collectors.toList());
-
-            long count = 0;
-            if (builder.isCount() || builder.includeCount()) {
-                count = filteredPersons.size();
-                LOG.debug("Counted {} persons matching query", count);
-
-                if (builder.isCount()) {
-                    return QueryResult.from(count);
-                }
-            }
-
-            if (skip != 0 || limit != Integer.MAX_VALUE) {
-                filteredPersons = filteredPersons.stream().skip(skip).limit(limit).collect(Collectors.toList());
-            }
+        int requestedLimit = builder.getLimit();
+        builder.limitPage(pageSize);
+        String requestUri = oDataRequestContext.getRequest().getUri();
+        return () -> queryMetrics.time("query.total", () -> serverDrivenPaging.addNextLink(
+                resultCache.get(dataSource, queryOperation, builder.includeCount(), pageSize, skipToken,
+                        () -> execute(builder, dataSource, queryMetrics)),
+                requestUri, builder, skip, requestedLimit, pageSize));
+    }
 
-            LOG.debug("Found {} persons matching query", filteredPersons.size());
+    /**
+     * Runs a planned query against the data source, returning a count, a single property value or the persons.
+     */
+    static QueryResult execute(StrategyBuilder builder, PersonDataSource dataSource, QueryMetrics queryMetrics)
+            throws ODataException {
+        try {
+            return evaluate(builder, dataSource, queryMetrics);
+        } catch (ArithmeticException e) {
+            //Integer division by a divisor that is only known per person, e.g. 'age div (age sub 23)'
+            throw new ODataBadRequestException("Division by zero in filter expression");
+        }
+    }
 
-            if (propertyNames != null && !propertyNames.isEmpty()) {
-                try {
-                    LOG.debug("Selecting {} properties of person", propertyNames);
-                    return QueryResult.from(EdmUtil.getEdmPropertyValue(filteredPersons.get(0), propertyNames.get(0)));
-                } catch (IllegalAccessException e) {
-                    LOG.error(e.getMessage(), e);
-                    return QueryResult.from(Collections.emptyList());
-                }
-            }
+    private static QueryResult evaluate(StrategyBuilder builder, PersonDataSource dataSource,
+                                        QueryMetrics queryMetrics) throws ODataException {
+        //Counting runs as its own pass so that no entity is materialized just to be counted
+        long count = 0;
+        if (builder.isCount() || builder.includeCount()) {
+            count = queryMetrics.time("query.count", () -> dataSource.count(builder));
 
-            QueryResult result = QueryResult.from(filteredPersons);
-            if (builder.includeCount()) {
-                result = result.withCount(count);
+            if (builder.isCount()) {
+                return QueryResult.from(count);
             }
-            return result;
-        };
+        }
+
+        List<Person> page = queryMetrics.time("query.execute", () -> dataSource.query(builder));
+        queryMetrics.add("rows.returned", page.size());
+
+        //The related persons of the whole page are loaded in one batch
+        List<String> expandProperties = builder.getExpandProperties();
+        List<Person> filteredPersons = expandProperties.isEmpty() ? page : queryMetrics.time("query.expand",
+                () -> dataSource.getLinks().expand(page, expandProperties, dataSource));
+
+        if (builder.isPropertyValue()) {
+            return filteredPersons.isEmpty() ? QueryResult.from(Collections.emptyList())
+                    : QueryResult.from(builder.getPropertyValue(filteredPersons.get(0)));
+        }
+
+        QueryResult result = QueryResult.from(filteredPersons);
+        if (builder.includeCount()) {
+            result = result.withCount(count);
+        }
+        return result;
     }
 }
@@ -0,0 +1,240 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.ODataSystemException;
+import com.sdl.odata.api.edm.model.EntityDataModel;
+import com.sdl.odata.api.parser.ODataUri;
+import com.sdl.odata.api.parser.ODataUriUtil;
+import com.sdl.odata.api.processor.datasource.ODataDataSourceException;
+import com.sdl.odata.api.processor.datasource.TransactionalDataSource;
+import com.sdl.odata.api.processor.link.ODataLink;
+import com.sdl.odata.example.Person;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.Option;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Optimistic transaction on the {@link InMemoryDataSource}, as used for the changesets of a $batch request. Changes
+ * are staged in the transaction and only applied on commit.
+ *
+ * The first time the transaction touches a person it reads the person together with the version of its key, and all
+ * checks (does the person exist) are made against that snapshot. A link change is resolved into the manager it assigns
+ * when it is staged and touches the persons it links. On commit the transaction locks every key it changed or links
+ * without waiting, provided its version is still the one it read. If any key was changed or is being changed by someone
+ * else since it was read, the keys locked so far are released and the commit fails without changing anything. Otherwise
+ * all person and link changes are logged as a single write-ahead log record and applied once it is durable, before the
+ * keys are released. There is no global lock: transactions on different persons commit in parallel, and queries never
+ * wait for a commit.
+ *
+ * A transaction is meant to be used by a single thread, and must be committed or rolled back to release the keys it
+ * read.
+ */
+public class InMemoryTransaction implements TransactionalDataSource {
+    private static final Logger LOG = LoggerFactory.getLogger(InMemoryTransaction.class);
+
+    private final InMemoryDataSource dataSource;
+
+    //ordered by key, so concurrent commits lock overlapping keys in the same order
+    private final Map<String, StagedChange> changes = new TreeMap<>();
+    private final List<PersonLinks.Assignment> assignments = new ArrayList<>();
+
+    private boolean active = true;
+
+    InMemoryTransaction(InMemoryDataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public Object create(ODataUri oDataUri, Object o, EntityDataModel entityDataModel) throws ODataException {
+        Person person = (Person) o;
+        StagedChange change = stage(person.getPersonId());
+        if(change.value != null) {
+            throw new ODataDataSourceException("Could not create entity, already exists");
+        }
+
+        change.set(person);
+        return person;
+    }
+
+    @Override
+    public Object update(ODataUri oDataUri, Object o, EntityDataModel entityDataModel) throws ODataException {
+        Person person = (Person) o;
+        StagedChange change = stage(person.getPersonId());
+        if(change.value == null) {
+            throw new ODataDataSourceException("Unable to update person, entity does not exist");
+        }
+
+        change.set(person);
+        return person;
+    }
+
+    @Override
+    public void delete(ODataUri oDataUri, EntityDataModel entityDataModel) throws ODataException {
+        Option<Object> entity = ODataUriUtil.extractEntityWithKeys(oDataUri, entityDataModel);
+        if(entity.isDefined()) {
+            Person person = (Person) entity.get();
+            StagedChange change = stage(person.getPersonId());
+            if (change.value != null) {
+                change.set(null);
+            }
+        }
+    }
+
+    @Override
+    public void createLink(ODataUri oDataUri, ODataLink oDataLink, EntityDataModel entityDataModel) throws ODataException {
+        ensureActive();
+        //Checked against the persons as the transaction sees them, so a link can point at a person it creates
+        PersonLinks.Assignment assignment = PersonLinks.toAssignment(oDataLink);
+        assignment.checkExists(key -> stage(key).value != null);
+        stageLink(assignment);
+    }
+
+    @Override
+    public void deleteLink(ODataUri oDataUri, ODataLink oDataLink, EntityDataModel entityDataModel) throws ODataException {
+        ensureActive();
+        stageLink(PersonLinks.toRemoval(oDataLink));
+    }
+
+    private void stageLink(PersonLinks.Assignment assignment) {
+        for (String key : assignment.getKeys()) {
+            stage(key).linked = true;
+        }
+        assignments.add(assignment);
+    }
+
+    @Override
+    public TransactionalDataSource startTransaction() {
+        throw new ODataSystemException("Nested transactions are not supported");
+    }
+
+    @Override
+    public boolean commit() {
+        ensureActive();
+        active = false;
+        try {
+            return commitChanges();
+        } finally {
+            release();
+        }
+    }
+
+    private boolean commitChanges() {
+        List<StagedChange> locked = new ArrayList<>();
+        for (StagedChange change : changes.values()) {
+            if (change.changed || change.linked) {
+                locked.add(change);
+            }
+        }
+        if (locked.isEmpty()) {
+            return true;
+        }
+
+        for (int i = 0; i < locked.size(); i++) {
+            StagedChange change = locked.get(i);
+            if (!KeyVersions.tryLock(change.snapshot)) {
+                LOG.debug("Transaction conflicts on person '{}', rolling back", change.key);
+                for (int j = 0; j < i; j++) {
+                    KeyVersions.unlock(locked.get(j).snapshot, false);
+                }
+                return false;
+            }
+        }
+
+        boolean applied = false;
+        try {
+            Map<String, Person> values = new LinkedHashMap<>();
+            for (StagedChange change : locked) {
+                if (change.changed) {
+                    values.put(change.key, change.value);
+                }
+            }
+            dataSource.applyChanges(values, assignments);
+            applied = true;
+        } catch (ODataDataSourceException e) {
+            throw new ODataSystemException("Transaction could not be made durable and was not applied", e);
+        } finally {
+            for (StagedChange change : locked) {
+                KeyVersions.unlock(change.snapshot, applied);
+            }
+        }
+        LOG.debug("Committed transaction locking {} persons with {} link changes", locked.size(), assignments.size());
+        return true;
+    }
+
+    @Override
+    public void rollback() {
+        active = false;
+        release();
+        assignments.clear();
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Releases the keys read by the transaction, which stay pinned until it commits or rolls back.
+     */
+    private void release() {
+        for (StagedChange change : changes.values()) {
+            dataSource.releaseVersioned(change.snapshot);
+        }
+        changes.clear();
+    }
+
+    private StagedChange stage(String key) {
+        ensureActive();
+        return changes.computeIfAbsent(key, k -> new StagedChange(k, dataSource.readVersioned(k)));
+    }
+
+    private void ensureActive() {
+        if (!active) {
+            throw new ODataSystemException("Transaction is no longer active");
+        }
+    }
+
+    /**
+     * The state of a person as seen by the transaction: the snapshot read when it was first touched, the value the
+     * transaction will write, null for a deleted person, and whether a staged link change involves the person.
+     */
+    private static final class StagedChange {
+        private final String key;
+        private final KeyVersions.Versioned<Person> snapshot;
+        private Person value;
+        private boolean changed;
+        private boolean linked;
+
+        private StagedChange(String key, KeyVersions.Versioned<Person> snapshot) {
+            this.key = key;
+            this.snapshot = snapshot;
+            this.value = snapshot.getValue();
+        }
+
+        private void set(Person person) {
+            this.value = person;
+            this.changed = true;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+/**
+ * An aggregate over all entities of a data source that is kept up to date on every change instead of being
+ * computed by a scan. Implementations are called concurrently for different entities and must be thread safe.
+ *
+ * @param <T> The entity type
+ * @see EntityAggregates
+ */
+public interface IncrementalAggregate<T> {
+
+    void add(T entity);
+
+    void remove(T entity);
+}
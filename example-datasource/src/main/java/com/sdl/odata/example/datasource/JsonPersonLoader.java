@@ -0,0 +1,257 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.ODataSystemException;
+import com.sdl.odata.api.processor.datasource.ODataDataSourceException;
+import com.sdl.odata.example.Person;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Seeds a person data source at startup from the JSON files in the directory configured with
+ * 'odata.example.seed.path'. A file either holds one person object per line, or one or more (pretty printed)
+ * person objects one after the other, like the files in src/samples.
+ *
+ * Newline delimited files are read sequentially and cut into chunks of 'odata.example.seed.batch-size' lines,
+ * which are parsed and inserted with {@link PersonDataSource#createAll} in parallel on a dedicated pool. Other files
+ * are parsed as a whole, one file per task. At most twice as many chunks as there are loader threads are held in
+ * memory at any time, so that reading never runs ahead of parsing and inserting.
+ */
+@Component
+public class JsonPersonLoader {
+    private static final Logger LOG = LoggerFactory.getLogger(JsonPersonLoader.class);
+
+    private static final String JSON_FILES = "*.{json,ndjson,jsonl}";
+
+    private final ObjectReader reader = new ObjectMapper().reader(JsonNode.class);
+
+    private final String path;
+    private final int batchSize;
+    private final int parallelism;
+
+    @Autowired
+    public JsonPersonLoader(@Value("${odata.example.seed.path:}") String path,
+                            @Value("${odata.example.seed.batch-size:10000}") int batchSize,
+                            @Value("${odata.example.seed.parallelism:0}") int parallelism) {
+        this.path = path;
+        this.batchSize = Math.max(1, batchSize);
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    public boolean isConfigured() {
+        return !path.isEmpty();
+    }
+
+    /**
+     * Loads all JSON files of the configured directory into the given data source. Persons whose key already exists
+     * are skipped. Returns the number of persons created.
+     */
+    public long load(PersonDataSource dataSource) throws ODataException {
+        Path directory = Paths.get(path);
+        if (!Files.isDirectory(directory)) {
+            throw new ODataSystemException("Seed path is not a directory: " + directory.toAbsolutePath());
+        }
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, JSON_FILES)) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            throw new ODataDataSourceException("Unable to list seed files in: " + directory, e);
+        }
+
+        LongAdder parsed = new LongAdder();
+        LongAdder created = new LongAdder();
+        long start = System.nanoTime();
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new LoaderThreadFactory());
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        List<Future<?>> tasks = new ArrayList<>();
+        try {
+            for (Path file : files) {
+                if (isNewlineDelimited(file)) {
+                    submitChunks(file, dataSource, executor, inFlight, tasks, parsed, created);
+                } else {
+                    tasks.add(submit(executor, inFlight, () -> {
+                        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                            insert(dataSource, parse(file, in), parsed, created);
+                        }
+                    }));
+                }
+            }
+
+            for (Future<?> task : tasks) {
+                await(task);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+        LOG.info("Loaded {} persons from {} files in {} ms ({} rows/sec), {} skipped as duplicates",
+                created.sum(), files.size(), elapsedNanos / 1000000,
+                parsed.sum() * 1000000000L / elapsedNanos, parsed.sum() - created.sum());
+        return created.sum();
+    }
+
+    private void submitChunks(Path file, PersonDataSource dataSource, ExecutorService executor, Semaphore inFlight,
+                              List<Future<?>> tasks, LongAdder parsed, LongAdder created)
+            throws ODataException {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            StringBuilder chunk = new StringBuilder();
+            int lines = 0;
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                chunk.append(line).append('\n');
+                if (++lines == batchSize) {
+                    tasks.add(submitChunk(file, chunk.toString(), dataSource, executor, inFlight, parsed, created));
+                    chunk.setLength(0);
+                    lines = 0;
+                }
+            }
+            if (lines > 0) {
+                tasks.add(submitChunk(file, chunk.toString(), dataSource, executor, inFlight, parsed, created));
+            }
+        } catch (IOException e) {
+            throw new ODataDataSourceException("Unable to read seed file: " + file, e);
+        }
+    }
+
+    private Future<?> submitChunk(Path file, String chunk, PersonDataSource dataSource, ExecutorService executor,
+                                  Semaphore inFlight, LongAdder parsed, LongAdder created) throws ODataException {
+        return submit(executor, inFlight, () -> insert(dataSource, parse(file, new StringReader(chunk)),
+                parsed, created));
+    }
+
+    private Future<?> submit(ExecutorService executor, Semaphore inFlight, LoadTask task) throws ODataException {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ODataSystemException("Interrupted while loading seed files", e);
+        }
+
+        return executor.submit(() -> {
+            try {
+                task.run();
+            } finally {
+                inFlight.release();
+            }
+            return null;
+        });
+    }
+
+    private void insert(PersonDataSource dataSource, List<Person> persons, LongAdder parsed, LongAdder created)
+            throws ODataException {
+        for (int from = 0; from < persons.size(); from += batchSize) {
+            List<Person> batch = persons.subList(from, Math.min(persons.size(), from + batchSize));
+            parsed.add(batch.size());
+            created.add(dataSource.createAll(batch));
+        }
+    }
+
+    private List<Person> parse(Path file, Reader in) throws IOException {
+        List<Person> persons = new ArrayList<>();
+        try (MappingIterator<JsonNode> nodes = reader.readValues(in)) {
+            while (nodes.hasNextValue()) {
+                persons.add(toPerson(file, nodes.nextValue()));
+            }
+        }
+        return persons;
+    }
+
+    private static Person toPerson(Path file, JsonNode node) throws IOException {
+        JsonNode id = node.get("id");
+        if (id == null || !id.isTextual()) {
+            throw new IOException("Person without a textual 'id' in seed file: " + file);
+        }
+        return new Person(id.asText(), node.path("firstName").asText(null), node.path("lastName").asText(null),
+                node.path("age").asInt());
+    }
+
+    /**
+     * A file is read as newline delimited when its first non-blank line holds a complete JSON object on its own.
+     */
+    private static boolean isNewlineDelimited(Path file) throws ODataException {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                String trimmed = line.trim();
+                if (!trimmed.isEmpty()) {
+                    return trimmed.startsWith("{") && trimmed.endsWith("}");
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw new ODataDataSourceException("Unable to read seed file: " + file, e);
+        }
+    }
+
+    private static void await(Future<?> task) throws ODataException {
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ODataSystemException("Interrupted while loading seed files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ODataException) {
+                throw (ODataException) e.getCause();
+            }
+            throw new ODataDataSourceException("Unable to load seed files", e.getCause());
+        }
+    }
+
+    private interface LoadTask {
+        void run() throws IOException, ODataException;
+    }
+
+    private static final class LoaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "odata-seed-loader-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
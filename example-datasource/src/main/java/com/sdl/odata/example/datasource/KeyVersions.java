@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Locks and version counters per entity key. A writer holds the lock of a key for the whole write and makes the
+ * version of the key odd while it holds it, so every write advances the version by two. Readers never lock: they
+ * read the version before and after reading the entity and retry if it changed in between. A transaction that read
+ * a key at some version takes its lock on commit without waiting, and only if the version did not move since.
+ *
+ * A key only has a slot with a lock and a version while a writer, reader or transaction uses it. Every use pins the
+ * slot and the slot is removed from the map when its last user releases it, so idle and deleted keys cost nothing.
+ * A transaction pins the slots of the keys it read until it commits or rolls back, so every write to such a key in
+ * the meantime advances the version the transaction compares against, also when the key is deleted and created
+ * again. The map itself is only touched to pin and release slots, writes never run inside it.
+ */
+final class KeyVersions {
+    private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the write while holding the lock of the key, waiting for a concurrent writer of the same key to finish.
+     */
+    <R, E extends Exception> R withLock(String key, WriteAheadLog.Mutation<R, E> write) throws E {
+        Slot slot = acquire(key);
+        try {
+            slot.lock();
+            try {
+                return write.run();
+            } finally {
+                slot.unlock(true);
+            }
+        } finally {
+            release(slot);
+        }
+    }
+
+    /**
+     * Runs the write while holding the locks of all keys, which are taken in their sorted order so concurrent
+     * writers of overlapping keys cannot deadlock.
+     */
+    <R, E extends Exception> R withLocks(SortedSet<String> keys, WriteAheadLog.Mutation<R, E> write) throws E {
+        List<Slot> locked = new ArrayList<>(keys.size());
+        try {
+            for (String key : keys) {
+                Slot slot = acquire(key);
+                locked.add(slot);
+                slot.lock();
+            }
+            return write.run();
+        } finally {
+            for (Slot slot : locked) {
+                slot.unlock(true);
+                release(slot);
+            }
+        }
+    }
+
+    /**
+     * Reads the value of a key together with the version it was read at. The slot of the key stays pinned until the
+     * returned snapshot is released.
+     */
+    <T> Versioned<T> read(String key, Function<String, T> reader) {
+        Slot slot = acquire(key);
+        while (true) {
+            long before = slot.version.get();
+            if ((before & 1) == 0) {
+                T value = reader.apply(key);
+                if (slot.version.get() == before) {
+                    return new Versioned<>(slot, before, value);
+                }
+            } else {
+                //a write holds its key until its commit is durable, so wait for the writer rather than spin
+                slot.lock.lock();
+                slot.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Locks the key of the snapshot if it is still at the version it was read at, without waiting.
+     */
+    static boolean tryLock(Versioned<?> snapshot) {
+        Slot slot = snapshot.slot;
+        if (!slot.lock.tryLock()) {
+            return false;
+        }
+        if (slot.version.get() != snapshot.version) {
+            slot.lock.unlock();
+            return false;
+        }
+        slot.version.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Unlocks a key locked by {@link #tryLock(Versioned)}, advancing its version if it was changed.
+     */
+    static void unlock(Versioned<?> snapshot, boolean changed) {
+        snapshot.slot.unlock(changed);
+    }
+
+    /**
+     * Releases the slot pinned by a snapshot, once the transaction that read it is done.
+     */
+    void release(Versioned<?> snapshot) {
+        release(snapshot.slot);
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    private Slot acquire(String key) {
+        return slots.compute(key, (k, slot) -> {
+            Slot pinned = slot != null ? slot : new Slot(k);
+            pinned.users++;
+            return pinned;
+        });
+    }
+
+    private void release(Slot slot) {
+        slots.computeIfPresent(slot.key, (k, pinned) -> --pinned.users == 0 ? null : pinned);
+    }
+
+    /**
+     * The lock and version of a key. The number of users is only changed inside the map, which guards it.
+     */
+    private static final class Slot {
+        private final String key;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final AtomicLong version = new AtomicLong();
+        private int users;
+
+        private Slot(String key) {
+            this.key = key;
+        }
+
+        private void lock() {
+            lock.lock();
+            version.incrementAndGet();
+        }
+
+        private void unlock(boolean changed) {
+            if (changed) {
+                version.incrementAndGet();
+            } else {
+                version.decrementAndGet();
+            }
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A value read at a version of its key.
+     *
+     * @param <T> The type of the value
+     */
+    static final class Versioned<T> {
+        private final Slot slot;
+        private final long version;
+        private final T value;
+
+        private Versioned(Slot slot, long version, T value) {
+            this.slot = slot;
+            this.version = version;
+            this.value = value;
+        }
+
+        long getVersion() {
+            return version;
+        }
+
+        T getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.ODataSystemException;
+import com.sdl.odata.api.edm.model.EntityDataModel;
+import com.sdl.odata.api.parser.ODataUri;
+import com.sdl.odata.api.parser.ODataUriUtil;
+import com.sdl.odata.api.processor.datasource.ODataDataSourceException;
+import com.sdl.odata.api.processor.datasource.TransactionalDataSource;
+import com.sdl.odata.api.processor.link.ODataLink;
+import com.sdl.odata.example.AggregateGroup;
+import com.sdl.odata.example.Person;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import scala.Option;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent data source storing persons in a memory-mapped {@link PersonLog}, which survives restarts and is
+ * reopened by replaying the log instead of reloading every person. Persons are decoded from the mapping when a query
+ * reads them, so the heap does not grow with the number of persons beyond their keys.
+ *
+ * The log is compacted in the background once it holds more superseded records than live ones. The data source is
+ * only created when it is selected as storage backend, so the log file is never opened otherwise.
+ *
+ * How durable an acknowledged change is depends on odata.example.storage.sync. With 'write' (the default) the log is
+ * flushed to the storage device before a change is acknowledged, a bulk load is flushed once at its end, and every
+ * acknowledged change survives a power loss. With 'periodic' the log is flushed every
+ * odata.example.storage.sync-interval milliseconds on the compactor thread, a power loss drops the changes of at most
+ * that interval. With 'none' the log is only flushed on compaction and on close, changes survive a crash of the
+ * process but not of the operating system.
+ */
+@Lazy
+@Component
+public class MappedDataSource implements PersonDataSource, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(MappedDataSource.class);
+
+    private static final long MINIMUM_COMPACTION_GARBAGE = 16 << 20;
+
+    private final PersonLog log;
+
+    private final EntityAccessors<Person> accessors;
+
+    private final QueryExecutor queryExecutor;
+
+    private final EntityAggregates<Person> aggregates;
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final PersonLinks links = new PersonLinks(version::incrementAndGet);
+
+    private final ScheduledExecutorService compactor;
+
+    private final boolean syncOnWrite;
+
+    private final ChangeJournal changeJournal;
+
+    @Autowired
+    public MappedDataSource(EntityAccessorRegistry entityAccessorRegistry, ParallelScanExecutor scanExecutor,
+                            QueryMetrics queryMetrics, ChangeJournal changeJournal,
+                            @Value("${odata.example.storage.path:data/persons.log}") String path,
+                            @Value("${odata.example.storage.compaction-interval:60}") long compactionInterval,
+                            @Value("${odata.example.storage.sync:write}") String sync,
+                            @Value("${odata.example.storage.sync-interval:1000}") long syncInterval) {
+        if (!sync.equals("write") && !sync.equals("periodic") && !sync.equals("none")) {
+            throw new ODataSystemException("Unknown storage sync mode: " + sync);
+        }
+        this.changeJournal = changeJournal;
+        this.syncOnWrite = sync.equals("write");
+        try {
+            this.log = new PersonLog(Paths.get(path));
+        } catch (IOException e) {
+            throw new ODataSystemException("Unable to open person log: " + path, e);
+        }
+        log.getManagers().forEach(links::setManager);
+        this.accessors = entityAccessorRegistry.getAccessors(Person.class);
+        this.queryExecutor = new QueryExecutor(log::get, log::stream, log::size,
+                new EntityIndexes<>(Person::getPersonId, Collections.emptyList()), scanExecutor, queryMetrics);
+        //the aggregates are filled from the reopened log on their first read, not here, so opening stays a remap
+        this.aggregates = EntityAggregates.lazy(log::stream)
+                .registerNumericProperties(accessors);
+
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "odata-log-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compact, compactionInterval, compactionInterval, TimeUnit.SECONDS);
+        if (sync.equals("periodic")) {
+            compactor.scheduleWithFixedDelay(log::force, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public Object create(ODataUri oDataUri, Object o, EntityDataModel entityDataModel) throws ODataException {
+        Person person = (Person) o;
+        if(!aggregates.maintain(() -> insert(person))) {
+            throw new ODataDataSourceException("Could not create entity, already exists");
+        }
+        return person;
+    }
+
+    @Override
+    public Object update(ODataUri oDataUri, Object o, EntityDataModel entityDataModel) throws ODataException {
+        Person person = (Person) o;
+        if(!aggregates.maintain(() -> replace(person))) {
+            throw new ODataDataSourceException("Unable to update person, entity does not exist");
+        }
+        return person;
+    }
+
+    @Override
+    public int createAll(Collection<Person> persons) throws ODataException {
+        return aggregates.maintain(() -> {
+            synchronized (log) {
+                List<Person> inserted = new ArrayList<>();
+                for (Person person : persons) {
+                    if (log.insert(person)) {
+                        inserted.add(person);
+                    }
+                }
+                sync();
+                for (Person person : inserted) {
+                    inserted(person);
+                }
+                return inserted.size();
+            }
+        });
+    }
+
+    @Override
+    public void delete(ODataUri oDataUri, EntityDataModel entityDataModel) throws ODataException {
+        Option<Object> entity = ODataUriUtil.extractEntityWithKeys(oDataUri, entityDataModel);
+        if(entity.isDefined()) {
+            Person person = (Person) entity.get();
+            aggregates.maintain(() -> remove(person.getPersonId()));
+        }
+    }
+
+    @Override
+    public TransactionalDataSource startTransaction() {
+        throw new ODataSystemException("No support for transactions");
+    }
+
+    @Override
+    public void createLink(ODataUri oDataUri, ODataLink oDataLink, EntityDataModel entityDataModel) throws ODataException {
+        changeLink(PersonLinks.toAssignment(oDataLink));
+    }
+
+    @Override
+    public void deleteLink(ODataUri oDataUri, ODataLink oDataLink, EntityDataModel entityDataModel) throws ODataException {
+        changeLink(PersonLinks.toRemoval(oDataLink));
+    }
+
+    /*
+     * The log serializes its writes on itself, the person a write replaces is read under the same monitor so that
+     * the aggregates and the change journal see every change exactly once. Links are checked, logged and changed
+     * under the same monitor, so a link never points at a person that was deleted in the meantime. In 'write' sync
+     * mode the log is flushed under the monitor as well, before the change is acknowledged.
+     */
+
+    private void changeLink(PersonLinks.Assignment assignment) throws ODataException {
+        synchronized (log) {
+            assignment.checkExists(log::contains);
+            if (links.changes(assignment)) {
+                log.setManager(assignment.getPerson(), assignment.getManager());
+                sync();
+                links.assign(assignment);
+            }
+        }
+    }
+
+    private boolean insert(Person person) throws ODataDataSourceException {
+        synchronized (log) {
+            if (!log.insert(person)) {
+                return false;
+            }
+            sync();
+            inserted(person);
+            return true;
+        }
+    }
+
+    private void inserted(Person person) {
+        aggregates.replace(null, person);
+        changeJournal.record(null, person);
+        version.incrementAndGet();
+    }
+
+    private boolean replace(Person person) throws ODataDataSourceException {
+        synchronized (log) {
+            Person previous = log.get(person.getPersonId());
+            if (previous == null || !log.replace(person)) {
+                return false;
+            }
+            sync();
+            aggregates.replace(previous, person);
+            changeJournal.record(previous, person);
+            version.incrementAndGet();
+            return true;
+        }
+    }
+
+    private boolean remove(String key) throws ODataDataSourceException {
+        synchronized (log) {
+            Person previous = log.get(key);
+            if (previous == null) {
+                return false;
+            }
+            //the links of the person are removed in the log first, a person created later with the same key
+            //must not find them
+            if (links.getManager(key) != null) {
+                log.setManager(key, null);
+            }
+            for (String report : links.getReports(key)) {
+                log.setManager(report, null);
+            }
+            if (!log.remove(key)) {
+                return false;
+            }
+            sync();
+            links.remove(key);
+            aggregates.replace(previous, null);
+            changeJournal.record(previous, null);
+            version.incrementAndGet();
+            return true;
+        }
+    }
+
+    private void sync() {
+        if (syncOnWrite) {
+            log.force();
+        }
+    }
+
+    @Override
+    public EntityAggregates<Person> getAggregates() {
+        return aggregates;
+    }
+
+    public PersonLog getLog() {
+        return log;
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    public long size() {
+        return log.size();
+    }
+
+    @Override
+    public Map<String, Person> getAll(Collection<String> keys) {
+        Map<String, Person> persons = new HashMap<>();
+        for (String key : keys) {
+            Person person = log.get(key);
+            if (person != null) {
+                persons.put(key, person);
+            }
+        }
+        return persons;
+    }
+
+    @Override
+    public PersonLinks getLinks() {
+        return links;
+    }
+
+    @Override
+    public ChangeJournal getChangeJournal() {
+        return changeJournal;
+    }
+
+    @Override
+    public long count(StrategyBuilder builder) throws ODataException {
+        return queryExecutor.count(builder, builder.getPredicate());
+    }
+
+    @Override
+    public List<Person> query(StrategyBuilder builder) throws ODataException {
+        return queryExecutor.page(builder, builder.getPagePredicate());
+    }
+
+    @Override
+    public List<AggregateGroup> aggregate(Aggregation aggregation) throws ODataException {
+        return queryExecutor.aggregate(new GroupAggregator<>(accessors, aggregation));
+    }
+
+
+    @Override
+    public void destroy() throws Exception {
+        compactor.shutdown();
+        compactor.awaitTermination(30, TimeUnit.SECONDS);
+        log.close();
+    }
+
+    private void compact() {
+        try {
+            if (log.compact(MINIMUM_COMPACTION_GARBAGE)) {
+                LOG.info("Compacted person log, {} live bytes remain", log.getLiveBytes());
+            }
+        } catch (ODataDataSourceException | RuntimeException e) {
+            LOG.error("Unable to compact person log", e);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Running count, sum, minimum and maximum of a numeric property. Count and sum are striped {@link LongAdder}s, so
+ * concurrent changes do not contend on a single counter. Minimum and maximum are read from a sorted multiset of the
+ * values, which a removal of the current minimum or maximum needs to find the next one. Adding or removing a value
+ * therefore costs O(log d) for the d distinct values in the multiset rather than constant time, and so does reading
+ * the maximum; the minimum is read in constant time.
+ *
+ * The counters are read one after the other, a reading taken while changes are applied concurrently may combine
+ * the sum of one moment with the count of the next.
+ *
+ * @param <T> The entity type
+ */
+public final class NumericAggregate<T> implements IncrementalAggregate<T> {
+    private final ToLongFunction<T> property;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final ConcurrentNavigableMap<Long, Long> values = new ConcurrentSkipListMap<>();
+
+    public NumericAggregate(ToLongFunction<T> property) {
+        this.property = property;
+    }
+
+    @Override
+    public void add(T entity) {
+        long value = property.applyAsLong(entity);
+        values.merge(value, 1L, Long::sum);
+        sum.add(value);
+        count.increment();
+    }
+
+    @Override
+    public void remove(T entity) {
+        long value = property.applyAsLong(entity);
+        count.decrement();
+        sum.add(-value);
+        values.computeIfPresent(value, (v, occurrences) -> occurrences == 1 ? null : occurrences - 1);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public OptionalDouble average() {
+        long n = count.sum();
+        return n <= 0 ? OptionalDouble.empty() : OptionalDouble.of((double) sum.sum() / n);
+    }
+
+    public OptionalLong min() {
+        Long min = firstKey(values);
+        return min == null ? OptionalLong.empty() : OptionalLong.of(min);
+    }
+
+    public OptionalLong max() {
+        Long max = firstKey(values.descendingMap());
+        return max == null ? OptionalLong.empty() : OptionalLong.of(max);
+    }
+
+    private static Long firstKey(ConcurrentNavigableMap<Long, Long> map) {
+        Map.Entry<Long, Long> first = map.firstEntry();
+        return first == null ? null : first.getKey();
+    }
+}
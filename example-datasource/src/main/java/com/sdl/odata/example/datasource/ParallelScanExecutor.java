@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.ODataSystemException;
+import com.sdl.odata.api.processor.datasource.ODataQueryProcessingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs large scans as parallel streams on a dedicated {@link ForkJoinPool}, so that they neither compete with nor
+ * block the common pool that Spring and the rest of the application use. Parallel streams started from within a
+ * task of this pool split their work into tasks on the same pool.
+ *
+ * Parallel execution is off by default and can be switched on with 'odata.example.parallel.enabled'. Scans over
+ * fewer entities than 'odata.example.parallel.threshold' always stay sequential, as the cost of splitting and
+ * merging outweighs the gain on small sets.
+ */
+@Component
+public class ParallelScanExecutor implements DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelScanExecutor.class);
+
+    private final boolean enabled;
+    private final long threshold;
+    private final ForkJoinPool pool;
+
+    @Autowired
+    public ParallelScanExecutor(@Value("${odata.example.parallel.enabled:false}") boolean enabled,
+                                @Value("${odata.example.parallel.threshold:100000}") long threshold,
+                                @Value("${odata.example.parallel.parallelism:0}") int parallelism) {
+        this.enabled = enabled;
+        this.threshold = threshold;
+        this.pool = enabled ? createPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors())
+                : null;
+        LOG.debug("Parallel scans enabled: {}, threshold: {}", enabled, threshold);
+    }
+
+    /**
+     * Returns a sequential-only executor, for use outside of a Spring context.
+     */
+    public static ParallelScanExecutor sequential() {
+        return new ParallelScanExecutor(false, Long.MAX_VALUE, 0);
+    }
+
+    public boolean isParallel(long size) {
+        return enabled && size >= threshold;
+    }
+
+    /**
+     * Runs the given scan inside the dedicated pool and waits for its result.
+     */
+    public <R> R execute(Supplier<R> scan) throws ODataException {
+        if (pool == null) {
+            return scan.get();
+        }
+
+        try {
+            return pool.submit((Callable<R>) scan::get).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ODataQueryProcessingException("Interrupted while executing parallel scan", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ODataSystemException("Parallel scan failed", e.getCause());
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (pool != null) {
+            pool.shutdown();
+            pool.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static ForkJoinPool createPool(int parallelism) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("odata-scan-" + threadCount.incrementAndGet());
+            return thread;
+        }, null, false);
+    }
+}
@@ -0,0 +1,293 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.example.Person;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Columnar storage of persons: the age is kept in an int array, first and last names in dictionary encoded int
+ * arrays and the keys in a string array, all indexed by row. A map from key to row serves key lookups. Rows of
+ * deleted persons are reused by later inserts.
+ *
+ * Writes take the write lock. Scans read the columns directly and must run inside {@link #read(ColumnScan)}, which
+ * holds the read lock for the whole scan so the arrays do not change underneath it. Every write reports the person
+ * it replaced or removed and the person it stored to the change listener while it still holds the write lock.
+ */
+public final class PersonColumns {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> rowsByKey = new HashMap<>();
+    private final StringDictionary firstNameDictionary = new StringDictionary();
+    private final StringDictionary lastNameDictionary = new StringDictionary();
+    private final EntityAccessors<PersonRow> accessors;
+    private final BiConsumer<Person, Person> changeListener;
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private int[] ages = new int[INITIAL_CAPACITY];
+    private int[] firstNames = new int[INITIAL_CAPACITY];
+    private int[] lastNames = new int[INITIAL_CAPACITY];
+    private int[] freeRows = new int[16];
+    private int freeRowCount;
+    private int rowCount;
+
+    public PersonColumns() {
+        this((previous, current) -> { });
+    }
+
+    public PersonColumns(BiConsumer<Person, Person> changeListener) {
+        this.changeListener = changeListener;
+        this.accessors = new EntityAccessors<>(PersonRow.class, Arrays.asList(
+                PropertyAccessor.of("id", String.class, row -> key(row.row)),
+                PropertyAccessor.ofEncoded("firstName", String.class, row -> firstNames[row.row],
+                        firstNameDictionary::decode, value -> firstNameDictionary.lookup((String) value)),
+                PropertyAccessor.ofEncoded("lastName", String.class, row -> lastNames[row.row],
+                        lastNameDictionary::decode, value -> lastNameDictionary.lookup((String) value)),
+                PropertyAccessor.ofInt("age", row -> age(row.row))));
+    }
+
+    /**
+     * Accessors reading the properties of a person directly from the columns, for compiling filters and orderings.
+     * The names are dictionary encoded, equality filters on them compare codes.
+     */
+    public EntityAccessors<PersonRow> getAccessors() {
+        return accessors;
+    }
+
+    public boolean insert(Person person) {
+        lock.writeLock().lock();
+        try {
+            return insertRow(person);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Inserts all persons whose key does not exist yet under a single acquisition of the write lock, returning the
+     * number of persons inserted.
+     */
+    public int insertAll(Collection<Person> persons) {
+        lock.writeLock().lock();
+        try {
+            int inserted = 0;
+            for (Person person : persons) {
+                if (insertRow(person)) {
+                    inserted++;
+                }
+            }
+            return inserted;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean update(Person person) {
+        lock.writeLock().lock();
+        try {
+            Integer row = rowsByKey.get(person.getPersonId());
+            if (row == null) {
+                return false;
+            }
+            Person previous = materialize(row);
+            write(row, person);
+            changeListener.accept(previous, person);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean delete(String key) {
+        lock.writeLock().lock();
+        try {
+            Integer row = rowsByKey.remove(key);
+            if (row == null) {
+                return false;
+            }
+
+            Person previous = materialize(row);
+            keys[row] = null;
+            if (freeRowCount == freeRows.length) {
+                freeRows = Arrays.copyOf(freeRows, freeRowCount * 2);
+            }
+            freeRows[freeRowCount++] = row;
+            changeListener.accept(previous, null);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Person get(String key) {
+        lock.readLock().lock();
+        try {
+            int row = rowOf(key);
+            return row < 0 ? null : materialize(row);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String key) {
+        lock.readLock().lock();
+        try {
+            return rowsByKey.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs the given scan while holding the read lock.
+     */
+    public <R> R read(ColumnScan<R> scan) throws ODataException {
+        lock.readLock().lock();
+        try {
+            return scan.run();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs the given change while holding the write lock, so no insert or delete runs concurrently.
+     */
+    public <R> R write(ColumnScan<R> change) throws ODataException {
+        lock.writeLock().lock();
+        try {
+            return change.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * The methods below read the columns without locking, they must be called from within a scan.
+     */
+
+    public int size() {
+        return rowsByKey.size();
+    }
+
+    /**
+     * The number of rows in use or freed, the upper bound of the row numbers to scan.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public boolean isLive(int row) {
+        return keys[row] != null;
+    }
+
+    public int rowOf(String key) {
+        Integer row = rowsByKey.get(key);
+        return row != null ? row : -1;
+    }
+
+    public String key(int row) {
+        return keys[row];
+    }
+
+    public int age(int row) {
+        return ages[row];
+    }
+
+    public String firstName(int row) {
+        return firstNameDictionary.decode(firstNames[row]);
+    }
+
+    public String lastName(int row) {
+        return lastNameDictionary.decode(lastNames[row]);
+    }
+
+    public Person materialize(int row) {
+        return new Person(key(row), firstName(row), lastName(row), age(row));
+    }
+
+    private boolean insertRow(Person person) {
+        if (rowsByKey.containsKey(person.getPersonId())) {
+            return false;
+        }
+
+        int row = freeRowCount > 0 ? freeRows[--freeRowCount] : nextRow();
+        write(row, person);
+        rowsByKey.put(person.getPersonId(), row);
+        changeListener.accept(null, person);
+        return true;
+    }
+
+    private int nextRow() {
+        if (rowCount == keys.length) {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            ages = Arrays.copyOf(ages, capacity);
+            firstNames = Arrays.copyOf(firstNames, capacity);
+            lastNames = Arrays.copyOf(lastNames, capacity);
+        }
+        return rowCount++;
+    }
+
+    private void write(int row, Person person) {
+        keys[row] = person.getPersonId();
+        ages[row] = person.getAge();
+        firstNames[row] = firstNameDictionary.encode(person.getFirstName());
+        lastNames[row] = lastNameDictionary.encode(person.getLastName());
+    }
+
+    /**
+     * A reference to a row, which compiled filters and orderings read the person properties through. Scans reuse
+     * a single reference per thread to evaluate filters, so filtering does not allocate per row.
+     */
+    public static final class PersonRow {
+        private int row;
+
+        public PersonRow() {
+        }
+
+        public PersonRow(int row) {
+            this.row = row;
+        }
+
+        public PersonRow at(int row) {
+            this.row = row;
+            return this;
+        }
+
+        public int getRow() {
+            return row;
+        }
+    }
+
+    /**
+     * A scan over the columns.
+     *
+     * @param <R> The result of the scan
+     */
+    @FunctionalInterface
+    public interface ColumnScan<R> {
+        R run() throws ODataException;
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.processor.datasource.DataSource;
+import com.sdl.odata.example.AggregateGroup;
+import com.sdl.odata.example.Person;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+
+/**
+ * A storage backend for {@link Person} entities. The {@link InMemoryDataSourceProvider} serves queries from the
+ * backend selected by 'odata.example.storage'.
+ */
+public interface PersonDataSource extends DataSource {
+
+    /**
+     * Bulk loads the given persons, skipping persons whose key already exists instead of failing on them. Returns
+     * the number of persons created.
+     */
+    int createAll(Collection<Person> persons) throws ODataException;
+
+    /**
+     * A counter that moves forward on every change to the stored persons, so that results computed at one version
+     * are known to be current for as long as the version does not change.
+     */
+    long getVersion();
+
+    /**
+     * The number of persons stored.
+     */
+    long size() throws ODataException;
+
+    /**
+     * Looks up the persons with the given keys in a single pass, leaving out the keys without a person.
+     */
+    Map<String, Person> getAll(Collection<String> keys) throws ODataException;
+
+    /**
+     * The links between the stored persons, maintained through createLink and deleteLink.
+     */
+    PersonLinks getLinks();
+
+    /**
+     * The journal the changes to the stored persons are recorded in, for syncing clients by delta token.
+     */
+    ChangeJournal getChangeJournal();
+
+    /**
+     * Counts the persons matching the query, without materializing them.
+     */
+    long count(StrategyBuilder builder) throws ODataException;
+
+    /**
+     * Returns the page of persons selected by the query.
+     */
+    List<Person> query(StrategyBuilder builder) throws ODataException;
+
+    /**
+     * Groups and aggregates all persons, returning one row per group.
+     */
+    List<AggregateGroup> aggregate(Aggregation aggregation) throws ODataException;
+
+    /**
+     * The incrementally maintained aggregates over all persons, with a {@link NumericAggregate} for every int
+     * property.
+     */
+    EntityAggregates<Person> getAggregates();
+
+    /**
+     * The average age of all persons, empty if there are none.
+     */
+    default OptionalDouble averageAge() {
+        return getAggregates().getAggregate("age", NumericAggregate.class).average();
+    }
+}
@@ -0,0 +1,336 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataBadRequestException;
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.ODataNotImplementedException;
+import com.sdl.odata.api.processor.datasource.ODataDataSourceException;
+import com.sdl.odata.api.processor.link.ODataLink;
+import com.sdl.odata.example.Person;
+import scala.Option;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+/**
+ * The links between persons, kept as adjacency maps in both directions: the manager of every person that has one
+ * and the direct reports of every manager. The navigation properties 'manager' and 'reports' are partners, a link
+ * created or deleted through one of them is visible through the other.
+ *
+ * A link change is resolved into an {@link Assignment} of the manager of one person. The data sources check that
+ * both persons exist and apply the assignment under the same lock as the deletes of those persons, and log it
+ * together with their persons, so a link never outlives a person and survives a restart wherever the persons do.
+ * Changes are serialized on the links, lookups never wait.
+ */
+public class PersonLinks {
+    public static final String MANAGER = "manager";
+    public static final String REPORTS = "reports";
+
+    private final ConcurrentMap<String, String> managers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> reports = new ConcurrentHashMap<>();
+    private final Runnable changeListener;
+
+    /**
+     * @param changeListener Called after every change to the links, so the data source can move its version
+     */
+    public PersonLinks(Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Whether the given navigation property can be expanded.
+     */
+    public static boolean isNavigationProperty(String propertyName) {
+        return MANAGER.equals(propertyName) || REPORTS.equals(propertyName);
+    }
+
+    /**
+     * Resolves a link to create into the manager it sets: the person the link is about gets the other person as
+     * its manager, replacing its earlier manager, whichever of the two navigation properties the link is on.
+     */
+    public static Assignment toAssignment(ODataLink link) throws ODataException {
+        String propertyName = propertyName(link);
+        String from = key(link.getFromEntityKey());
+        String to = key(link.getToEntityKey());
+        if (from == null || to == null) {
+            throw new ODataDataSourceException("Unable to create link, entity does not exist");
+        }
+        return MANAGER.equals(propertyName) ? new Assignment(from, to, null) : new Assignment(to, from, null);
+    }
+
+    /**
+     * Resolves a link to delete into the manager it removes. A link to the manager is deleted whatever the manager
+     * is, a link to a report only if that person reports to the person the link is from.
+     */
+    public static Assignment toRemoval(ODataLink link) throws ODataException {
+        String from = key(link.getFromEntityKey());
+        if (from == null) {
+            throw new ODataBadRequestException("A link to remove needs the key of the person it is from");
+        }
+        if (MANAGER.equals(propertyName(link))) {
+            return new Assignment(from, null, null);
+        }
+
+        String to = key(link.getToEntityKey());
+        if (to == null) {
+            throw new ODataBadRequestException("A link to remove from 'reports' needs the key of the report");
+        }
+        return new Assignment(to, null, from);
+    }
+
+    /**
+     * Whether the assignment changes the links as they are. Must be called under the lock the assignment is applied
+     * under.
+     */
+    public boolean changes(Assignment assignment) {
+        return assignment.changes(managers.get(assignment.person));
+    }
+
+    /**
+     * Resolves the assignments of a transaction, applied in order after its person changes, into the manager each
+     * person ends up with, for the persons whose manager changes. A null manager removes it. A person the
+     * transaction deletes loses its links, so assignments linking it are dropped. Must be called while holding the
+     * keys of all persons involved.
+     */
+    public Map<String, String> resolve(List<Assignment> assignments, Predicate<String> deleted) {
+        Map<String, String> resolved = new LinkedHashMap<>();
+        for (Assignment assignment : assignments) {
+            if (deleted.test(assignment.person) || (assignment.manager != null && deleted.test(assignment.manager))) {
+                continue;
+            }
+            String current = resolved.containsKey(assignment.person) ? resolved.get(assignment.person)
+                    : remainingManager(assignment.person, deleted);
+            if (assignment.changes(current)) {
+                resolved.put(assignment.person, assignment.manager);
+            }
+        }
+        resolved.entrySet().removeIf(entry -> Objects.equals(entry.getValue(),
+                remainingManager(entry.getKey(), deleted)));
+        return resolved;
+    }
+
+    //the manager of a person once the persons a transaction deletes are removed
+    private String remainingManager(String person, Predicate<String> deleted) {
+        String manager = managers.get(person);
+        return manager != null && !deleted.test(manager) ? manager : null;
+    }
+
+    public void assign(Assignment assignment) {
+        setManager(assignment.person, assignment.manager);
+    }
+
+    /**
+     * Sets or, for a null manager, removes the manager of the given person.
+     */
+    public synchronized void setManager(String person, String manager) {
+        String previous = manager != null ? managers.put(person, manager) : managers.remove(person);
+        if (previous != null) {
+            removeReport(previous, person);
+        }
+        if (manager != null) {
+            reports.computeIfAbsent(manager, k -> ConcurrentHashMap.newKeySet()).add(person);
+        }
+        if (previous != null || manager != null) {
+            changeListener.run();
+        }
+    }
+
+    /**
+     * Removes all links of a deleted person.
+     */
+    public synchronized void remove(String person) {
+        String manager = managers.remove(person);
+        if (manager != null) {
+            removeReport(manager, person);
+        }
+        Set<String> removedReports = reports.remove(person);
+        if (removedReports != null) {
+            removedReports.forEach(managers::remove);
+        }
+        if (manager != null || removedReports != null) {
+            changeListener.run();
+        }
+    }
+
+    public String getManager(String person) {
+        return managers.get(person);
+    }
+
+    /**
+     * The manager of every person that has one, for writing them to a snapshot.
+     */
+    public Map<String, String> getManagers() {
+        return Collections.unmodifiableMap(managers);
+    }
+
+    public Set<String> getReports(String person) {
+        Set<String> personReports = reports.get(person);
+        return personReports != null ? Collections.unmodifiableSet(personReports) : Collections.emptySet();
+    }
+
+    /**
+     * Returns copies of the given persons with the given navigation properties filled. The keys of all related
+     * persons of the whole page are collected first and loaded in a single batch, so expanding costs one lookup
+     * per related person rather than one query per person of the page.
+     */
+    public List<Person> expand(List<Person> persons, List<String> propertyNames, PersonDataSource dataSource)
+            throws ODataException {
+        boolean expandManager = propertyNames.contains(MANAGER);
+        boolean expandReports = propertyNames.contains(REPORTS);
+
+        //The adjacency is read once, so the links and the related persons loaded for them agree
+        Map<String, String> managerKeys = new HashMap<>();
+        Map<String, List<String>> reportKeys = new HashMap<>();
+        Set<String> related = new HashSet<>();
+        for (Person person : persons) {
+            String key = person.getPersonId();
+            if (expandManager) {
+                String manager = managers.get(key);
+                if (manager != null) {
+                    managerKeys.put(key, manager);
+                    related.add(manager);
+                }
+            }
+            if (expandReports) {
+                List<String> personReports = new ArrayList<>(getReports(key));
+                Collections.sort(personReports);
+                reportKeys.put(key, personReports);
+                related.addAll(personReports);
+            }
+        }
+
+        Map<String, Person> loaded = related.isEmpty() ? Collections.emptyMap() : dataSource.getAll(related);
+        List<Person> expanded = new ArrayList<>(persons.size());
+        for (Person person : persons) {
+            Person copy = new Person(person.getPersonId(), person.getFirstName(), person.getLastName(),
+                    person.getAge());
+            if (expandManager) {
+                String manager = managerKeys.get(person.getPersonId());
+                copy.setManager(manager != null ? loaded.get(manager) : null);
+            }
+            if (expandReports) {
+                List<Person> personReports = new ArrayList<>();
+                for (String report : reportKeys.get(person.getPersonId())) {
+                    Person reportPerson = loaded.get(report);
+                    if (reportPerson != null) {
+                        personReports.add(reportPerson);
+                    }
+                }
+                copy.setReports(personReports);
+            }
+            expanded.add(copy);
+        }
+        return expanded;
+    }
+
+    private void removeReport(String manager, String person) {
+        Set<String> managerReports = reports.get(manager);
+        if (managerReports != null) {
+            managerReports.remove(person);
+            if (managerReports.isEmpty()) {
+                reports.remove(manager);
+            }
+        }
+    }
+
+    private static String propertyName(ODataLink link) throws ODataException {
+        String propertyName = link.getFromNavigationProperty().getName();
+        if (!isNavigationProperty(propertyName)) {
+            throw new ODataNotImplementedException("Unsupported navigation property: " + propertyName);
+        }
+        return propertyName;
+    }
+
+    private static String key(scala.collection.immutable.Map<String, Object> entityKey) throws ODataException {
+        if (entityKey == null) {
+            return null;
+        }
+        Option<Object> key = entityKey.get(StrategyBuilder.KEY_PROPERTY);
+        if (key.isEmpty()) {
+            return null;
+        }
+        if (!(key.get() instanceof String)) {
+            throw new ODataBadRequestException("Invalid person key: " + key.get());
+        }
+        return (String) key.get();
+    }
+
+    /**
+     * The manager a link change assigns to a person, null if it removes the manager.
+     */
+    public static final class Assignment {
+        private final String person;
+        private final String manager;
+        //the manager a removal only applies to, null for any
+        private final String expectedManager;
+
+        private Assignment(String person, String manager, String expectedManager) {
+            this.person = person;
+            this.manager = manager;
+            this.expectedManager = expectedManager;
+        }
+
+        public String getPerson() {
+            return person;
+        }
+
+        public String getManager() {
+            return manager;
+        }
+
+        /**
+         * The keys of the persons the assignment links, sorted so they can be locked in order.
+         */
+        public SortedSet<String> getKeys() {
+            SortedSet<String> keys = new TreeSet<>();
+            keys.add(person);
+            if (manager != null) {
+                keys.add(manager);
+            }
+            return keys;
+        }
+
+        private boolean changes(String current) {
+            if (manager != null) {
+                return !manager.equals(current);
+            }
+            return current != null && (expectedManager == null || expectedManager.equals(current));
+        }
+
+        /**
+         * Checks that the persons a new manager links exist, a removal always can be applied.
+         */
+        public void checkExists(Predicate<String> exists) throws ODataException {
+            if (manager != null && (!exists.test(person) || !exists.test(manager))) {
+                throw new ODataDataSourceException("Unable to create link, entity does not exist");
+            }
+        }
+    }
+}
@@ -0,0 +1,402 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataSystemException;
+import com.sdl.odata.api.processor.datasource.ODataDataSourceException;
+import com.sdl.odata.example.Person;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of person records in a memory-mapped file. Every create or update appends the full record, every
+ * delete appends a tombstone, and an in-memory map points each key at its latest record. Persons are decoded from
+ * the mapping when they are read, so the heap only holds the keys and their offsets, not the persons. The manager
+ * of a person is logged the same way in a manager record of its own, a manager record without a manager removes
+ * it.
+ *
+ * The file is mapped in segments of {@link #SEGMENT_SIZE} bytes and records never span two segments, records are
+ * encoded as described in {@link PersonRecords}. Opening the log replays it to rebuild the key map, stopping at the
+ * first torn or corrupt record.
+ *
+ * Superseded records are reclaimed by {@link #compact()}, which copies the live records into a new file and swaps
+ * it in. Readers are never blocked: they read from the generation (file mapping plus key map) that was current when
+ * they started, which stays mapped until it is no longer referenced.
+ *
+ * Appended records are written to the mapping only, they survive a crash of the process but not of the operating
+ * system until they are flushed by {@link #force()}, which writes the segments appended to since the last flush.
+ * Compaction and {@link #close()} flush as well.
+ */
+public final class PersonLog implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(PersonLog.class);
+
+    static final int SEGMENT_SIZE = 64 << 20;
+
+    private static final int HEADER_SIZE = PersonRecords.HEADER_SIZE;
+    private static final int END_OF_SEGMENT = -1;
+
+    private final Path path;
+    private volatile Generation current;
+    private long liveBytes;
+    private long garbageBytes;
+
+    public PersonLog(Path path) throws IOException {
+        this.path = path;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.current = new Generation(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE));
+        replay();
+    }
+
+    public int size() {
+        return current.offsets.size();
+    }
+
+    public boolean contains(String key) {
+        return current.offsets.containsKey(key);
+    }
+
+    public Person get(String key) {
+        Generation generation = current;
+        Long offset = generation.offsets.get(key);
+        return offset != null ? generation.read(offset) : null;
+    }
+
+    /**
+     * Streams all live persons of the current generation.
+     */
+    public Stream<Person> stream() {
+        Generation generation = current;
+        return generation.offsets.values().stream().map(generation::read);
+    }
+
+    public long getLiveBytes() {
+        return liveBytes;
+    }
+
+    public long getGarbageBytes() {
+        return garbageBytes;
+    }
+
+    /**
+     * Appends the person if no person with its key exists yet.
+     */
+    public synchronized boolean insert(Person person) throws ODataDataSourceException {
+        if (current.offsets.containsKey(person.getPersonId())) {
+            return false;
+        }
+        put(person);
+        return true;
+    }
+
+    /**
+     * Appends the person if a person with its key exists.
+     */
+    public synchronized boolean replace(Person person) throws ODataDataSourceException {
+        if (!current.offsets.containsKey(person.getPersonId())) {
+            return false;
+        }
+        put(person);
+        return true;
+    }
+
+    public synchronized boolean remove(String key) throws ODataDataSourceException {
+        Long offset = current.offsets.get(key);
+        if (offset == null) {
+            return false;
+        }
+
+        byte[] payload = PersonRecords.encodeDelete(key);
+        append(current, payload);
+        long replaced = current.recordSize(offset);
+        liveBytes -= replaced;
+        garbageBytes += replaced + HEADER_SIZE + payload.length;
+        current.offsets.remove(key);
+        return true;
+    }
+
+    /**
+     * Appends a manager record for the person with the given key, a null manager removes its manager.
+     */
+    public synchronized void setManager(String key, String manager) throws ODataDataSourceException {
+        Long replaced = current.managerOffsets.get(key);
+        if (manager == null && replaced == null) {
+            return;
+        }
+
+        byte[] payload = PersonRecords.encodeManager(key, manager);
+        long offset = append(current, payload);
+        long recordSize = HEADER_SIZE + payload.length;
+        if (manager != null) {
+            current.managerOffsets.put(key, offset);
+            liveBytes += recordSize;
+        } else {
+            current.managerOffsets.remove(key);
+            garbageBytes += recordSize;
+        }
+        if (replaced != null) {
+            long replacedSize = current.recordSize(replaced);
+            liveBytes -= replacedSize;
+            garbageBytes += replacedSize;
+        }
+    }
+
+    /**
+     * Decodes the manager of every person that has one, for restoring the links when the log is opened.
+     */
+    public Map<String, String> getManagers() {
+        Generation generation = current;
+        Map<String, String> managers = new HashMap<>();
+        for (Map.Entry<String, Long> entry : generation.managerOffsets.entrySet()) {
+            managers.put(entry.getKey(), PersonRecords.decodeManager(generation.payload(entry.getValue())));
+        }
+        return managers;
+    }
+
+    /**
+     * Rewrites the log with only the live records, if there is at least as much garbage as the given minimum.
+     * Returns whether the log was compacted.
+     */
+    public synchronized boolean compact(long minimumGarbage) throws ODataDataSourceException {
+        if (garbageBytes < minimumGarbage || garbageBytes < liveBytes) {
+            return false;
+        }
+        compact();
+        return true;
+    }
+
+    public synchronized void compact() throws ODataDataSourceException {
+        LOG.info("Compacting {}: {} live bytes, {} garbage bytes", path, liveBytes, garbageBytes);
+        Path compactPath = Paths.get(path + ".compact");
+        Generation old = current;
+        try {
+            Generation compacted = new Generation(FileChannel.open(compactPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE));
+            for (Map.Entry<String, Long> entry : old.offsets.entrySet()) {
+                long offset = append(compacted, old.payload(entry.getValue()));
+                compacted.offsets.put(entry.getKey(), offset);
+            }
+            for (Map.Entry<String, Long> entry : old.managerOffsets.entrySet()) {
+                long offset = append(compacted, old.payload(entry.getValue()));
+                compacted.managerOffsets.put(entry.getKey(), offset);
+            }
+            compacted.force();
+            Files.move(compactPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            current = compacted;
+            garbageBytes = 0;
+            old.channel.close();
+        } catch (IOException e) {
+            throw new ODataDataSourceException("Unable to compact log: " + path, e);
+        }
+    }
+
+    /**
+     * Flushes the records appended since the last flush to the storage device.
+     */
+    public synchronized void force() {
+        current.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        current.force();
+        current.channel.close();
+    }
+
+    private void put(Person person) throws ODataDataSourceException {
+        byte[] payload = PersonRecords.encodePut(person);
+        long offset = append(current, payload);
+        Long replaced = current.offsets.put(person.getPersonId(), offset);
+        if (replaced != null) {
+            long replacedSize = current.recordSize(replaced);
+            liveBytes -= replacedSize;
+            garbageBytes += replacedSize;
+        }
+        liveBytes += HEADER_SIZE + payload.length;
+    }
+
+    private static long append(Generation generation, byte[] payload) throws ODataDataSourceException {
+        int recordSize = HEADER_SIZE + payload.length;
+        if (recordSize > SEGMENT_SIZE) {
+            throw new ODataDataSourceException("Record of " + recordSize + " bytes does not fit in a log segment");
+        }
+
+        long position = generation.end;
+        int inSegment = (int) (position % SEGMENT_SIZE);
+        if (inSegment + recordSize > SEGMENT_SIZE) {
+            //the record does not fit in the rest of this segment, mark the rest as unused and move to the next one
+            if (SEGMENT_SIZE - inSegment >= 4) {
+                generation.segment(position).putInt(inSegment, END_OF_SEGMENT);
+            }
+            position += SEGMENT_SIZE - inSegment;
+            inSegment = 0;
+        }
+
+        ByteBuffer segment = generation.segment(position).duplicate();
+        segment.position(inSegment);
+        segment.putInt(payload.length).putInt(PersonRecords.checksum(payload)).put(payload);
+
+        generation.end = position + recordSize;
+        return position;
+    }
+
+    private void replay() throws IOException {
+        Generation generation = current;
+        long position = 0;
+        long size = generation.channel.size();
+        while (position < size) {
+            int inSegment = (int) (position % SEGMENT_SIZE);
+            ByteBuffer segment = generation.segment(position);
+            int length = SEGMENT_SIZE - inSegment >= HEADER_SIZE ? segment.getInt(inSegment) : END_OF_SEGMENT;
+            if (length == END_OF_SEGMENT) {
+                position += SEGMENT_SIZE - inSegment;
+                continue;
+            }
+            if (length == 0) {
+                break;
+            }
+
+            byte[] payload = length > 0 && inSegment + HEADER_SIZE + length <= SEGMENT_SIZE
+                    ? generation.payload(position) : null;
+            if (payload == null || PersonRecords.checksum(payload) != segment.getInt(inSegment + 4)) {
+                LOG.warn("Corrupt or incomplete record at offset {} in {}, discarding the rest of the log",
+                        position, path);
+                discardFrom(generation, position);
+                break;
+            }
+
+            String key = PersonRecords.decodeKey(payload);
+            long recordSize = HEADER_SIZE + length;
+            boolean manager = PersonRecords.type(payload) == PersonRecords.MANAGER;
+            Map<String, Long> offsets = manager ? generation.managerOffsets : generation.offsets;
+            boolean put = manager ? PersonRecords.decodeManager(payload) != null
+                    : PersonRecords.type(payload) == PersonRecords.PUT;
+            Long replaced = put ? offsets.put(key, position) : offsets.remove(key);
+            if (put) {
+                liveBytes += recordSize;
+            } else {
+                garbageBytes += recordSize;
+            }
+            if (replaced != null) {
+                long replacedSize = generation.recordSize(replaced);
+                liveBytes -= replacedSize;
+                garbageBytes += replacedSize;
+            }
+            position += recordSize;
+        }
+
+        generation.end = position;
+        LOG.info("Opened {} with {} persons, {} live bytes, {} garbage bytes", path, generation.offsets.size(),
+                liveBytes, garbageBytes);
+    }
+
+    private static void discardFrom(Generation generation, long position) throws IOException {
+        int inSegment = (int) (position % SEGMENT_SIZE);
+        ByteBuffer segment = generation.segment(position).duplicate();
+        segment.position(inSegment);
+        segment.put(new byte[SEGMENT_SIZE - inSegment]);
+        generation.channel.truncate(position - inSegment + SEGMENT_SIZE);
+    }
+
+    /**
+     * One version of the log file: its channel, the segments mapped so far and the offsets of the live person and
+     * manager records.
+     */
+    private static final class Generation {
+        private final FileChannel channel;
+        private final Map<String, Long> offsets = new ConcurrentHashMap<>();
+        private final Map<String, Long> managerOffsets = new ConcurrentHashMap<>();
+        private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+        private long end;
+        private long forced;
+
+        private Generation(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private MappedByteBuffer segment(long position) {
+            int index = (int) (position / SEGMENT_SIZE);
+            MappedByteBuffer[] mapped = segments;
+            if (index < mapped.length) {
+                return mapped[index];
+            }
+            return map(index);
+        }
+
+        private synchronized MappedByteBuffer map(int index) {
+            MappedByteBuffer[] mapped = segments;
+            if (index >= mapped.length) {
+                mapped = Arrays.copyOf(mapped, index + 1);
+                try {
+                    for (int i = segments.length; i <= index; i++) {
+                        mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * SEGMENT_SIZE, SEGMENT_SIZE);
+                    }
+                } catch (IOException e) {
+                    throw new ODataSystemException("Unable to map log segment " + index, e);
+                }
+                segments = mapped;
+            }
+            return mapped[index];
+        }
+
+        private long recordSize(long offset) {
+            return HEADER_SIZE + segment(offset).getInt((int) (offset % SEGMENT_SIZE));
+        }
+
+        private byte[] payload(long offset) {
+            int inSegment = (int) (offset % SEGMENT_SIZE);
+            ByteBuffer segment = segment(offset).duplicate();
+            byte[] payload = new byte[segment.getInt(inSegment)];
+            segment.position(inSegment + HEADER_SIZE);
+            segment.get(payload);
+            return payload;
+        }
+
+        private Person read(long offset) {
+            int inSegment = (int) (offset % SEGMENT_SIZE);
+            ByteBuffer record = segment(offset).duplicate();
+            record.position(inSegment + HEADER_SIZE + 1);
+            return PersonRecords.decodePerson(record);
+        }
+
+        private void force() {
+            MappedByteBuffer[] mapped = segments;
+            int last = (int) Math.min(end / SEGMENT_SIZE, mapped.length - 1);
+            for (int i = (int) (forced / SEGMENT_SIZE); i <= last; i++) {
+                mapped[i].force();
+            }
+            forced = end;
+        }
+    }
+}
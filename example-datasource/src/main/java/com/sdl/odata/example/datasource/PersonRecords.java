@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.example.Person;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary encoding of person records, shared by the {@link PersonLog} and the {@link WriteAheadLog}. A record is
+ * framed as its payload length and the CRC32 of the payload, followed by the payload: the record type, the key and,
+ * for a put, the first name, last name and age, for a manager record the key of the manager, null when the person
+ * no longer has one. A batch payload holds the number of nested payloads, each preceded by its length. Strings are
+ * written as their UTF-8 length and bytes, with a length of -1 for null.
+ */
+final class PersonRecords {
+    static final int HEADER_SIZE = 8;
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    static final byte BATCH = 3;
+    static final byte MANAGER = 4;
+
+    private PersonRecords() {
+    }
+
+    static byte[] encodePut(Person person) {
+        byte[] key = bytes(person.getPersonId());
+        byte[] firstName = bytes(person.getFirstName());
+        byte[] lastName = bytes(person.getLastName());
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 12 + length(key) + length(firstName) + length(lastName) + 4);
+        buffer.put(PUT);
+        putString(buffer, key);
+        putString(buffer, firstName);
+        putString(buffer, lastName);
+        buffer.putInt(person.getAge());
+        return buffer.array();
+    }
+
+    static byte[] encodeDelete(String key) {
+        byte[] keyBytes = bytes(key);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + length(keyBytes));
+        buffer.put(DELETE);
+        putString(buffer, keyBytes);
+        return buffer.array();
+    }
+
+    static byte[] encodeManager(String key, String manager) {
+        byte[] keyBytes = bytes(key);
+        byte[] managerBytes = bytes(manager);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + length(keyBytes) + length(managerBytes));
+        buffer.put(MANAGER);
+        putString(buffer, keyBytes);
+        putString(buffer, managerBytes);
+        return buffer.array();
+    }
+
+    static byte[] encodeBatch(List<byte[]> payloads) {
+        int size = 1 + 4;
+        for (byte[] payload : payloads) {
+            size += 4 + payload.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(BATCH).putInt(payloads.size());
+        for (byte[] payload : payloads) {
+            buffer.putInt(payload.length).put(payload);
+        }
+        return buffer.array();
+    }
+
+    static List<byte[]> decodeBatch(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload, 1, payload.length - 1);
+        int count = buffer.getInt();
+        List<byte[]> payloads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] nested = new byte[buffer.getInt()];
+            buffer.get(nested);
+            payloads.add(nested);
+        }
+        return payloads;
+    }
+
+    /**
+     * Frames the payload with its length and checksum.
+     */
+    static byte[] frame(byte[] payload) {
+        return ByteBuffer.allocate(HEADER_SIZE + payload.length)
+                .putInt(payload.length).putInt(checksum(payload)).put(payload).array();
+    }
+
+    static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    static byte type(byte[] payload) {
+        return payload[0];
+    }
+
+    static String decodeKey(byte[] payload) {
+        return decodeString(ByteBuffer.wrap(payload, 1, payload.length - 1));
+    }
+
+    /**
+     * Decodes the key of the manager from a manager payload, null if the record removes the manager.
+     */
+    static String decodeManager(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload, 1, payload.length - 1);
+        decodeString(buffer);
+        return decodeString(buffer);
+    }
+
+    static Person decodePerson(byte[] payload) {
+        return decodePerson(ByteBuffer.wrap(payload, 1, payload.length - 1));
+    }
+
+    /**
+     * Decodes the person from a put payload, reading from the current position of the buffer just after the type.
+     */
+    static Person decodePerson(ByteBuffer payload) {
+        String key = decodeString(payload);
+        String firstName = decodeString(payload);
+        String lastName = decodeString(payload);
+        return new Person(key, firstName, lastName, payload.getInt());
+    }
+
+    private static byte[] bytes(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int length(byte[] value) {
+        return value != null ? value.length : 0;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(value.length).put(value);
+        }
+    }
+
+    private static String decodeString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Typed getter for a single EDM property of an entity. Properties of primitive type int expose an unboxed
+ * getter next to the generic one, so predicates over them never have to box.
+ *
+ * Properties stored dictionary encoded expose the code of their value and a lookup of the code of a given value, so
+ * equality filters on them compare int codes instead of decoding every value.
+ *
+ * @param <T> The entity type
+ */
+public final class PropertyAccessor<T> {
+    /**
+     * The code looked up for a value that is not in the dictionary, which no stored value has.
+     */
+    public static final int NO_CODE = Integer.MIN_VALUE;
+
+    private final String name;
+    private final Class<?> type;
+    private final Function<T, Object> getter;
+    private final ToIntFunction<T> intGetter;
+    private final ToIntFunction<T> codeGetter;
+    private final ToIntFunction<Object> codeLookup;
+
+    PropertyAccessor(String name, Class<?> type, Function<T, Object> getter, ToIntFunction<T> intGetter,
+                     ToIntFunction<T> codeGetter, ToIntFunction<Object> codeLookup) {
+        this.name = name;
+        this.type = type;
+        this.getter = getter;
+        this.intGetter = intGetter;
+        this.codeGetter = codeGetter;
+        this.codeLookup = codeLookup;
+    }
+
+    public static <T> PropertyAccessor<T> of(String name, Class<?> type, Function<T, Object> getter) {
+        return new PropertyAccessor<>(name, type, getter, null, null, null);
+    }
+
+    public static <T> PropertyAccessor<T> ofInt(String name, ToIntFunction<T> intGetter) {
+        return new PropertyAccessor<>(name, int.class, entity -> intGetter.applyAsInt(entity), intGetter, null, null);
+    }
+
+    /**
+     * Returns an accessor for a dictionary encoded property. The lookup returns the code of a value, or
+     * {@link #NO_CODE} if no stored value is equal to it.
+     */
+    public static <T> PropertyAccessor<T> ofEncoded(String name, Class<?> type, ToIntFunction<T> codeGetter,
+                                                    IntFunction<Object> decoder, ToIntFunction<Object> codeLookup) {
+        return new PropertyAccessor<>(name, type, entity -> decoder.apply(codeGetter.applyAsInt(entity)), null,
+                codeGetter, codeLookup);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public boolean isInt() {
+        return intGetter != null;
+    }
+
+    public Object get(T entity) {
+        return getter.apply(entity);
+    }
+
+    public int getInt(T entity) {
+        if (intGetter == null) {
+            throw new IllegalStateException("Property '" + name + "' is not of type int");
+        }
+        return intGetter.applyAsInt(entity);
+    }
+
+    public Function<T, Object> getter() {
+        return getter;
+    }
+
+    public ToIntFunction<T> intGetter() {
+        return intGetter;
+    }
+
+    public boolean isEncoded() {
+        return codeGetter != null;
+    }
+
+    public ToIntFunction<T> codeGetter() {
+        return codeGetter;
+    }
+
+    /**
+     * The code of the given value, or {@link #NO_CODE} if no stored value is equal to it.
+     */
+    public int codeOf(Object value) {
+        if (codeLookup == null) {
+            throw new IllegalStateException("Property '" + name + "' is not dictionary encoded");
+        }
+        return codeLookup.applyAsInt(value);
+    }
+
+    @Override
+    public String toString() {
+        return name + ":" + type.getSimpleName();
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.processor.query.Descending$;
+import com.sdl.odata.example.AggregateGroup;
+import com.sdl.odata.example.Person;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Executes a query built by the {@link StrategyBuilder} against a store of person objects. It picks the access
+ * path (key lookup, secondary index or full scan), the way to produce the requested page, and whether the scan is
+ * large enough to run in parallel on the {@link ParallelScanExecutor}.
+ *
+ * Parallel execution never changes the result: counts, top-k selections and full sorts are order independent or
+ * fully ordered by the query comparator, so they are merged from parallel partitions. A page without an order that
+ * is limited by $skip or $top stays sequential, both because it can stop early and because the sequential map
+ * order is what keeps consecutive pages consistent.
+ */
+public class QueryExecutor {
+    private final Function<String, Person> lookup;
+    private final Supplier<Stream<Person>> fullScan;
+    private final LongSupplier size;
+    private final EntityIndexes<Person> indexes;
+    private final ParallelScanExecutor scanExecutor;
+    private final QueryMetrics metrics;
+
+    /**
+     * @param lookup       Resolves a person by key, returning null if it does not exist
+     * @param fullScan     Streams all persons
+     * @param size         The number of persons
+     * @param indexes      The secondary indexes available for planning
+     * @param scanExecutor The executor for parallel scans
+     * @param metrics      The metrics to record the access paths and candidates of the queries in
+     */
+    public QueryExecutor(Function<String, Person> lookup, Supplier<Stream<Person>> fullScan, LongSupplier size,
+                         EntityIndexes<Person> indexes, ParallelScanExecutor scanExecutor, QueryMetrics metrics) {
+        this.lookup = lookup;
+        this.fullScan = fullScan;
+        this.size = size;
+        this.indexes = indexes;
+        this.scanExecutor = scanExecutor;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Counts the matching persons without materializing any of them.
+     */
+    public long count(StrategyBuilder builder, Predicate<Person> predicate) throws ODataException {
+        Source source = source(builder);
+        if (isParallel(source)) {
+            return scanExecutor.execute(() -> source.stream().parallel().filter(predicate).count());
+        }
+        return source.stream().filter(predicate).count();
+    }
+
+    /**
+     * Groups and aggregates all persons, over parallel partitions if there are enough of them.
+     */
+    public List<AggregateGroup> aggregate(GroupAggregator<Person> aggregator) throws ODataException {
+        long scanned = size.getAsLong();
+        if (scanExecutor.isParallel(scanned)) {
+            return scanExecutor.execute(() -> aggregator.aggregate(fullScan.get().parallel()));
+        }
+        return aggregator.aggregate(fullScan.get());
+    }
+
+    /**
+     * Returns the page of matching persons selected by the order, skip and limit of the query.
+     */
+    public List<Person> page(StrategyBuilder builder, Predicate<Person> predicate) throws ODataException {
+        int limit = builder.getLimit();
+        int skip = builder.getSkip();
+        Comparator<Person> orderBy = builder.getOrderBy();
+
+        if (orderBy != null) {
+            SortedIndex<Person> orderIndex = orderIndex(builder);
+            if (orderIndex != null) {
+                metrics.increment("access.index-order");
+                //The scan stops once the page is full, so only the persons it pulled from the index are candidates
+                long[] candidates = new long[1];
+                List<Person> page = paginate(orderedIndexScan(orderIndex, builder)
+                        .peek(person -> candidates[0]++).filter(predicate), skip, limit);
+                metrics.add("rows.candidates", candidates[0]);
+                return page;
+            }
+
+            Source source = source(builder);
+            boolean parallel = isParallel(source);
+            long pageEnd = (long) skip + limit;
+            if (limit != Integer.MAX_VALUE && pageEnd <= Integer.MAX_VALUE) {
+                List<Person> top = scan(source, parallel,
+                        stream -> stream.filter(predicate).collect(TopK.collector(orderBy, (int) pageEnd)));
+                return skip >= top.size() ? Collections.emptyList() : top.subList(skip, top.size());
+            }
+            return scan(source, parallel, stream -> paginate(stream.filter(predicate).sorted(orderBy), skip, limit));
+        }
+
+        Source source = source(builder);
+        if (skip == 0 && limit == Integer.MAX_VALUE && isParallel(source)) {
+            return scanExecutor.execute(() ->
+                    source.stream().parallel().filter(predicate).collect(Collectors.toList()));
+        }
+
+        //filter, skip and limit are evaluated lazily and stop pulling from the source once the page is full
+        return paginate(source.stream().filter(predicate), skip, limit);
+    }
+
+    private List<Person> scan(Source source, boolean parallel, Function<Stream<Person>, List<Person>> scan) throws ODataException {
+        if (parallel) {
+            return scanExecutor.execute(() -> scan.apply(source.stream().parallel()));
+        }
+        return scan.apply(source.stream());
+    }
+
+    private static List<Person> paginate(Stream<Person> personStream, int skip, int limit) {
+        if (skip != 0) {
+            personStream = personStream.skip(skip);
+        }
+        if (limit != Integer.MAX_VALUE) {
+            personStream = personStream.limit(limit);
+        }
+        return personStream.collect(Collectors.toList());
+    }
+
+    private boolean isParallel(Source source) {
+        boolean parallel = scanExecutor.isParallel(source.size);
+        if (parallel) {
+            metrics.increment("access.parallel");
+        }
+        return parallel;
+    }
+
+    /**
+     * Picks the access path of the query, recording it and its (estimated) number of candidates in the metrics.
+     */
+    private Source source(StrategyBuilder builder) {
+        Source source;
+        if (builder.isKeyLookup()) {
+            Person person = lookup.apply(builder.getKeyLookup());
+            metrics.increment("access.key");
+            source = new Source(person != null ? 1 : 0, () -> person != null ? Stream.of(person) : Stream.empty());
+        } else {
+            QueryPlanner.IndexPlan plan = plan(builder);
+            if (plan != null) {
+                metrics.increment("access.index");
+                source = new Source(plan.getEstimate(), () -> plan.keys().map(lookup).filter(Objects::nonNull));
+            } else {
+                metrics.increment("access.scan");
+                source = new Source(size.getAsLong(), fullScan);
+            }
+        }
+        metrics.add("rows.candidates", source.size);
+        return source;
+    }
+
+    private QueryPlanner.IndexPlan plan(StrategyBuilder builder) {
+        return new QueryPlanner<>(indexes).plan(builder.getFilterCriteria());
+    }
+
+    /**
+     * Returns the sorted index to read the result from in order, if the first ordered property has one and the
+     * filters cannot be served from an index. A selective filter index followed by a top-k selection is cheaper
+     * than walking the whole sorted index.
+     */
+    private SortedIndex<Person> orderIndex(StrategyBuilder builder) {
+        if (builder.isKeyLookup() || builder.getOrderByProperties().isEmpty()) {
+            return null;
+        }
+
+        String propertyName = builder.getOrderByProperties().get(0).getPropertyName();
+        SecondaryIndex<Person> index = indexes.getIndex(propertyName);
+        //Null values are not indexed, so only properties that cannot be null can be read in index order
+        boolean notNull = index != null
+                && (index.getAccessor().getType().isPrimitive() || propertyName.equals(StrategyBuilder.KEY_PROPERTY));
+        if (!(index instanceof SortedIndex) || !notNull || plan(builder) != null) {
+            return null;
+        }
+        return (SortedIndex<Person>) index;
+    }
+
+    /**
+     * Streams all persons in the order of the given index, ordering each bucket of equal index values by the full
+     * comparator of the query so the remaining order by properties and the key tie breaker are respected. A query
+     * continuing after a $skiptoken seeks to the bucket of its position, the page predicate drops the persons in
+     * that bucket up to and including the position.
+     */
+    private Stream<Person> orderedIndexScan(SortedIndex<Person> index, StrategyBuilder builder) {
+        boolean descending = builder.getOrderByProperties().get(0).getDirection() instanceof Descending$;
+        SkipToken position = builder.getPosition();
+        Object start = position != null ? position.getFirstValue() : null;
+
+        NavigableMap<Object, Object> entries;
+        if (descending) {
+            entries = index.range(null, false, start, start != null).descendingMap();
+        } else {
+            entries = index.range(start, start != null, null, false);
+        }
+
+        Comparator<Person> orderBy = builder.getOrderBy();
+        return entries.values().stream()
+                .flatMap(bucket -> SecondaryIndex.keys(bucket).stream().map(lookup).filter(Objects::nonNull)
+                        .sorted(orderBy));
+    }
+
+    /**
+     * The candidates for a query and their (estimated) number.
+     */
+    private static final class Source {
+        private final long size;
+        private final Supplier<Stream<Person>> stream;
+
+        private Source(long size, Supplier<Stream<Person>> stream) {
+            this.size = size;
+            this.stream = stream;
+        }
+
+        Stream<Person> stream() {
+            return stream.get();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timers and counters of the query and write paths: how long planning, counting, executing and the data source
+ * operations take, how many rows queries consider and return and which access paths they use. Every metric is a set
+ * of {@link LongAdder}s, so recording from many request threads does not contend; metrics are created on first use
+ * and keyed by name.
+ *
+ * Metrics are recorded by default and can be switched off with 'odata.example.metrics.enabled', in which case
+ * recording costs nothing but the enabled check.
+ */
+@Component
+public class QueryMetrics {
+    private final boolean enabled;
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public QueryMetrics(@Value("${odata.example.metrics.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns metrics that record nothing, for use outside of a Spring context.
+     */
+    public static QueryMetrics disabled() {
+        return new QueryMetrics(false);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Runs the given operation, recording its duration in the timer of the given name, also if it fails.
+     */
+    public <R, E extends Exception> R time(String name, Timed<R, E> operation) throws E {
+        if (!enabled) {
+            return operation.run();
+        }
+
+        long start = System.nanoTime();
+        try {
+            return operation.run();
+        } finally {
+            record(name, System.nanoTime() - start);
+        }
+    }
+
+    public void record(String timerName, long nanos) {
+        if (enabled) {
+            timers.computeIfAbsent(timerName, name -> new Timer()).record(nanos);
+        }
+    }
+
+    public void increment(String counterName) {
+        add(counterName, 1);
+    }
+
+    public void add(String counterName, long value) {
+        if (enabled) {
+            counters.computeIfAbsent(counterName, name -> new LongAdder()).add(value);
+        }
+    }
+
+    public Timer getTimer(String name) {
+        return timers.get(name);
+    }
+
+    public long getCount(String counterName) {
+        LongAdder counter = counters.get(counterName);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public void reset() {
+        timers.clear();
+        counters.clear();
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> timerValues = new TreeMap<>();
+        timers.forEach((name, timer) -> timerValues.put(name, timer.toMap()));
+        Map<String, Object> counterValues = new TreeMap<>();
+        counters.forEach((name, counter) -> counterValues.put(name, counter.sum()));
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("enabled", enabled);
+        values.put("timers", timerValues);
+        values.put("counters", counterValues);
+        return values;
+    }
+
+    /**
+     * An operation of which the duration is recorded.
+     *
+     * @param <R> The result of the operation
+     * @param <E> The exception the operation can fail with
+     */
+    @FunctionalInterface
+    public interface Timed<R, E extends Exception> {
+        R run() throws E;
+    }
+
+    /**
+     * The number, total and maximum duration of the recordings of one timer.
+     */
+    public static final class Timer {
+        private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getTotalMillis() {
+            return totalNanos.sum() / NANOS_PER_MILLI;
+        }
+
+        public double getMeanMillis() {
+            long recordings = count.sum();
+            return recordings == 0 ? 0 : totalNanos.sum() / NANOS_PER_MILLI / recordings;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos.get() / NANOS_PER_MILLI;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("count", getCount());
+            values.put("totalMillis", getTotalMillis());
+            values.put("meanMillis", getMeanMillis());
+            values.put("maxMillis", getMaxMillis());
+            return values;
+        }
+    }
+}
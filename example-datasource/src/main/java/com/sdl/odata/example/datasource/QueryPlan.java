@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.ODataSystemException;
+import com.sdl.odata.api.processor.query.Criteria;
+import com.sdl.odata.api.processor.query.QueryOperation;
+import com.sdl.odata.example.Person;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+/**
+ * The compiled plan shared by all queries of one {@link QueryShape}. The order comparator, the selected properties
+ * and the filter templates are built once from the first query of the shape, a later query only binds its own
+ * literals to the filter templates.
+ *
+ * Backends that evaluate filters on another view of persons, such as the rows of the columnar backend, get filter
+ * templates compiled for the accessors of their view, once per view.
+ */
+final class QueryPlan {
+    private final StrategyBuilder prototype;
+    private final List<Criteria> filterCriteria;
+    private final List<CriteriaCompiler.Template<Person>> filters;
+    private final ConcurrentMap<EntityAccessors<?>, List<? extends CriteriaCompiler.Template<?>>> viewFilters =
+            new ConcurrentHashMap<>();
+
+    private QueryPlan(StrategyBuilder prototype, List<Criteria> filterCriteria,
+                      List<CriteriaCompiler.Template<Person>> filters) {
+        this.prototype = prototype;
+        this.filterCriteria = filterCriteria;
+        this.filters = filters;
+    }
+
+    static QueryPlan compile(EntityAccessors<Person> accessors, QueryOperation operation, QueryShape shape)
+            throws ODataException {
+        StrategyBuilder prototype = new StrategyBuilder(accessors);
+        prototype.buildFromOperation(operation);
+
+        List<Criteria> filterCriteria = shape.getFilterCriteria();
+        return new QueryPlan(prototype, filterCriteria,
+                compileFilters(accessors, filterCriteria, shape.getParameterCount()));
+    }
+
+    private static <R> List<CriteriaCompiler.Template<R>> compileFilters(EntityAccessors<R> accessors,
+                                                                       List<Criteria> filterCriteria,
+                                                                       int parameterCount) throws ODataException {
+        CriteriaCompiler<R> compiler = new CriteriaCompiler<>(accessors);
+        List<CriteriaCompiler.Template<R>> filters = new ArrayList<>();
+        for (Criteria criteria : filterCriteria) {
+            filters.add(compiler.compileTemplate(criteria));
+        }
+        if (compiler.getParameterCount() != parameterCount) {
+            throw new ODataSystemException("Query plan has " + compiler.getParameterCount()
+                    + " parameters, but its shape has " + parameterCount);
+        }
+        return filters;
+    }
+
+    /**
+     * Binds the values of a query of this plan's shape, returning its strategy.
+     */
+    StrategyBuilder bind(QueryShape shape, boolean includeCount) throws ODataException {
+        Object[] parameters = shape.getParameters();
+        return new StrategyBuilder(prototype, shape, bind(filters, parameters), includeCount, this, parameters);
+    }
+
+    /**
+     * Binds the given values to the filter templates of this plan compiled for a view of persons with the given
+     * accessors, returning null if the query has no filters.
+     */
+    @SuppressWarnings("unchecked")
+    <R> Predicate<R> bind(EntityAccessors<R> accessors, Object[] parameters) throws ODataException {
+        List<CriteriaCompiler.Template<R>> templates = (List<CriteriaCompiler.Template<R>>) viewFilters.get(accessors);
+        if (templates == null) {
+            templates = compileFilters(accessors, filterCriteria, parameters.length);
+            viewFilters.putIfAbsent(accessors, templates);
+        }
+        return bind(templates, parameters);
+    }
+
+    private static <R> Predicate<R> bind(List<CriteriaCompiler.Template<R>> templates, Object[] parameters)
+            throws ODataException {
+        Predicate<R> predicate = null;
+        for (CriteriaCompiler.Template<R> template : templates) {
+            Predicate<R> bound = template.bind(parameters);
+            predicate = predicate == null ? bound : predicate.and(bound);
+        }
+        return predicate;
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.ODataSystemException;
+import com.sdl.odata.api.processor.query.QueryOperation;
+import com.sdl.odata.api.service.ODataRequestContext;
+import com.sdl.odata.example.Person;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Caches a compiled {@link QueryPlan} per {@link QueryShape}, so that a query with the same structure as an
+ * earlier one only binds its literals instead of being planned again. The number of plans is bounded by
+ * 'odata.example.plan-cache.max-size' and caching can be switched off with 'odata.example.plan-cache.enabled'.
+ */
+@Component
+public class QueryPlanCache {
+    private static final Logger LOG = LoggerFactory.getLogger(QueryPlanCache.class);
+
+    private final EntityAccessorRegistry entityAccessorRegistry;
+    private final boolean enabled;
+    private final Cache<String, QueryPlan> plans;
+
+    @Autowired
+    public QueryPlanCache(EntityAccessorRegistry entityAccessorRegistry,
+                          @Value("${odata.example.plan-cache.enabled:true}") boolean enabled,
+                          @Value("${odata.example.plan-cache.max-size:1024}") long maxSize) {
+        this.entityAccessorRegistry = entityAccessorRegistry;
+        this.enabled = enabled;
+        this.plans = CacheBuilder.newBuilder().maximumSize(maxSize).recordStats().build();
+    }
+
+    /**
+     * Returns the strategy for the given query, from the cached plan of its shape if there is one.
+     */
+    public StrategyBuilder plan(QueryOperation operation, ODataRequestContext requestContext) throws ODataException {
+        return plan(operation, StrategyBuilder.includeCount(requestContext));
+    }
+
+    /**
+     * Returns the strategy for the given query outside of a request, with the inline count requested or not.
+     */
+    public StrategyBuilder plan(QueryOperation operation, boolean includeCount) throws ODataException {
+        EntityAccessors<Person> accessors = entityAccessorRegistry.getAccessors(Person.class);
+        QueryShape shape = enabled ? QueryShape.of(operation) : null;
+        if (shape == null) {
+            StrategyBuilder builder = new StrategyBuilder(accessors);
+            builder.buildCriteria(operation, includeCount);
+            return builder;
+        }
+
+        QueryPlan plan;
+        try {
+            plan = plans.get(shape.getSignature(), () -> {
+                LOG.debug("Compiling plan for query shape: {}", shape.getSignature());
+                return QueryPlan.compile(accessors, operation, shape);
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof ODataException) {
+                throw (ODataException) e.getCause();
+            }
+            throw new ODataSystemException("Unable to plan query", e.getCause());
+        }
+        return plan.bind(shape, includeCount);
+    }
+
+    public CacheStats getStats() {
+        return plans.stats();
+    }
+
+    public Map<String, Object> toMap() {
+        CacheStats stats = plans.stats();
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("enabled", enabled);
+        values.put("size", plans.size());
+        values.put("hits", stats.hitCount());
+        values.put("misses", stats.missCount());
+        values.put("hitRate", stats.hitRate());
+        values.put("evictions", stats.evictionCount());
+        return values;
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.processor.query.AndOperator$;
+import com.sdl.odata.api.processor.query.ComparisonCriteria;
+import com.sdl.odata.api.processor.query.ComparisonOperator;
+import com.sdl.odata.api.processor.query.CompositeCriteria;
+import com.sdl.odata.api.processor.query.Criteria;
+import com.sdl.odata.api.processor.query.EqOperator$;
+import com.sdl.odata.api.processor.query.GeOperator$;
+import com.sdl.odata.api.processor.query.GtOperator$;
+import com.sdl.odata.api.processor.query.LeOperator$;
+import com.sdl.odata.api.processor.query.LiteralCriteriaValue;
+import com.sdl.odata.api.processor.query.LtOperator$;
+import com.sdl.odata.api.processor.query.PropertyCriteriaValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Small index aware planner. It looks at the conjuncts of the filters of a query, finds those that can be answered
+ * by a secondary index (equality on any index, ranges on a sorted index), and picks the one that yields the fewest
+ * candidate keys. Conjuncts below an 'or' are never used, as the index would not cover all matches.
+ *
+ * The candidates are a superset of the matches, the caller still has to evaluate the filter predicate on them.
+ * Keys of a range plan are de-duplicated, as a concurrent update can move a key to a bucket further along the range.
+ *
+ * @param <T> The entity type
+ */
+public class QueryPlanner<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(QueryPlanner.class);
+
+    private final EntityIndexes<T> indexes;
+
+    public QueryPlanner(EntityIndexes<T> indexes) {
+        this.indexes = indexes;
+    }
+
+    /**
+     * Returns the cheapest index plan for the given filters, or null if the query needs a full scan.
+     */
+    public IndexPlan plan(List<Criteria> filters) {
+        if (filters.isEmpty() || indexes.isEmpty()) {
+            return null;
+        }
+
+        List<ComparisonCriteria> conjuncts = new ArrayList<>();
+        for (Criteria filter : filters) {
+            collectConjuncts(filter, conjuncts);
+        }
+
+        IndexPlan best = null;
+        Map<String, RangeBounds> ranges = new LinkedHashMap<>();
+        for (ComparisonCriteria conjunct : conjuncts) {
+            IndexCondition condition = toIndexCondition(conjunct);
+            if (condition == null) {
+                continue;
+            }
+
+            SecondaryIndex<T> index = condition.index;
+            if (index instanceof SortedIndex) {
+                ranges.computeIfAbsent(index.getPropertyName(), p -> new RangeBounds()).restrict(condition.operator, condition.value);
+            } else if (condition.operator instanceof EqOperator$) {
+                Object value = condition.value;
+                best = cheapest(best, new IndexPlan(index.getPropertyName() + " eq " + value,
+                        value == RangeBounds.NO_MATCH ? 0 : index.count(value),
+                        () -> value == RangeBounds.NO_MATCH ? Stream.empty() : index.lookup(value).stream()));
+            }
+        }
+
+        for (Map.Entry<String, RangeBounds> entry : ranges.entrySet()) {
+            SortedIndex<T> index = (SortedIndex<T>) indexes.getIndex(entry.getKey());
+            RangeBounds bounds = entry.getValue();
+            if (bounds.isEmpty()) {
+                best = cheapest(best, new IndexPlan(entry.getKey() + " in empty range", 0, Stream::empty));
+                continue;
+            }
+
+            NavigableMap<Object, Object> range = index.range(bounds.lower, bounds.lowerInclusive,
+                    bounds.upper, bounds.upperInclusive);
+            long limit = best != null ? best.getEstimate() : Long.MAX_VALUE;
+            best = cheapest(best, new IndexPlan(entry.getKey() + " in " + bounds, index.count(range, limit),
+                    () -> SortedIndex.keys(range).distinct()));
+        }
+
+        LOG.debug("Planned index access: {}", best);
+        return best;
+    }
+
+    private static IndexPlan cheapest(IndexPlan current, IndexPlan candidate) {
+        return current == null || candidate.getEstimate() < current.getEstimate() ? candidate : current;
+    }
+
+    private static void collectConjuncts(Criteria criteria, List<ComparisonCriteria> conjuncts) {
+        if (criteria instanceof CompositeCriteria
+                && ((CompositeCriteria) criteria).getOperator() instanceof AndOperator$) {
+            collectConjuncts(((CompositeCriteria) criteria).getLeft(), conjuncts);
+            collectConjuncts(((CompositeCriteria) criteria).getRight(), conjuncts);
+        } else if (criteria instanceof ComparisonCriteria) {
+            conjuncts.add((ComparisonCriteria) criteria);
+        }
+    }
+
+    private IndexCondition toIndexCondition(ComparisonCriteria criteria) {
+        ComparisonOperator operator = criteria.getOperator();
+        PropertyCriteriaValue property;
+        LiteralCriteriaValue literal;
+        if (criteria.getLeft() instanceof PropertyCriteriaValue && criteria.getRight() instanceof LiteralCriteriaValue) {
+            property = (PropertyCriteriaValue) criteria.getLeft();
+            literal = (LiteralCriteriaValue) criteria.getRight();
+        } else if (criteria.getLeft() instanceof LiteralCriteriaValue
+                && criteria.getRight() instanceof PropertyCriteriaValue) {
+            property = (PropertyCriteriaValue) criteria.getRight();
+            literal = (LiteralCriteriaValue) criteria.getLeft();
+            operator = CriteriaCompiler.flip(operator);
+        } else {
+            return null;
+        }
+
+        SecondaryIndex<T> index = indexes.getIndex(property.getPropertyName());
+        if (index == null || literal.getValue() == null) {
+            return null;
+        }
+        if (!(operator instanceof EqOperator$ || operator instanceof GtOperator$ || operator instanceof GeOperator$
+                || operator instanceof LtOperator$ || operator instanceof LeOperator$)) {
+            return null;
+        }
+
+        Class<?> type = index.getAccessor().getType();
+        Object value = literal.getValue();
+        if (type == int.class || type == Integer.class) {
+            if (!(value instanceof Number)) {
+                return null;
+            }
+            return intCondition(index, operator, (Number) value);
+        }
+        return type.isInstance(value) ? new IndexCondition(index, operator, value) : null;
+    }
+
+    /**
+     * Converts a numeric literal compared with an int property to an int bound, rounding non integral bounds
+     * inwards so that for instance 'age gt 22.5' is looked up as 'age ge 23'.
+     */
+    private IndexCondition intCondition(SecondaryIndex<T> index, ComparisonOperator operator, Number number) {
+        BigDecimal value = new BigDecimal(number.toString());
+        boolean integral = CriteriaCompiler.isWholeNumber(number);
+        if (operator instanceof EqOperator$) {
+            return new IndexCondition(index, operator, integral && CriteriaCompiler.fitsInt(number)
+                    ? (Object) number.intValue() : RangeBounds.NO_MATCH);
+        }
+
+        boolean lower = operator instanceof GtOperator$ || operator instanceof GeOperator$;
+        if (!integral) {
+            value = value.setScale(0, lower ? RoundingMode.CEILING : RoundingMode.FLOOR);
+            operator = lower ? GeOperator$.MODULE$ : LeOperator$.MODULE$;
+        }
+        BigDecimal clamped = value.max(BigDecimal.valueOf(Integer.MIN_VALUE)).min(BigDecimal.valueOf(Integer.MAX_VALUE));
+        if (clamped.compareTo(value) != 0) {
+            //The bound is outside the int domain, either it excludes everything or it does not restrict at all
+            boolean excludesAll = lower == (value.signum() > 0);
+            return excludesAll ? new IndexCondition(index, EqOperator$.MODULE$, RangeBounds.NO_MATCH) : null;
+        }
+        return new IndexCondition(index, operator, clamped.intValue());
+    }
+
+    /**
+     * A candidate access path through a single index.
+     */
+    public static final class IndexPlan {
+        private final String description;
+        private final long estimate;
+        private final Supplier<Stream<String>> keys;
+
+        IndexPlan(String description, long estimate, Supplier<Stream<String>> keys) {
+            this.description = description;
+            this.estimate = estimate;
+            this.keys = keys;
+        }
+
+        public long getEstimate() {
+            return estimate;
+        }
+
+        public Stream<String> keys() {
+            return keys.get();
+        }
+
+        @Override
+        public String toString() {
+            return description + " (~" + estimate + " candidates)";
+        }
+    }
+
+    private final class IndexCondition {
+        private final SecondaryIndex<T> index;
+        private final ComparisonOperator operator;
+        private final Object value;
+
+        private IndexCondition(SecondaryIndex<T> index, ComparisonOperator operator, Object value) {
+            this.index = index;
+            this.operator = operator;
+            this.value = value;
+        }
+    }
+
+    /**
+     * The intersection of all range conditions on one sorted property.
+     */
+    private static final class RangeBounds {
+        private static final Object NO_MATCH = new Object();
+
+        private Object lower;
+        private boolean lowerInclusive;
+        private Object upper;
+        private boolean upperInclusive;
+        private boolean empty;
+
+        void restrict(ComparisonOperator operator, Object value) {
+            if (value == NO_MATCH) {
+                empty = true;
+                return;
+            }
+
+            if (operator instanceof EqOperator$ || operator instanceof GtOperator$ || operator instanceof GeOperator$) {
+                boolean inclusive = !(operator instanceof GtOperator$);
+                int c = lower == null ? 1 : compare(value, lower);
+                if (c > 0 || (c == 0 && !inclusive)) {
+                    lower = value;
+                    lowerInclusive = inclusive;
+                }
+            }
+            if (operator instanceof EqOperator$ || operator instanceof LtOperator$ || operator instanceof LeOperator$) {
+                boolean inclusive = !(operator instanceof LtOperator$);
+                int c = upper == null ? -1 : compare(value, upper);
+                if (c < 0 || (c == 0 && !inclusive)) {
+                    upper = value;
+                    upperInclusive = inclusive;
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            if (empty) {
+                return true;
+            }
+            if (lower == null || upper == null) {
+                return false;
+            }
+            int c = compare(lower, upper);
+            return c > 0 || (c == 0 && !(lowerInclusive && upperInclusive));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static int compare(Object left, Object right) {
+            return ((Comparable<Object>) left).compareTo(right);
+        }
+
+        @Override
+        public String toString() {
+            return (lower == null ? "(-inf" : (lowerInclusive ? "[" : "(") + lower) + ", "
+                    + (upper == null ? "+inf)" : upper + (upperInclusive ? "]" : ")"));
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.ODataSystemException;
+import com.sdl.odata.api.processor.query.QueryOperation;
+import com.sdl.odata.api.processor.query.QueryResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches query results by the query operation tree, which compares by structure, and the query options that
+ * change the result, including the size of the page the result is cut to and the $skiptoken it continues after.
+ * Every entry also records the version of the data source it was computed at, so a change to the data source makes
+ * all earlier entries unreachable. Those entries are dropped as soon as a newer version is seen instead of waiting
+ * for eviction. The version the cache has seen only moves forward: a query that read an older version than another
+ * one already did runs uncached and never drops the entries of the newer version.
+ *
+ * The cache is bounded by weight, one unit per returned entity, set with 'odata.example.cache.max-weight'. It is
+ * switched on with 'odata.example.cache.enabled': it only pays off for read-mostly workloads that repeat queries,
+ * as every write makes all cached results unreachable.
+ */
+@Component
+public class QueryResultCache {
+    private static final Logger LOG = LoggerFactory.getLogger(QueryResultCache.class);
+
+    private final boolean enabled;
+    private final Cache<Key, CachedResult> cache;
+    private final AtomicLong currentVersion = new AtomicLong(-1);
+
+    @Autowired
+    public QueryResultCache(@Value("${odata.example.cache.enabled:false}") boolean enabled,
+                            @Value("${odata.example.cache.max-weight:100000}") long maxWeight) {
+        this.enabled = enabled;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((Key key, CachedResult result) -> result.weight())
+                .recordStats()
+                .build();
+        LOG.debug("Query result cache enabled: {}, maximum weight: {}", enabled, maxWeight);
+    }
+
+    /**
+     * Returns a cache that never caches, for use outside of a Spring context.
+     */
+    public static QueryResultCache disabled() {
+        return new QueryResultCache(false, 0);
+    }
+
+    /**
+     * Returns the cached result of the query at the current version of the data source, computing it if there is
+     * none. The version is read before the query runs, so a change that completed before this call is always
+     * part of the result.
+     */
+    public QueryResult get(PersonDataSource dataSource, QueryOperation operation, boolean includeCount,
+                           int pageSize, String skipToken, Query query) throws ODataException {
+        if (!enabled) {
+            return query.execute();
+        }
+
+        long version = dataSource.getVersion();
+        long previous = currentVersion.getAndAccumulate(version, Math::max);
+        if (version < previous) {
+            return query.execute();
+        }
+        if (version > previous) {
+            cache.invalidateAll();
+        }
+
+        try {
+            return cache.get(new Key(dataSource, operation, includeCount, pageSize, skipToken, version),
+                    () -> new CachedResult(query.execute())).toResult();
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof ODataException) {
+                throw (ODataException) e.getCause();
+            }
+            throw new ODataSystemException("Unable to execute query", e.getCause());
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public Map<String, Object> toMap() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("enabled", enabled);
+        values.put("size", cache.size());
+        values.put("hits", stats.hitCount());
+        values.put("misses", stats.missCount());
+        values.put("hitRate", stats.hitRate());
+        values.put("evictions", stats.evictionCount());
+        values.put("averageLoadMillis", stats.averageLoadPenalty() / 1000000);
+        return values;
+    }
+
+    /**
+     * A query to run on a cache miss.
+     */
+    @FunctionalInterface
+    public interface Query {
+        QueryResult execute() throws ODataException;
+    }
+
+    private static final class Key {
+        private final PersonDataSource dataSource;
+        private final QueryOperation operation;
+        private final boolean includeCount;
+        private final int pageSize;
+        private final String skipToken;
+        private final long version;
+
+        Key(PersonDataSource dataSource, QueryOperation operation, boolean includeCount, int pageSize,
+            String skipToken, long version) {
+            this.dataSource = dataSource;
+            this.operation = operation;
+            this.includeCount = includeCount;
+            this.pageSize = pageSize;
+            this.skipToken = skipToken;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return dataSource == other.dataSource && includeCount == other.includeCount && pageSize == other.pageSize
+                    && version == other.version && Objects.equals(skipToken, other.skipToken)
+                    && operation.equals(other.operation);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(dataSource), operation, includeCount, pageSize, skipToken,
+                    version);
+        }
+    }
+
+    /**
+     * The data and metadata of a result. Query results carry mutable metadata, so every hit gets a new one.
+     */
+    private static final class CachedResult {
+        private final Object data;
+        private final Map<String, Object> meta;
+
+        CachedResult(QueryResult result) {
+            this.data = result.getData();
+            this.meta = new HashMap<>(result.getMeta());
+        }
+
+        QueryResult toResult() {
+            QueryResult result = QueryResult.from(data);
+            meta.forEach(result::addMeta);
+            return result;
+        }
+
+        int weight() {
+            return data instanceof Collection ? 1 + ((Collection<?>) data).size() : 1;
+        }
+    }
+}
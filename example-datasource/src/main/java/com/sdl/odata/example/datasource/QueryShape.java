@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.processor.query.ArithmeticCriteriaValue;
+import com.sdl.odata.api.processor.query.ComparisonCriteria;
+import com.sdl.odata.api.processor.query.CompositeCriteria;
+import com.sdl.odata.api.processor.query.CountOperation;
+import com.sdl.odata.api.processor.query.Criteria;
+import com.sdl.odata.api.processor.query.CriteriaFilterOperation;
+import com.sdl.odata.api.processor.query.CriteriaValue;
+import com.sdl.odata.api.processor.query.ExpandOperation;
+import com.sdl.odata.api.processor.query.LimitOperation;
+import com.sdl.odata.api.processor.query.LiteralCriteriaValue;
+import com.sdl.odata.api.processor.query.OrderByOperation;
+import com.sdl.odata.api.processor.query.PropertyCriteriaValue;
+import com.sdl.odata.api.processor.query.QueryOperation;
+import com.sdl.odata.api.processor.query.SelectByKeyOperation;
+import com.sdl.odata.api.processor.query.SelectOperation;
+import com.sdl.odata.api.processor.query.SelectPropertiesOperation;
+import com.sdl.odata.api.processor.query.SkipOperation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The shape of a query operation tree: a signature of its structure in which every literal, $top, $skip and key
+ * value is left out, together with the values that were left out. Queries that only differ in those values have
+ * the same signature and share a {@link QueryPlan}.
+ *
+ * Filter literals are collected in the order the {@link CriteriaCompiler} numbers the parameters of a template:
+ * filters from the outermost operation inwards, and within a filter from left to right.
+ */
+final class QueryShape {
+    private final StringBuilder signature = new StringBuilder(64);
+    private final List<Object> parameters = new ArrayList<>();
+    private final List<Criteria> filterCriteria = new ArrayList<>();
+    private int limit = Integer.MAX_VALUE;
+    private int skip = 0;
+    private String keyLookup;
+
+    private QueryShape() {
+    }
+
+    /**
+     * Returns the shape of the given operation tree, or null if it contains operations or values that a plan
+     * cannot be shared for.
+     */
+    static QueryShape of(QueryOperation operation) {
+        QueryShape shape = new QueryShape();
+        return shape.visit(operation) ? shape : null;
+    }
+
+    String getSignature() {
+        return signature.toString();
+    }
+
+    Object[] getParameters() {
+        return parameters.toArray();
+    }
+
+    int getParameterCount() {
+        return parameters.size();
+    }
+
+    List<Criteria> getFilterCriteria() {
+        return Collections.unmodifiableList(filterCriteria);
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    int getSkip() {
+        return skip;
+    }
+
+    String getKeyLookup() {
+        return keyLookup;
+    }
+
+    private boolean visit(QueryOperation operation) {
+        if (operation instanceof SelectOperation) {
+            SelectOperation select = (SelectOperation) operation;
+            signature.append("select(").append(select.getEntitySetName()).append(',')
+                    .append(select.isSelectDistinct()).append(')');
+            return true;
+        } else if (operation instanceof SelectByKeyOperation) {
+            Object key = ((SelectByKeyOperation) operation).getKeyAsJava().get("id");
+            keyLookup = (String) key;
+            signature.append("key(?)");
+            return true;
+        } else if (operation instanceof CriteriaFilterOperation) {
+            Criteria criteria = ((CriteriaFilterOperation) operation).getCriteria();
+            filterCriteria.add(criteria);
+            signature.append("filter(");
+            if (!visit(criteria)) {
+                return false;
+            }
+            signature.append(')');
+            return visit(((CriteriaFilterOperation) operation).getSource());
+        } else if (operation instanceof LimitOperation) {
+            limit = ((LimitOperation) operation).getCount();
+            signature.append("top(?)");
+            return visit(((LimitOperation) operation).getSource());
+        } else if (operation instanceof SkipOperation) {
+            skip = ((SkipOperation) operation).getCount();
+            signature.append("skip(?)");
+            return visit(((SkipOperation) operation).getSource());
+        } else if (operation instanceof CountOperation) {
+            signature.append("count(").append(((CountOperation) operation).getTrueFalse()).append(')');
+            return visit(((CountOperation) operation).getSource());
+        } else if (operation instanceof ExpandOperation) {
+            signature.append("expand").append(((ExpandOperation) operation).getExpandPropertiesAsJava());
+            return visit(((ExpandOperation) operation).getSource());
+        } else if (operation instanceof OrderByOperation) {
+            signature.append("orderby").append(((OrderByOperation) operation).getOrderByProperties());
+            return visit(((OrderByOperation) operation).getSource());
+        } else if (operation instanceof SelectPropertiesOperation) {
+            signature.append("properties").append(((SelectPropertiesOperation) operation).getPropertyNames());
+            return visit(((SelectPropertiesOperation) operation).getSource());
+        }
+        return false;
+    }
+
+    private boolean visit(Criteria criteria) {
+        if (criteria instanceof CompositeCriteria) {
+            CompositeCriteria composite = (CompositeCriteria) criteria;
+            signature.append(composite.getOperator()).append('(');
+            if (!visit(composite.getLeft())) {
+                return false;
+            }
+            signature.append(',');
+            if (!visit(composite.getRight())) {
+                return false;
+            }
+            signature.append(')');
+            return true;
+        } else if (criteria instanceof ComparisonCriteria) {
+            ComparisonCriteria comparison = (ComparisonCriteria) criteria;
+            signature.append(comparison.getOperator()).append('(');
+            if (!visit(comparison.getLeft())) {
+                return false;
+            }
+            signature.append(',');
+            if (!visit(comparison.getRight())) {
+                return false;
+            }
+            signature.append(')');
+            return true;
+        }
+        return false;
+    }
+
+    private boolean visit(CriteriaValue value) {
+        if (value instanceof LiteralCriteriaValue) {
+            Object literal = ((LiteralCriteriaValue) value).getValue();
+            parameters.add(literal);
+            signature.append('?').append(literal == null ? "null" : literal.getClass().getSimpleName());
+            return true;
+        } else if (value instanceof PropertyCriteriaValue) {
+            signature.append('$').append(((PropertyCriteriaValue) value).getPropertyName());
+            return true;
+        } else if (value instanceof ArithmeticCriteriaValue) {
+            ArithmeticCriteriaValue arithmetic = (ArithmeticCriteriaValue) value;
+            signature.append(arithmetic.getOperator()).append('(');
+            if (!visit(arithmetic.getLeft())) {
+                return false;
+            }
+            signature.append(',');
+            if (!visit(arithmetic.getRight())) {
+                return false;
+            }
+            signature.append(')');
+            return true;
+        }
+        return false;
+    }
+}
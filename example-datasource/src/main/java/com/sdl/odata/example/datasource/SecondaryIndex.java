@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Base class for secondary indexes mapping a property value to the keys of the entities holding that value.
+ * Reads are lock free, writes to the same value bucket are serialized on a lock stripe so that adding and removing
+ * keys never loses an update when a bucket is created or dropped concurrently.
+ *
+ * A bucket holding a single key is stored as the key itself and only becomes a set once a second entity shares the
+ * value, so an index on a unique property, such as the entity key, costs one map entry per entity rather than one
+ * map entry and one concurrent set. Use {@link #keys(Object)} and {@link #size(Object)} to read a bucket.
+ *
+ * @param <T> The entity type
+ */
+public abstract class SecondaryIndex<T> {
+    private static final int STRIPES = 64;
+
+    private final PropertyAccessor<T> accessor;
+    private final Object[] locks = new Object[STRIPES];
+
+    protected SecondaryIndex(PropertyAccessor<T> accessor) {
+        this.accessor = accessor;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public String getPropertyName() {
+        return accessor.getName();
+    }
+
+    public PropertyAccessor<T> getAccessor() {
+        return accessor;
+    }
+
+    /**
+     * The backing map of property value to bucket, either a single key or a set of keys.
+     */
+    protected abstract Map<Object, Object> entries();
+
+    @SuppressWarnings("unchecked")
+    public void add(T entity, String key) {
+        Object value = accessor.get(entity);
+        if (value == null) {
+            return;
+        }
+        synchronized (lockFor(value)) {
+            Object bucket = entries().get(value);
+            if (bucket == null) {
+                entries().put(value, key);
+            } else if (bucket instanceof String) {
+                if (!bucket.equals(key)) {
+                    Set<String> keys = ConcurrentHashMap.newKeySet();
+                    keys.add((String) bucket);
+                    keys.add(key);
+                    entries().put(value, keys);
+                }
+            } else {
+                ((Set<String>) bucket).add(key);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void remove(T entity, String key) {
+        Object value = accessor.get(entity);
+        if (value == null) {
+            return;
+        }
+        synchronized (lockFor(value)) {
+            Object bucket = entries().get(value);
+            if (key.equals(bucket)) {
+                entries().remove(value);
+            } else if (bucket instanceof Set) {
+                Set<String> keys = (Set<String>) bucket;
+                if (keys.remove(key) && keys.size() == 1) {
+                    entries().put(value, keys.iterator().next());
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the entry of an entity that was replaced, once the replacing entity has been added, unless both hold
+     * the same value.
+     */
+    public void removeReplaced(T oldEntity, T newEntity, String key) {
+        Object oldValue = accessor.get(oldEntity);
+        if (oldValue != null && !oldValue.equals(accessor.get(newEntity))) {
+            remove(oldEntity, key);
+        }
+    }
+
+    /**
+     * The keys of all entities with exactly the given property value.
+     */
+    public Set<String> lookup(Object value) {
+        return keys(value != null ? entries().get(value) : null);
+    }
+
+    public int count(Object value) {
+        return size(value != null ? entries().get(value) : null);
+    }
+
+    public void clear() {
+        entries().clear();
+    }
+
+    /**
+     * The keys in a bucket of the index, empty for a null bucket.
+     */
+    @SuppressWarnings("unchecked")
+    public static Set<String> keys(Object bucket) {
+        if (bucket == null) {
+            return Collections.emptySet();
+        }
+        return bucket instanceof String ? Collections.singleton((String) bucket) : (Set<String>) bucket;
+    }
+
+    /**
+     * The number of keys in a bucket of the index.
+     */
+    public static int size(Object bucket) {
+        if (bucket == null) {
+            return 0;
+        }
+        return bucket instanceof String ? 1 : ((Set<?>) bucket).size();
+    }
+
+    private Object lockFor(Object value) {
+        return locks[(value.hashCode() & Integer.MAX_VALUE) % STRIPES];
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.parser.ODataUriUtil;
+import com.sdl.odata.api.parser.QueryOption;
+import com.sdl.odata.api.parser.SkipTokenOption;
+import com.sdl.odata.api.processor.query.QueryResult;
+import com.sdl.odata.api.service.ODataRequestContext;
+import com.sdl.odata.example.Person;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import scala.collection.Iterator;
+
+import java.util.List;
+
+/**
+ * Server-driven paging of entity collections: a query returns at most one page of entities and, if there may be
+ * more, a next link in its 'nextLink' metadata that continues where the page ended. This bounds the entities a
+ * single request materializes and renders, however large the collection it queries.
+ *
+ * Next links continue with a {@link SkipToken}, the position of the last entity of the page, instead of a $skip.
+ * Collections without $orderby are paged in key order, so every page seeks to its start in an ordered index and
+ * changes to the collection between two pages do not make the next page repeat or miss entities.
+ *
+ * The page size is 'odata.example.paging.max-page-size', a client can ask for smaller pages with the
+ * 'odata.maxpagesize' preference. The maximum is 0 by default, so results are only paged for clients that ask for
+ * it, and existing clients that do not follow next links keep getting whole collections.
+ */
+@Component
+public class ServerDrivenPaging {
+    private static final Logger LOG = LoggerFactory.getLogger(ServerDrivenPaging.class);
+
+    public static final String NEXT_LINK = "nextLink";
+    private static final String MAX_PAGE_SIZE_PREFERENCE = "odata.maxpagesize=";
+    private static final String SKIP = "$skip";
+    private static final String SKIP_TOKEN = "$skiptoken";
+    private static final String TOP = "$top";
+
+    private final int maxPageSize;
+
+    @Autowired
+    public ServerDrivenPaging(@Value("${odata.example.paging.max-page-size:0}") int maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+
+    /**
+     * Returns paging that never cuts a result, for use outside of a Spring context.
+     */
+    public static ServerDrivenPaging disabled() {
+        return new ServerDrivenPaging(0);
+    }
+
+    /**
+     * The page size for the given request, or {@link Integer#MAX_VALUE} if its results are not paged.
+     */
+    public int getPageSize(ODataRequestContext requestContext) {
+        int pageSize = maxPageSize > 0 ? maxPageSize : Integer.MAX_VALUE;
+        List<String> preferences = requestContext.getRequest().getPrefer();
+        if (preferences == null) {
+            return pageSize;
+        }
+
+        for (String preference : preferences) {
+            for (String value : preference.split(",")) {
+                value = value.trim();
+                if (value.startsWith(MAX_PAGE_SIZE_PREFERENCE)) {
+                    try {
+                        int preferred = Integer.parseInt(value.substring(MAX_PAGE_SIZE_PREFERENCE.length()).trim());
+                        if (preferred > 0) {
+                            pageSize = Math.min(pageSize, preferred);
+                        }
+                    } catch (NumberFormatException e) {
+                        LOG.debug("Ignoring invalid page size preference: {}", value);
+                    }
+                }
+            }
+        }
+        return pageSize;
+    }
+
+    /**
+     * The $skiptoken of the given request, or null if it does not continue an earlier page.
+     */
+    public String getSkipToken(ODataRequestContext requestContext) {
+        Iterator<QueryOption> optIt = ODataUriUtil.getQueryOptions(requestContext.getUri()).iterator();
+        while (optIt.hasNext()) {
+            QueryOption opt = optIt.next();
+            if (opt instanceof SkipTokenOption) {
+                return ((SkipTokenOption) opt).token();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether the result of the query is cut into pages of the given size: only collections of entities that ask
+     * for more than one page are.
+     */
+    public boolean isPaged(StrategyBuilder builder, int pageSize) {
+        return pageSize != Integer.MAX_VALUE && !builder.isCount() && !builder.isKeyLookup()
+                && builder.getLimit() > pageSize;
+    }
+
+    /**
+     * Adds the link to the page after the given one to its result, if the page is full and the query asked for
+     * more entities than it holds.
+     *
+     * @param result         The page
+     * @param requestUri     The URI of the request that asked for the page
+     * @param builder        The strategy of the query, in the order the page is in
+     * @param skip           The number of entities the query skipped before the page
+     * @param requestedLimit The number of entities the query asked for
+     * @param pageSize       The size of the page
+     */
+    public QueryResult addNextLink(QueryResult result, String requestUri, StrategyBuilder builder, int skip,
+                                   int requestedLimit, int pageSize) throws ODataException {
+        if (!(result.getData() instanceof List) || ((List<?>) result.getData()).size() < pageSize) {
+            return result;
+        }
+
+        Integer nextTop = null;
+        if (requestedLimit != Integer.MAX_VALUE) {
+            if (requestedLimit <= pageSize) {
+                return result;
+            }
+            nextTop = requestedLimit - pageSize;
+        }
+
+        List<?> page = (List<?>) result.getData();
+        SkipToken position = builder.positionOf((Person) page.get(page.size() - 1));
+        if (position == null) {
+            //An ordered property without a token encoding, fall back to skipping the earlier pages
+            return result.addMeta(NEXT_LINK, nextLink(requestUri, SKIP + "=" + ((long) skip + pageSize), nextTop));
+        }
+        return result.addMeta(NEXT_LINK, nextLink(requestUri, SKIP_TOKEN + "=" + position.encode(), nextTop));
+    }
+
+    /**
+     * The request URI with its $skip, $skiptoken and $top options replaced by the given continuation and $top.
+     */
+    static String nextLink(String requestUri, String continuation, Integer top) {
+        int queryStart = requestUri.indexOf('?');
+        StringBuilder link = new StringBuilder(queryStart < 0 ? requestUri : requestUri.substring(0, queryStart));
+        link.append('?');
+        if (queryStart >= 0) {
+            for (String option : requestUri.substring(queryStart + 1).split("&")) {
+                String name = optionName(option);
+                if (!option.isEmpty() && !name.equals(SKIP) && !name.equals(SKIP_TOKEN) && !name.equals(TOP)) {
+                    link.append(option).append('&');
+                }
+            }
+        }
+
+        link.append(continuation);
+        if (top != null) {
+            link.append('&').append(TOP).append('=').append(top);
+        }
+        return link.toString();
+    }
+
+    private static String optionName(String option) {
+        int separator = option.indexOf('=');
+        String name = separator < 0 ? option : option.substring(0, separator);
+        return name.startsWith("%24") ? "$" + name.substring(3) : name;
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataBadRequestException;
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.processor.query.Descending$;
+import com.sdl.odata.api.processor.query.OrderByProperty;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * The continuation token of server-driven paging: the position of the last entity of a page in the order of its
+ * query, made of the values of the ordered properties and the key of that entity. The next page starts right
+ * after that position, so it is found by seeking instead of skipping all earlier entities, and entities created
+ * or removed before the position do not shift the pages after it.
+ *
+ * Tokens are opaque to clients, they are URL safe Base64 of the order and the position. A token only continues a
+ * query with the same order, which is verified when it is decoded.
+ */
+public final class SkipToken {
+    private final String order;
+    private final List<Object> values;
+    private final String key;
+
+    private SkipToken(String order, List<Object> values, String key) {
+        this.order = order;
+        this.values = Collections.unmodifiableList(values);
+        this.key = key;
+    }
+
+    /**
+     * The position of the given entity in the given order, or null if a value of an ordered property cannot be
+     * encoded in a token.
+     */
+    static <T> SkipToken of(T entity, EntityAccessors<T> accessors, List<OrderByProperty> orderByProperties,
+                            Function<T, String> keyFunction) throws ODataException {
+        List<Object> values = new ArrayList<>();
+        for (OrderByProperty orderByProperty : orderByProperties) {
+            Object value = accessors.getAccessor(orderByProperty.getPropertyName()).get(entity);
+            if (value != null && tag(value) == 0) {
+                return null;
+            }
+            values.add(value);
+        }
+        return new SkipToken(signature(orderByProperties), values, keyFunction.apply(entity));
+    }
+
+    /**
+     * Decodes a token handed out for a query with the given order.
+     *
+     * @throws ODataBadRequestException If the token is malformed or belongs to a query with another order
+     */
+    static <T> SkipToken decode(String token, EntityAccessors<T> accessors, List<OrderByProperty> orderByProperties)
+            throws ODataException {
+        String order;
+        List<Object> values = new ArrayList<>();
+        String key;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            order = in.readUTF();
+            int size = in.readUnsignedByte();
+            for (int i = 0; i < size; i++) {
+                values.add(readValue(in));
+            }
+            key = in.readUTF();
+            if (in.read() != -1) {
+                throw new IOException("Trailing bytes after the key");
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            throw new ODataBadRequestException("Invalid $skiptoken: " + token);
+        }
+
+        if (!order.equals(signature(orderByProperties)) || values.size() != orderByProperties.size()) {
+            throw new ODataBadRequestException("The $skiptoken does not continue a query ordered by: " + order);
+        }
+        for (int i = 0; i < values.size(); i++) {
+            Object value = values.get(i);
+            Class<?> type = accessors.getAccessor(orderByProperties.get(i).getPropertyName()).getType();
+            if (value != null && !boxed(type).isInstance(value)) {
+                throw new ODataBadRequestException("Invalid $skiptoken: " + token);
+            }
+        }
+        return new SkipToken(order, values, key);
+    }
+
+    public String encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(order);
+            out.writeByte(values.size());
+            for (Object value : values) {
+                writeValue(out, value);
+            }
+            out.writeUTF(key);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode skip token", e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * The value of the first ordered property at this position, where a seek in an index on it starts.
+     */
+    public Object getFirstValue() {
+        return values.get(0);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Builds the predicate matching the entities after this position in the given order, over any representation
+     * of an entity. Properties compare the same way as in {@link StrategyBuilder#buildComparator}, ties are broken
+     * on the key.
+     */
+    <T> Predicate<T> after(EntityAccessors<T> accessors, List<OrderByProperty> orderByProperties,
+                           Function<T, String> keyFunction) throws ODataException {
+        List<ToIntFunction<T>> comparisons = new ArrayList<>();
+        for (int i = 0; i < orderByProperties.size(); i++) {
+            OrderByProperty orderByProperty = orderByProperties.get(i);
+            ToIntFunction<T> comparison = compareTo(accessors.getAccessor(orderByProperty.getPropertyName()),
+                    values.get(i));
+            if (orderByProperty.getDirection() instanceof Descending$) {
+                ToIntFunction<T> ascending = comparison;
+                comparison = entity -> -ascending.applyAsInt(entity);
+            }
+            comparisons.add(comparison);
+        }
+
+        return entity -> {
+            for (ToIntFunction<T> comparison : comparisons) {
+                int result = comparison.applyAsInt(entity);
+                if (result != 0) {
+                    return result > 0;
+                }
+            }
+            return keyFunction.apply(entity).compareTo(key) > 0;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ToIntFunction<T> compareTo(PropertyAccessor<T> accessor, Object value) {
+        if (accessor.isInt() && value != null) {
+            int intValue = (Integer) value;
+            ToIntFunction<T> getter = accessor.intGetter();
+            return entity -> Integer.compare(getter.applyAsInt(entity), intValue);
+        }
+
+        Function<T, Object> getter = accessor.getter();
+        return entity -> {
+            Object entityValue = getter.apply(entity);
+            if (entityValue == null || value == null) {
+                return entityValue == null ? (value == null ? 0 : -1) : 1;
+            }
+            return ((Comparable<Object>) entityValue).compareTo(value);
+        };
+    }
+
+    private static String signature(List<OrderByProperty> orderByProperties) {
+        return orderByProperties.stream()
+                .map(p -> p.getPropertyName() + (p.getDirection() instanceof Descending$ ? " desc" : " asc"))
+                .collect(Collectors.joining(","));
+    }
+
+    private static char tag(Object value) {
+        if (value instanceof String) {
+            return 's';
+        } else if (value instanceof Integer) {
+            return 'i';
+        } else if (value instanceof Long) {
+            return 'l';
+        } else if (value instanceof Boolean) {
+            return 'b';
+        }
+        return 0;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte('n');
+            return;
+        }
+
+        char tag = tag(value);
+        out.writeByte(tag);
+        switch (tag) {
+            case 's':
+                out.writeUTF((String) value);
+                break;
+            case 'i':
+                out.writeInt((Integer) value);
+                break;
+            case 'l':
+                out.writeLong((Long) value);
+                break;
+            default:
+                out.writeBoolean((Boolean) value);
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case 'n':
+                return null;
+            case 's':
+                return in.readUTF();
+            case 'i':
+                return in.readInt();
+            case 'l':
+                return in.readLong();
+            case 'b':
+                return in.readBoolean();
+            default:
+                throw new IOException("Unknown value type: " + tag);
+        }
+    }
+
+    private static Class<?> boxed(Class<?> type) {
+        if (type == int.class) {
+            return Integer.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        }
+        return type;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Secondary index keeping property values in their natural order, serving both equality and range lookups.
+ *
+ * @param <T> The entity type
+ */
+public class SortedIndex<T> extends SecondaryIndex<T> {
+    private final ConcurrentSkipListMap<Object, Object> entries = new ConcurrentSkipListMap<>();
+
+    public SortedIndex(PropertyAccessor<T> accessor) {
+        super(accessor);
+    }
+
+    @Override
+    protected Map<Object, Object> entries() {
+        return entries;
+    }
+
+    /**
+     * Returns the buckets between the given bounds, a null bound means the range is open on that side.
+     */
+    public NavigableMap<Object, Object> range(Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        if (from != null && to != null) {
+            return entries.subMap(from, fromInclusive, to, toInclusive);
+        } else if (from != null) {
+            return entries.tailMap(from, fromInclusive);
+        } else if (to != null) {
+            return entries.headMap(to, toInclusive);
+        }
+        return entries;
+    }
+
+    /**
+     * Counts the keys in the given range, giving up as soon as the count exceeds the given limit so that
+     * estimating a wide range stays cheap when a more selective candidate is already known.
+     */
+    public long count(NavigableMap<Object, Object> range, long limit) {
+        long count = 0;
+        for (Object bucket : range.values()) {
+            count += size(bucket);
+            if (count > limit) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    public static Stream<String> keys(NavigableMap<Object, Object> range) {
+        return range.values().stream().flatMap(bucket -> keys(bucket).stream());
+    }
+}
@@ -15,22 +15,20 @@
  */
 package com.sdl.odata.example.datasource;
 
+import com.sdl.odata.api.ODataBadRequestException;
 import com.sdl.odata.api.ODataException;
-import com.sdl.odata.api.ODataSystemException;
+import com.sdl.odata.api.ODataNotImplementedException;
 import com.sdl.odata.api.parser.CountOption;
 import com.sdl.odata.api.parser.ODataUriUtil;
 import com.sdl.odata.api.parser.QueryOption;
 import com.sdl.odata.api.processor.query.CountOperation;
-import com.sdl.odata.api.processor.query.ComparisonCriteria;
-import com.sdl.odata.api.processor.query.ComparisonOperator;
 import com.sdl.odata.api.processor.query.Criteria;
 import com.sdl.odata.api.processor.query.CriteriaFilterOperation;
+import com.sdl.odata.api.processor.query.Descending$;
 import com.sdl.odata.api.processor.query.ExpandOperation;
-import com.sdl.odata.api.processor.query.GtOperator$;
 import com.sdl.odata.api.processor.query.LimitOperation;
-import com.sdl.odata.api.processor.query.LiteralCriteriaValue;
 import com.sdl.odata.api.processor.query.OrderByOperation;
-import com.sdl.odata.api.processor.query.PropertyCriteriaValue;
+import com.sdl.odata.api.processor.query.OrderByProperty;
 import com.sdl.odata.api.processor.query.QueryOperation;
 import com.sdl.odata.api.processor.query.SelectByKeyOperation;
 import com.sdl.odata.api.processor.query.SelectOperation;
@@ -42,10 +40,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import scala.collection.Iterator;
 
-import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 /**
@@ -54,24 +54,95 @@ import java.util.function.Predicate;
 public class StrategyBuilder {
     private static final Logger LOG = LoggerFactory.getLogger(StrategyBuilder.class);
 
-    private List<Predicate<Person>> predicates = new ArrayList<>();
+    /**
+     * The key property of persons, the last tie breaker of every order.
+     */
+    static final String KEY_PROPERTY = "id";
+
+    private final EntityAccessors<Person> accessors;
+
+    private Predicate<Person> predicate;
     private int limit = Integer.MAX_VALUE;
     private int skip = 0;
     private boolean count;
     private boolean includeCount;
     private List<String> propertyNames;
+    private List<String> expandProperties = Collections.emptyList();
+    private String keyLookup;
+    private List<Criteria> filterCriteria = new ArrayList<>();
+    private List<OrderByProperty> orderByProperties = new ArrayList<>();
+    private Comparator<Person> orderBy;
+    private SkipToken position;
+    private Predicate<Person> pagePredicate;
+    private QueryPlan plan;
+    private Object[] parameters;
 
-    public List<Predicate<Person>> buildCriteria(QueryOperation queryOperation, ODataRequestContext requestContext)
+    public StrategyBuilder(EntityAccessors<Person> accessors) {
+        this.accessors = accessors;
+    }
+
+    /**
+     * Creates the strategy of a query from the plan of its shape: the order, the selected properties and counting
+     * are taken from the prototype of the plan, the values left out of the shape from the shape of the query itself.
+     */
+    StrategyBuilder(StrategyBuilder prototype, QueryShape shape, Predicate<Person> predicate, boolean includeCount,
+                    QueryPlan plan, Object[] parameters) {
+        this.accessors = prototype.accessors;
+        this.predicate = predicate;
+        this.limit = shape.getLimit();
+        this.skip = shape.getSkip();
+        this.count = prototype.count;
+        this.includeCount = includeCount;
+        this.propertyNames = prototype.propertyNames;
+        this.expandProperties = prototype.expandProperties;
+        this.keyLookup = shape.getKeyLookup();
+        this.filterCriteria = shape.getFilterCriteria();
+        this.orderByProperties = prototype.orderByProperties;
+        this.orderBy = prototype.orderBy;
+        this.plan = plan;
+        this.parameters = parameters;
+    }
+
+    public Predicate<Person> buildCriteria(QueryOperation queryOperation, ODataRequestContext requestContext)
             throws ODataException {
+        return buildCriteria(queryOperation, includeCount(requestContext));
+    }
+
+    /**
+     * Builds the strategy of a query outside of a request, with the inline count requested or not.
+     */
+    public Predicate<Person> buildCriteria(QueryOperation queryOperation, boolean includeCount) throws ODataException {
         buildFromOperation(queryOperation);
-        buildFromOptions(ODataUriUtil.getQueryOptions(requestContext.getUri()));
-        return predicates;
+        this.includeCount = includeCount;
+        return getPredicate();
+    }
+
+    /**
+     * The fused predicate of all filters in the query, matching every entity if the query has no filters.
+     */
+    public Predicate<Person> getPredicate() {
+        return predicate != null ? predicate : person -> true;
+    }
+
+    /**
+     * The predicate selecting the entities of the page: the fused predicate of all filters, restricted to the
+     * entities after the position of the $skiptoken if there is one. Counts ignore the position.
+     */
+    public Predicate<Person> getPagePredicate() {
+        return pagePredicate != null ? pagePredicate : getPredicate();
     }
 
     public int getLimit() {
         return limit;
     }
 
+    /**
+     * Cuts the result of the query down to a page of at most the given size, as requested by server-driven paging.
+     */
+    void limitPage(int pageSize) {
+        this.limit = Math.min(limit, pageSize);
+    }
+
     public int getSkip() {
         return skip;
     }
@@ -88,7 +159,112 @@ public class StrategyBuilder {
         return propertyNames;
     }
 
-    private void buildFromOperation(QueryOperation operation) throws ODataException {
+    /**
+     * Whether the query asks for the value of a single property of a single person, as in Persons('id')/age.
+     */
+    public boolean isPropertyValue() {
+        return keyLookup != null && propertyNames != null && propertyNames.size() == 1;
+    }
+
+    /**
+     * The value of the single property the query asks for, see {@link #isPropertyValue()}.
+     */
+    Object getPropertyValue(Person person) throws ODataException {
+        return accessors.getAccessor(propertyNames.get(0)).get(person);
+    }
+
+    /**
+     * The navigation properties to expand on every person of the result, empty if the query has no $expand.
+     */
+    public List<String> getExpandProperties() {
+        return expandProperties;
+    }
+
+    /**
+     * The primary key the query selects on, or null if the query is not a key lookup. Key lookups are resolved
+     * directly against the entity map instead of being evaluated as a predicate on every entity.
+     */
+    public String getKeyLookup() {
+        return keyLookup;
+    }
+
+    public boolean isKeyLookup() {
+        return keyLookup != null;
+    }
+
+    /**
+     * The comparator implementing the $orderby of the query, or null if the query does not specify an order.
+     * Persons that are equal on all ordered properties are ordered by key, so paging over the result is stable.
+     */
+    public Comparator<Person> getOrderBy() {
+        return orderBy;
+    }
+
+    public List<OrderByProperty> getOrderByProperties() {
+        return orderByProperties;
+    }
+
+    /**
+     * Orders a query without $orderby by key, the order server-driven paging hands out positions in.
+     */
+    void orderByKey() throws ODataException {
+        if (orderByProperties.isEmpty()) {
+            //A new list, the order of a query from the plan cache is shared with the plan
+            this.orderByProperties = Collections.singletonList(OrderByProperty.asc(KEY_PROPERTY));
+            this.orderBy = buildComparator(accessors, orderByProperties, Person::getPersonId);
+        }
+    }
+
+    /**
+     * Continues the query after the position encoded in the given $skiptoken, which must have been handed out
+     * for a query with the same order.
+     */
+    void startAfter(String skipToken) throws ODataException {
+        this.position = SkipToken.decode(skipToken, accessors, orderByProperties);
+        this.pagePredicate = getPredicate().and(position.after(accessors, orderByProperties, Person::getPersonId));
+        LOG.debug("Continuing after: {}", position.getKey());
+    }
+
+    /**
+     * The position the query continues after, or null if it starts at the beginning of its order.
+     */
+    public SkipToken getPosition() {
+        return position;
+    }
+
+    /**
+     * The position of the given person in the order of the query, or null if it cannot be encoded as $skiptoken.
+     */
+    SkipToken positionOf(Person person) throws ODataException {
+        return SkipToken.of(person, accessors, orderByProperties, Person::getPersonId);
+    }
+
+    /**
+     * Compiles the filters of the query for another view of persons, such as the rows of a columnar backend,
+     * returning null if the query has no filters. A query planned from a cached plan only binds its literals to the
+     * templates of the plan for that view.
+     */
+    <R> Predicate<R> compileFilters(EntityAccessors<R> viewAccessors) throws ODataException {
+        if (plan != null) {
+            return plan.bind(viewAccessors, parameters);
+        }
+        CriteriaCompiler<R> compiler = new CriteriaCompiler<>(viewAccessors);
+        Predicate<R> compiled = null;
+        for (Criteria criteria : filterCriteria) {
+            Predicate<R> filter = compiler.compile(criteria);
+            compiled = compiled == null ? filter : compiled.and(filter);
+        }
+        return compiled;
+    }
+
+    /**
+     * The criteria of all filters in the query, available for index planning.
+     */
+    public List<Criteria> getFilterCriteria() {
+        return filterCriteria;
+    }
+
+    void buildFromOperation(QueryOperation operation) throws ODataException {
         if (operation instanceof SelectOperation) {
             buildFromSelect((SelectOperation) operation);
         } else if (operation instanceof SelectByKeyOperation) {
@@ -102,25 +278,28 @@ public class StrategyBuilder {
         } else if (operation instanceof SkipOperation) {
             buildFromSkip((SkipOperation) operation);
         } else if (operation instanceof ExpandOperation) {
-            //not supported for now
+            buildFromExpand((ExpandOperation) operation);
         } else if (operation instanceof OrderByOperation) {
-            //not supported for now
+            buildFromOrderBy((OrderByOperation) operation);
         } else if (operation instanceof SelectPropertiesOperation) {
             buildFromSelectProperties((SelectPropertiesOperation) operation);
         } else {
-            throw new ODataSystemException("Unsupported query operation: " + operation);
+            throw new ODataNotImplementedException("Unsupported query operation: " + operation);
         }
     }
 
-    private void buildFromOptions(scala.collection.immutable.List<QueryOption> queryOptions) {
-        Iterator<QueryOption> optIt = queryOptions.iterator();
+    /**
+     * Whether the request asks for the total count next to the result, with $count=true.
+     */
+    static boolean includeCount(ODataRequestContext requestContext) {
+        Iterator<QueryOption> optIt = ODataUriUtil.getQueryOptions(requestContext.getUri()).iterator();
         while (optIt.hasNext()) {
             QueryOption opt = optIt.next();
             if (opt instanceof CountOption && ((CountOption) opt).value()) {
-                includeCount = true;
-                break;
+                return true;
             }
         }
+        return false;
     }
 
     private void buildFromSelectProperties(SelectPropertiesOperation operation) throws ODataException {
@@ -129,6 +308,17 @@ public class StrategyBuilder {
         buildFromOperation(operation.getSource());
     }
 
+    private void buildFromExpand(ExpandOperation operation) throws ODataException {
+        this.expandProperties = operation.getExpandPropertiesAsJava();
+        for (String propertyName : expandProperties) {
+            if (!PersonLinks.isNavigationProperty(propertyName)) {
+                throw new ODataNotImplementedException("Cannot expand property: " + propertyName);
+            }
+        }
+        LOG.debug("Expanding: {}", expandProperties);
+        buildFromOperation(operation.getSource());
+    }
+
     private void buildFromLimit(LimitOperation operation) throws ODataException {
         this.limit = operation.getCount();
         LOG.debug("Limit has been set to: {}", limit);
@@ -137,10 +327,47 @@ public class StrategyBuilder {
 
     private void buildFromSkip(SkipOperation operation) throws ODataException {
         this.skip = operation.getCount();
-        LOG.debug("Skip has been set to: {}", limit);
+        LOG.debug("Skip has been set to: {}", skip);
+        buildFromOperation(operation.getSource());
+    }
+
+    private void buildFromOrderBy(OrderByOperation operation) throws ODataException {
+        this.orderByProperties = operation.getOrderByPropertiesAsJava();
+        LOG.debug("Ordering by: {}", orderByProperties);
+
+        this.orderBy = buildComparator(accessors, orderByProperties, Person::getPersonId);
         buildFromOperation(operation.getSource());
     }
 
+    /**
+     * Builds the comparator for the given order by properties over any representation of an entity, breaking ties
+     * on the entity key. Returns null if there are no properties to order by.
+     */
+    static <T> Comparator<T> buildComparator(EntityAccessors<T> accessors, List<OrderByProperty> properties,
+                                             Function<T, String> keyFunction) throws ODataException {
+        Comparator<T> comparator = null;
+        for (OrderByProperty orderByProperty : properties) {
+            Comparator<T> propertyComparator = comparatorFor(accessors.getAccessor(orderByProperty.getPropertyName()));
+            if (orderByProperty.getDirection() instanceof Descending$) {
+                propertyComparator = propertyComparator.reversed();
+            }
+            comparator = comparator == null ? propertyComparator : comparator.thenComparing(propertyComparator);
+        }
+        return comparator != null ? comparator.thenComparing(keyFunction) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Comparator<T> comparatorFor(PropertyAccessor<T> accessor) throws ODataException {
+        if (accessor.isInt()) {
+            return Comparator.comparingInt(accessor.intGetter());
+        }
+        if (!Comparable.class.isAssignableFrom(accessor.getType()) && !accessor.getType().isPrimitive()) {
+            throw new ODataBadRequestException("Cannot order by property: " + accessor.getName());
+        }
+        Comparator<Object> natural = (left, right) -> ((Comparable<Object>) left).compareTo(right);
+        return Comparator.comparing(accessor.getter(), Comparator.nullsFirst(natural));
+    }
+
     private void buildFromCount(CountOperation operation) throws ODataException {
         this.count = true;
         LOG.debug("Counting {} records", operation.getSource().entitySetName());
@@ -153,50 +380,22 @@ public class StrategyBuilder {
 
     private void buildFromSelectByKey(SelectByKeyOperation selectByKeyOperation) {
         Map<String, Object> keys = selectByKeyOperation.getKeyAsJava();
-        String personId = (String)keys.get("id");
+        String personId = (String)keys.get(KEY_PROPERTY);
         LOG.debug("Selecting by key: {}", personId);
 
-        predicates.add(person -> person.getPersonId().equalsIgnoreCase(personId));
+        this.keyLookup = personId;
     }
 
-    private void buildFromFilter(CriteriaFilterOperation criteriaFilterOperation) {
+    private void buildFromFilter(CriteriaFilterOperation criteriaFilterOperation) throws ODataException {
         Criteria criteria = criteriaFilterOperation.getCriteria();
-        if(criteria instanceof ComparisonCriteria) {
-            ComparisonCriteria comparisonCriteria = (ComparisonCriteria) criteria;
-            ComparisonOperator operator = comparisonCriteria.getOperator();
-            if(operator instanceof GtOperator$) {
-                LOG.info("Greater then operator");
-            }
+        LOG.debug("Compiling filter criteria: {}", criteria);
 
-            //For now we only support here property key/value comparisons, just to keep the example simple
-            if(comparisonCriteria.getLeft() instanceof PropertyCriteriaValue
-                    && comparisonCriteria.getRight() instanceof LiteralCriteriaValue) {
-
-                PropertyCriteriaValue propertyCriteriaValue = (PropertyCriteriaValue) comparisonCriteria.getLeft();
-                LiteralCriteriaValue literalCriteriaValue = (LiteralCriteriaValue) comparisonCriteria.getRight();
-
-                Predicate<Person> p = person -> {
-                    Object fieldValue = getPersonField(person, propertyCriteriaValue.getPropertyName());
-                    Object queryValue = literalCriteriaValue.getValue();
-
-                    LOG.debug("Comparing equality on value: {} to queried value: {}", fieldValue, queryValue);
-
-                    return fieldValue != null && fieldValue.equals(literalCriteriaValue.getValue());
-                };
-
-                predicates.add(p);
-            }
-        }
+        addPredicate(new CriteriaCompiler<>(accessors).compile(criteria));
+        filterCriteria.add(criteria);
+        buildFromOperation(criteriaFilterOperation.getSource());
     }
 
-    private Object getPersonField(Person person, String propertyName) {
-        try {
-            Field field = person.getClass().getDeclaredField(propertyName);
-            field.setAccessible(true);
-            return field.get(person);
-        } catch (IllegalAccessException | NoSuchFieldException e) {
-            LOG.debug("Could not load property: " + propertyName);
-            return null;
-        }
+    private void addPredicate(Predicate<Person> p) {
+        predicate = predicate == null ? p : predicate.and(p);
     }
 }
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.edm.model.EntityDataModel;
+import com.sdl.odata.api.parser.ODataUri;
+import com.sdl.odata.api.processor.datasource.TransactionalDataSource;
+import com.sdl.odata.api.processor.link.ODataLink;
+import com.sdl.odata.example.AggregateGroup;
+import com.sdl.odata.example.Person;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The data source handed to the OData framework for writes, recording the duration of every operation on the
+ * storage backend in the query metrics. Operations look the data source up through the framework as well, so it
+ * is a {@link PersonDataSource} that passes everything else straight to the backend.
+ */
+final class TimedDataSource implements PersonDataSource {
+    private final PersonDataSource dataSource;
+    private final QueryMetrics metrics;
+
+    TimedDataSource(PersonDataSource dataSource, QueryMetrics metrics) {
+        this.dataSource = dataSource;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Object create(ODataUri oDataUri, Object o, EntityDataModel entityDataModel) throws ODataException {
+        return metrics.time("datasource.create", () -> dataSource.create(oDataUri, o, entityDataModel));
+    }
+
+    @Override
+    public Object update(ODataUri oDataUri, Object o, EntityDataModel entityDataModel) throws ODataException {
+        return metrics.time("datasource.update", () -> dataSource.update(oDataUri, o, entityDataModel));
+    }
+
+    @Override
+    public void delete(ODataUri oDataUri, EntityDataModel entityDataModel) throws ODataException {
+        metrics.time("datasource.delete", () -> {
+            dataSource.delete(oDataUri, entityDataModel);
+            return null;
+        });
+    }
+
+    @Override
+    public void createLink(ODataUri oDataUri, ODataLink oDataLink, EntityDataModel entityDataModel)
+            throws ODataException {
+        dataSource.createLink(oDataUri, oDataLink, entityDataModel);
+    }
+
+    @Override
+    public void deleteLink(ODataUri oDataUri, ODataLink oDataLink, EntityDataModel entityDataModel)
+            throws ODataException {
+        dataSource.deleteLink(oDataUri, oDataLink, entityDataModel);
+    }
+
+    @Override
+    public TransactionalDataSource startTransaction() {
+        metrics.increment("datasource.transactions");
+        return dataSource.startTransaction();
+    }
+
+    @Override
+    public int createAll(Collection<Person> persons) throws ODataException {
+        return dataSource.createAll(persons);
+    }
+
+    @Override
+    public long getVersion() {
+        return dataSource.getVersion();
+    }
+
+    @Override
+    public long size() throws ODataException {
+        return dataSource.size();
+    }
+
+    @Override
+    public Map<String, Person> getAll(Collection<String> keys) throws ODataException {
+        return dataSource.getAll(keys);
+    }
+
+    @Override
+    public PersonLinks getLinks() {
+        return dataSource.getLinks();
+    }
+
+    @Override
+    public ChangeJournal getChangeJournal() {
+        return dataSource.getChangeJournal();
+    }
+
+    @Override
+    public long count(StrategyBuilder builder) throws ODataException {
+        return dataSource.count(builder);
+    }
+
+    @Override
+    public List<Person> query(StrategyBuilder builder) throws ODataException {
+        return dataSource.query(builder);
+    }
+
+    @Override
+    public List<AggregateGroup> aggregate(Aggregation aggregation) throws ODataException {
+        return metrics.time("datasource.aggregate", () -> dataSource.aggregate(aggregation));
+    }
+
+    @Override
+    public EntityAggregates<Person> getAggregates() {
+        return dataSource.getAggregates();
+    }
+}
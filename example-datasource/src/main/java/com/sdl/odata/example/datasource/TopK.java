@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Collector;
+
+/**
+ * Collector selecting the first k elements of a stream in the given order without sorting the whole stream. It keeps
+ * a bounded max-heap of the best k elements seen so far, so selecting a page of an ordered result takes
+ * O(n log k) time and O(k) memory. Partial results of parallel streams are merged by the combiner.
+ */
+public final class TopK {
+
+    private TopK() {
+    }
+
+    public static <T> Collector<T, ?, List<T>> collector(Comparator<? super T> comparator, int k) {
+        Comparator<? super T> reversed = Collections.reverseOrder(comparator);
+        return Collector.<T, PriorityQueue<T>, List<T>>of(
+                () -> new PriorityQueue<>(Math.max(1, Math.min(k, 1024)), reversed),
+                (heap, element) -> offer(heap, element, comparator, k),
+                (left, right) -> {
+                    for (T element : right) {
+                        offer(left, element, comparator, k);
+                    }
+                    return left;
+                },
+                heap -> {
+                    List<T> result = new ArrayList<>(heap);
+                    result.sort(comparator);
+                    return result;
+                });
+    }
+
+    private static <T> void offer(PriorityQueue<T> heap, T element, Comparator<? super T> comparator, int k) {
+        if (k <= 0) {
+            return;
+        }
+        if (heap.size() < k) {
+            heap.offer(element);
+        } else if (comparator.compare(element, heap.peek()) < 0) {
+            heap.poll();
+            heap.offer(element);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the {@link WriteAheadLog}, for tuning its batch size and latency: how many records and bytes were
+ * written, in how many group commits, and how long the fsync of those commits took.
+ */
+public final class WalMetrics {
+    private final long startNanos = System.nanoTime();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder failedCommits = new LongAdder();
+    private final LongAdder fsyncNanos = new LongAdder();
+    private final LongAccumulator maxFsyncNanos = new LongAccumulator(Long::max, 0);
+
+    void recordCommit(int batchSize, long batchBytes, long fsyncDuration) {
+        records.add(batchSize);
+        bytes.add(batchBytes);
+        commits.increment();
+        fsyncNanos.add(fsyncDuration);
+        maxFsyncNanos.accumulate(fsyncDuration);
+    }
+
+    void recordFailure() {
+        failedCommits.increment();
+    }
+
+    public long getRecords() {
+        return records.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    public long getFailedCommits() {
+        return failedCommits.sum();
+    }
+
+    /**
+     * The average number of records per group commit.
+     */
+    public double getAverageBatchSize() {
+        long commitCount = commits.sum();
+        return commitCount == 0 ? 0 : (double) records.sum() / commitCount;
+    }
+
+    /**
+     * The number of records written per second, averaged since the log was opened.
+     */
+    public double getRecordsPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        return seconds <= 0 ? 0 : records.sum() / seconds;
+    }
+
+    public double getAverageFsyncMillis() {
+        long commitCount = commits.sum();
+        return commitCount == 0 ? 0 : fsyncNanos.sum() / (double) commitCount / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaxFsyncMillis() {
+        return maxFsyncNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("records", getRecords());
+        metrics.put("bytes", getBytes());
+        metrics.put("commits", getCommits());
+        metrics.put("failedCommits", getFailedCommits());
+        metrics.put("averageBatchSize", getAverageBatchSize());
+        metrics.put("recordsPerSecond", getRecordsPerSecond());
+        metrics.put("averageFsyncMillis", getAverageFsyncMillis());
+        metrics.put("maxFsyncMillis", getMaxFsyncMillis());
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
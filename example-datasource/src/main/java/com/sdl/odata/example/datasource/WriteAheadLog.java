@@ -0,0 +1,587 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataSystemException;
+import com.sdl.odata.api.processor.datasource.ODataDataSourceException;
+import com.sdl.odata.example.Person;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Write-ahead log for the mutations of the {@link InMemoryDataSource}. Mutations queue a record while they hold
+ * their key and wait for it to be durable before they change the data source, so a change is never visible before
+ * it is durable and a failed commit leaves nothing to undo. A single committer thread writes the queued records in
+ * group commits: it takes every record that is queued, waits up to 'odata.example.wal.max-latency-ms' for more to
+ * arrive as long as the batch is smaller than 'odata.example.wal.max-batch-size', and makes the whole batch durable
+ * with a single fsync.
+ *
+ * A batch that fails to be written or forced is cut off the log again, so no torn record is left in front of the
+ * records of later batches, which replay would otherwise never reach. If the log cannot be cut back either, it fails
+ * every later record until the application is restarted.
+ *
+ * Every 'odata.example.wal.snapshot-interval' seconds the log is rotated to a new file, a snapshot of all persons and
+ * their managers is written, and the log files that the snapshot covers are deleted. Recovery loads the latest
+ * snapshot and replays the log files written since. Records are idempotent (full person, delete by key or the
+ * manager of a person), so the snapshot may include some of the mutations that are also replayed from the log.
+ *
+ * The log is off by default and is switched on with 'odata.example.wal.enabled'.
+ */
+@Component
+public class WriteAheadLog implements DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private static final String LOG_PREFIX = "wal-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int maxBatchSize;
+    private final long maxLatencyNanos;
+    private final long snapshotInterval;
+    private final WalMetrics metrics = new WalMetrics();
+
+    /*
+     * Mutations hold the read side of this lock while they log their record and change the data source, a log
+     * rotation takes the write side so a snapshot started after it sees every mutation logged before it.
+     */
+    private final ReadWriteLock mutationLock = new ReentrantReadWriteLock();
+    private final BlockingQueue<PendingRecord> queue = new LinkedBlockingQueue<>();
+    private final Object ioLock = new Object();
+
+    private final UnaryOperator<FileChannel> channels;
+
+    private FileChannel channel;
+    //the size of the current log file up to the last durable batch, guarded by the io lock
+    private long position;
+    private volatile IOException failure;
+    private long sequence;
+    private volatile boolean running;
+    private Thread committer;
+    private ScheduledExecutorService snapshotter;
+
+    @Autowired
+    public WriteAheadLog(@Value("${odata.example.wal.enabled:false}") boolean enabled,
+                         @Value("${odata.example.wal.path:data/wal}") String path,
+                         @Value("${odata.example.wal.max-batch-size:1024}") int maxBatchSize,
+                         @Value("${odata.example.wal.max-latency-ms:2}") long maxLatency,
+                         @Value("${odata.example.wal.snapshot-interval:300}") long snapshotInterval) {
+        this(enabled, path, maxBatchSize, maxLatency, snapshotInterval, UnaryOperator.identity());
+    }
+
+    /**
+     * Creates a log that writes through the channels returned by the given function, so tests can fail writes.
+     */
+    WriteAheadLog(boolean enabled, String path, int maxBatchSize, long maxLatency, long snapshotInterval,
+                  UnaryOperator<FileChannel> channels) {
+        this.channels = channels;
+        this.enabled = enabled;
+        this.directory = Paths.get(path);
+        this.maxBatchSize = maxBatchSize;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatency);
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Returns a log that does not write anything, for use outside of a Spring context.
+     */
+    public static WriteAheadLog disabled() {
+        return new WriteAheadLog(false, "", 1, 0, 0);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public WalMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Recovers the persons and their links from the latest snapshot and the log, and starts logging and taking
+     * snapshots.
+     *
+     * @param put            Restores a person
+     * @param delete         Removes the person with the given key
+     * @param setManager     Restores or, for a null manager, removes the manager of the person with the given key
+     * @param snapshotSource Returns all persons for a snapshot
+     * @param managerSource  Returns the manager of every person that has one for a snapshot
+     */
+    public synchronized void open(Consumer<Person> put, Consumer<String> delete,
+                                  BiConsumer<String, String> setManager, Supplier<Collection<Person>> snapshotSource,
+                                  Supplier<Map<String, String>> managerSource) {
+        if (!enabled || running) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(directory);
+            TreeMap<Long, Path> snapshots = list(SNAPSHOT_PREFIX);
+            TreeMap<Long, Path> logs = list(LOG_PREFIX);
+
+            long snapshotSequence = snapshots.isEmpty() ? 0 : snapshots.lastKey();
+            if (!snapshots.isEmpty()) {
+                LOG.info("Loading snapshot {}", snapshots.lastEntry().getValue());
+                replay(snapshots.lastEntry().getValue(), put, delete, setManager);
+            }
+            for (Path log : logs.tailMap(snapshotSequence, true).values()) {
+                LOG.info("Replaying write-ahead log {}", log);
+                replay(log, put, delete, setManager);
+            }
+
+            sequence = Math.max(snapshotSequence, logs.isEmpty() ? 0 : logs.lastKey()) + 1;
+            channel = openLog(sequence);
+            position = channel.size();
+        } catch (IOException e) {
+            throw new ODataSystemException("Unable to open write-ahead log in " + directory, e);
+        }
+
+        running = true;
+        committer = new Thread(this::commitLoop, "odata-wal-committer");
+        committer.setDaemon(true);
+        committer.start();
+
+        snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "odata-wal-snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot(snapshotSource, managerSource);
+            } catch (ODataDataSourceException | RuntimeException e) {
+                LOG.error("Unable to take snapshot", e);
+            }
+        }, snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Runs a mutation of the data source. Records logged by the mutation are guaranteed to be covered by any
+     * snapshot started after it returns.
+     */
+    public <R, E extends Exception> R mutate(Mutation<R, E> mutation) throws E {
+        if (!enabled) {
+            return mutation.run();
+        }
+
+        mutationLock.readLock().lock();
+        try {
+            return mutation.run();
+        } finally {
+            mutationLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Queues a record storing the person, returning the commit to wait for. Must be called from within a mutation
+     * while holding the key of the person, which applies the change only once the commit is durable, so records of
+     * the same person are logged in the order they are applied.
+     */
+    public CompletableFuture<Void> logPut(Person person) {
+        return log(PersonRecords.encodePut(person));
+    }
+
+    /**
+     * Queues a record deleting the person with the given key, see {@link #logPut(Person)}.
+     */
+    public CompletableFuture<Void> logDelete(String key) {
+        return log(PersonRecords.encodeDelete(key));
+    }
+
+    /**
+     * Queues a record setting or, for a null manager, removing the manager of the person with the given key. Must be
+     * called from within a mutation while holding the keys of the person and of the manager.
+     */
+    public CompletableFuture<Void> logManager(String key, String manager) {
+        return log(PersonRecords.encodeManager(key, manager));
+    }
+
+    /**
+     * Queues a single record storing and deleting the given persons, which is replayed either completely or not at
+     * all. Must be called from within a mutation while holding the keys of all persons involved.
+     */
+    public CompletableFuture<Void> logChanges(Collection<Person> puts, Collection<String> deletes) {
+        return logChanges(puts, deletes, Collections.emptyMap());
+    }
+
+    /**
+     * Queues a single record storing and deleting the given persons and then setting or, for a null manager,
+     * removing the managers of the given persons, see {@link #logChanges(Collection, Collection)}.
+     */
+    public CompletableFuture<Void> logChanges(Collection<Person> puts, Collection<String> deletes,
+                                              Map<String, String> managers) {
+        if (!enabled) {
+            return null;
+        }
+
+        List<byte[]> payloads = new ArrayList<>(puts.size() + deletes.size() + managers.size());
+        for (Person person : puts) {
+            payloads.add(PersonRecords.encodePut(person));
+        }
+        for (String key : deletes) {
+            payloads.add(PersonRecords.encodeDelete(key));
+        }
+        for (Map.Entry<String, String> manager : managers.entrySet()) {
+            payloads.add(PersonRecords.encodeManager(manager.getKey(), manager.getValue()));
+        }
+        return log(PersonRecords.encodeBatch(payloads));
+    }
+
+    /**
+     * Waits until the given commit is durable.
+     */
+    public void await(CompletableFuture<Void> commit) throws ODataDataSourceException {
+        if (commit == null) {
+            return;
+        }
+
+        try {
+            commit.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ODataDataSourceException("Interrupted while waiting for the write-ahead log", e);
+        } catch (ExecutionException e) {
+            throw new ODataDataSourceException("Unable to write to the write-ahead log", e.getCause());
+        }
+    }
+
+    /**
+     * Rotates the log, writes a snapshot of the given persons and managers and deletes the log files it covers. The
+     * managers are written after the persons, so they are restored after the persons they link.
+     */
+    public void snapshot(Supplier<Collection<Person>> snapshotSource, Supplier<Map<String, String>> managerSource)
+            throws ODataDataSourceException {
+        long snapshotSequence;
+        mutationLock.writeLock().lock();
+        try {
+            synchronized (ioLock) {
+                FileChannel previous = channel;
+                channel = openLog(sequence + 1);
+                position = channel.size();
+                sequence++;
+                snapshotSequence = sequence;
+                previous.force(false);
+                previous.close();
+            }
+        } catch (IOException e) {
+            throw new ODataDataSourceException("Unable to rotate write-ahead log", e);
+        } finally {
+            mutationLock.writeLock().unlock();
+        }
+
+        Path snapshot = file(SNAPSHOT_PREFIX, snapshotSequence);
+        Path temporary = Paths.get(snapshot + ".tmp");
+        long start = System.nanoTime();
+        int count = 0;
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+             OutputStream out = new BufferedOutputStream(file, 1 << 16)) {
+            for (Person person : snapshotSource.get()) {
+                out.write(PersonRecords.frame(PersonRecords.encodePut(person)));
+                count++;
+            }
+            for (Map.Entry<String, String> manager : managerSource.get().entrySet()) {
+                out.write(PersonRecords.frame(PersonRecords.encodeManager(manager.getKey(), manager.getValue())));
+            }
+            out.flush();
+            file.getFD().sync();
+            Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            for (Path covered : list(LOG_PREFIX).headMap(snapshotSequence).values()) {
+                Files.delete(covered);
+            }
+            for (Path older : list(SNAPSHOT_PREFIX).headMap(snapshotSequence).values()) {
+                Files.delete(older);
+            }
+        } catch (IOException e) {
+            throw new ODataDataSourceException("Unable to write snapshot " + snapshot, e);
+        }
+        LOG.info("Wrote snapshot of {} persons in {} ms, write-ahead log metrics: {}", count,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), metrics);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (!running) {
+            return;
+        }
+
+        snapshotter.shutdown();
+        snapshotter.awaitTermination(30, TimeUnit.SECONDS);
+        //the committer drains the queue before it stops
+        running = false;
+        committer.join();
+        for (PendingRecord record : queue) {
+            record.commit.completeExceptionally(new IllegalStateException("Write-ahead log is closed"));
+        }
+        synchronized (ioLock) {
+            channel.close();
+        }
+    }
+
+    private CompletableFuture<Void> log(byte[] payload) {
+        if (!enabled) {
+            return null;
+        }
+
+        CompletableFuture<Void> commit = new CompletableFuture<>();
+        if (!running) {
+            commit.completeExceptionally(new IllegalStateException("Write-ahead log is not open"));
+            return commit;
+        }
+        if (failure != null) {
+            commit.completeExceptionally(failure);
+            return commit;
+        }
+        queue.add(new PendingRecord(PersonRecords.frame(payload), commit));
+        return commit;
+    }
+
+    private void commitLoop() {
+        List<PendingRecord> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (running || !queue.isEmpty()) {
+                PendingRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                long deadline = System.nanoTime() + maxLatencyNanos;
+                while (batch.size() < maxBatchSize) {
+                    PendingRecord next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                }
+
+                commit(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Write-ahead log committer interrupted, failing {} pending records", batch.size() + queue.size());
+            Thread.currentThread().interrupt();
+            queue.drainTo(batch);
+            for (PendingRecord record : batch) {
+                record.commit.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void commit(List<PendingRecord> batch) {
+        ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+        long bytes = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(batch.get(i).record);
+            bytes += buffers[i].remaining();
+        }
+
+        try {
+            long fsyncDuration;
+            synchronized (ioLock) {
+                if (failure != null) {
+                    throw failure;
+                }
+                try {
+                    long written = 0;
+                    while (written < bytes) {
+                        written += channel.write(buffers);
+                    }
+                    long start = System.nanoTime();
+                    channel.force(false);
+                    fsyncDuration = System.nanoTime() - start;
+                    position += bytes;
+                } catch (IOException e) {
+                    cutOff(e);
+                    throw e;
+                }
+            }
+            metrics.recordCommit(batch.size(), bytes, fsyncDuration);
+            for (PendingRecord record : batch) {
+                record.commit.complete(null);
+            }
+        } catch (IOException e) {
+            LOG.error("Unable to commit {} records to the write-ahead log", batch.size(), e);
+            metrics.recordFailure();
+            for (PendingRecord record : batch) {
+                record.commit.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Cuts a failed batch off the current log file. Must be called while holding the io lock.
+     */
+    private void cutOff(IOException cause) {
+        try {
+            channel.truncate(position);
+            channel.force(false);
+        } catch (IOException e) {
+            LOG.error("Unable to cut a failed batch off the write-ahead log, failing all further records", e);
+            failure = new IOException("Write-ahead log failed, restart to recover from the log", cause);
+        }
+    }
+
+    /**
+     * Replays the records of a log or snapshot file, truncating it at the first torn or corrupt record.
+     */
+    private void replay(Path file, Consumer<Person> put, Consumer<String> delete,
+                        BiConsumer<String, String> setManager) throws IOException {
+        long size = Files.size(file);
+        long valid = 0;
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                byte[] payload;
+                try {
+                    int checksum = in.readInt();
+                    //a torn length may be any number, so check it against the file before allocating it
+                    if (length <= 0 || length > size - valid - PersonRecords.HEADER_SIZE) {
+                        throw new EOFException("Invalid record length " + length);
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    if (PersonRecords.checksum(payload) != checksum) {
+                        throw new EOFException("Checksum mismatch");
+                    }
+                } catch (EOFException e) {
+                    LOG.warn("Torn or corrupt record at offset {} of {}, discarding the rest of the file: {}",
+                            valid, file, e.getMessage());
+                    try (FileChannel truncate = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                        truncate.truncate(valid);
+                    }
+                    break;
+                }
+
+                apply(payload, put, delete, setManager);
+                valid += PersonRecords.HEADER_SIZE + length;
+                count++;
+            }
+        }
+        LOG.info("Replayed {} records from {}", count, file);
+    }
+
+    private static void apply(byte[] payload, Consumer<Person> put, Consumer<String> delete,
+                              BiConsumer<String, String> setManager) {
+        switch (PersonRecords.type(payload)) {
+            case PersonRecords.PUT:
+                put.accept(PersonRecords.decodePerson(payload));
+                break;
+            case PersonRecords.DELETE:
+                delete.accept(PersonRecords.decodeKey(payload));
+                break;
+            case PersonRecords.BATCH:
+                for (byte[] nested : PersonRecords.decodeBatch(payload)) {
+                    apply(nested, put, delete, setManager);
+                }
+                break;
+            case PersonRecords.MANAGER:
+                setManager.accept(PersonRecords.decodeKey(payload), PersonRecords.decodeManager(payload));
+                break;
+            default:
+                throw new ODataSystemException("Unknown record type: " + PersonRecords.type(payload));
+        }
+    }
+
+    private FileChannel openLog(long logSequence) throws IOException {
+        return channels.apply(FileChannel.open(file(LOG_PREFIX, logSequence), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+    }
+
+    private Path file(String prefix, long fileSequence) {
+        return directory.resolve(String.format("%s%016d.log", prefix, fileSequence));
+    }
+
+    private TreeMap<Long, Path> list(String prefix) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*.log")) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                files.put(Long.parseLong(name.substring(prefix.length(), name.length() - 4)), file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * A change to the data source that logs records.
+     *
+     * @param <R> The result of the change
+     * @param <E> The exception the change may throw
+     */
+    @FunctionalInterface
+    public interface Mutation<R, E extends Exception> {
+        R run() throws E;
+    }
+
+    private static final class PendingRecord {
+        private final byte[] record;
+        private final CompletableFuture<Void> commit;
+
+        private PendingRecord(byte[] record, CompletableFuture<Void> commit) {
+            this.record = record;
+            this.commit = commit;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.processor.query.Criteria;
+import com.sdl.odata.api.processor.query.CriteriaFilterOperation;
+import com.sdl.odata.api.processor.query.LiteralCriteriaValue;
+import com.sdl.odata.api.processor.query.PropertyCriteriaValue;
+import com.sdl.odata.api.processor.query.SelectOperation;
+import com.sdl.odata.example.Person;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class ColumnarDataSourceTest {
+
+    private final EntityAccessorRegistry registry = new EntityAccessorRegistry();
+    private final QueryPlanCache planCache = new QueryPlanCache(registry, true, 16);
+    private ColumnarDataSource dataSource;
+
+    @Before
+    public void setUp() {
+        dataSource = new ColumnarDataSource(registry, ParallelScanExecutor.sequential(), QueryMetrics.disabled(),
+                ChangeJournal.disabled());
+        dataSource.createAll(Arrays.asList(
+                new Person("donald", "Donald", "Duck", 34),
+                new Person("scrooge", "Scrooge", "McDuck", 83),
+                new Person("daisy", "Daisy", "Duck", 31)));
+    }
+
+    @Test
+    public void filtersOnDictionaryCodes() throws ODataException {
+        assertEquals("daisy,donald", query(lastName().eq(literal("Duck"))));
+        assertEquals("scrooge", query(lastName().ne(literal("Duck"))));
+        assertEquals("donald", query(lastName().eq(literal("Duck")).and(firstName().eq(literal("Donald")))));
+    }
+
+    @Test
+    public void matchesNothingForValuesNotInTheDictionary() throws ODataException {
+        assertEquals("", query(lastName().eq(literal("Mouse"))));
+        assertEquals("daisy,donald,scrooge", query(lastName().ne(literal("Mouse"))));
+        assertEquals(0, count(lastName().eq(literal("Mouse"))));
+    }
+
+    @Test
+    public void bindsCodesPerQueryWhenReusingThePlan() throws ODataException {
+        assertEquals("", query(lastName().eq(literal("Mouse"))));
+        dataSource.createAll(Arrays.asList(new Person("mickey", "Mickey", "Mouse", 90)));
+
+        assertEquals("mickey", query(lastName().eq(literal("Mouse"))));
+        assertEquals("daisy,donald", query(lastName().eq(literal("Duck"))));
+        assertEquals(2, planCache.getStats().hitCount());
+    }
+
+    @Test
+    public void comparesDecodedValuesForOrdering() throws ODataException {
+        assertEquals("scrooge", query(lastName().gt(literal("Duck"))));
+        assertEquals("daisy", query(firstName().lt(literal("Db"))));
+    }
+
+    private String query(Criteria criteria) throws ODataException {
+        return dataSource.query(plan(criteria)).stream().map(Person::getPersonId).sorted()
+                .collect(Collectors.joining(","));
+    }
+
+    private long count(Criteria criteria) throws ODataException {
+        return dataSource.count(plan(criteria));
+    }
+
+    private StrategyBuilder plan(Criteria criteria) throws ODataException {
+        return planCache.plan(new CriteriaFilterOperation(new SelectOperation("Persons", false), criteria), false);
+    }
+
+    private static PropertyCriteriaValue firstName() {
+        return new PropertyCriteriaValue("firstName");
+    }
+
+    private static PropertyCriteriaValue lastName() {
+        return new PropertyCriteriaValue("lastName");
+    }
+
+    private static LiteralCriteriaValue literal(Object value) {
+        return new LiteralCriteriaValue(value);
+    }
+}
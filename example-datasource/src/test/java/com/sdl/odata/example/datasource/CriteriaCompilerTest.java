@@ -0,0 +1,309 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataBadRequestException;
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.edm.annotations.EdmProperty;
+import com.sdl.odata.api.processor.query.Criteria;
+import com.sdl.odata.api.processor.query.CriteriaValue;
+import com.sdl.odata.api.processor.query.LiteralCriteriaValue;
+import com.sdl.odata.api.processor.query.PropertyCriteriaValue;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CriteriaCompilerTest {
+
+    private static final EntityAccessors<Sample> ACCESSORS = new EntityAccessorRegistry().getAccessors(Sample.class);
+
+    private static final List<Sample> SAMPLES = Arrays.asList(
+            new Sample("a", 22, 10L, 1.5, null),
+            new Sample("b", 23, 20L, 2.5, 1),
+            new Sample("c", 30, 3000000000L, -1.0, 2));
+
+    @Test
+    public void comparesIntPropertyWithIntegralLiteral() throws ODataException {
+        assertEquals("b", matches(p("age").eq(l(23))));
+        assertEquals("a,c", matches(p("age").ne(l(23))));
+        assertEquals("c", matches(p("age").gt(l(23))));
+        assertEquals("b,c", matches(p("age").ge(l(23))));
+        assertEquals("a", matches(p("age").lt(l(23))));
+        assertEquals("a,b", matches(p("age").le(l(23))));
+        assertEquals("b", matches(p("age").eq(l(23L))));
+    }
+
+    @Test
+    public void flipsComparisonsWithTheLiteralOnTheLeft() throws ODataException {
+        assertEquals("c", matches(l(23).lt(p("age"))));
+        assertEquals("a,b", matches(l(23).ge(p("age"))));
+        assertEquals("b", matches(l(23).eq(p("age"))));
+    }
+
+    @Test
+    public void comparesIntPropertyWithFloatingPointLiteral() throws ODataException {
+        assertEquals("b,c", matches(p("age").gt(l(22.5))));
+        assertEquals("b", matches(p("age").eq(l(23.0))));
+        assertEquals("", matches(p("age").eq(l(22.5))));
+        assertEquals("a", matches(p("age").lt(l(new BigDecimal("22.9")))));
+    }
+
+    @Test
+    public void comparesLongAndDoubleProperties() throws ODataException {
+        assertEquals("c", matches(p("total").gt(l(Integer.MAX_VALUE))));
+        assertEquals("a", matches(p("total").eq(l(10))));
+        assertEquals("a,b", matches(p("total").lt(l(20.5))));
+        assertEquals("a,b", matches(p("score").gt(l(0))));
+        assertEquals("b", matches(p("score").eq(l(2.5))));
+    }
+
+    @Test
+    public void comparesTwoProperties() throws ODataException {
+        assertEquals("c", matches(p("age").lt(p("total"))));
+        assertEquals("a,b,c", matches(p("score").lt(p("age"))));
+        assertEquals("", matches(p("name").eq(p("name")).and(p("age").ne(p("age")))));
+    }
+
+    @Test
+    public void appliesIntegerArithmeticToIntegralOperands() throws ODataException {
+        assertEquals("a,b", matches(p("age").div(l(2)).eq(l(11))));
+        assertEquals("b", matches(p("age").mod(l(5)).eq(l(3))));
+        assertEquals("b", matches(p("age").add(l(1)).eq(l(24))));
+        assertEquals("a", matches(p("age").sub(l(2)).eq(l(20))));
+        assertEquals("c", matches(p("total").mul(l(1000)).gt(l(Integer.MAX_VALUE))));
+    }
+
+    @Test
+    public void appliesFloatingPointArithmeticToFloatingPointLiterals() throws ODataException {
+        assertEquals("a", matches(p("age").div(l(2.0)).eq(l(11))));
+        assertEquals("b", matches(p("age").div(l(2.0)).eq(l(11.5))));
+        assertEquals("a", matches(p("age").div(l(new BigDecimal("2.0"))).eq(l(11))));
+        assertEquals("c", matches(p("age").mul(l(1.0E20)).gt(l(2.5E21))));
+        assertEquals("b", matches(p("score").mul(l(2)).eq(l(5))));
+        assertEquals("a", matches(p("total").add(p("score")).eq(l(11.5))));
+    }
+
+    @Test
+    public void foldsConstantExpressions() throws ODataException {
+        assertEquals("a,b,c", matches(l(1).add(l(1)).eq(l(2))));
+        assertEquals("", matches(l(5).div(l(2.0)).eq(l(2))));
+        assertEquals("a,b,c", matches(l(2).eq(l(2.0))));
+        assertEquals("a,b,c", matches(l(1).lt(l(2)).or(p("age").eq(l(0)))));
+    }
+
+    @Test(expected = ODataBadRequestException.class)
+    public void rejectsConstantDivisionByZero() throws ODataException {
+        compile(p("age").div(l(0)).eq(l(1)));
+    }
+
+    @Test(expected = ODataBadRequestException.class)
+    public void rejectsConstantModuloByZero() throws ODataException {
+        compile(p("age").mod(l(0L)).eq(l(1)));
+    }
+
+    @Test
+    public void raisesArithmeticExceptionForDivisionByZeroAtEvaluation() throws ODataException {
+        Predicate<Sample> predicate = compile(p("age").div(p("age").sub(l(23))).eq(l(1)));
+        assertFalse(predicate.test(SAMPLES.get(0)));
+        try {
+            predicate.test(SAMPLES.get(1));
+        } catch (ArithmeticException e) {
+            return;
+        }
+        throw new AssertionError("Expected an ArithmeticException");
+    }
+
+    @Test
+    public void dividesFloatingPointByZeroWithoutFailing() throws ODataException {
+        assertEquals("a,b,c", matches(p("age").div(l(0.0)).gt(l(0))));
+    }
+
+    @Test
+    public void comparesStrings() throws ODataException {
+        assertEquals("b", matches(p("name").eq(l("b"))));
+        assertEquals("a,c", matches(p("name").ne(l("b"))));
+        assertEquals("a", matches(p("name").lt(l("b"))));
+        assertEquals("b,c", matches(p("name").ge(l("b"))));
+    }
+
+    @Test
+    public void comparesWithNull() throws ODataException {
+        assertEquals("a", matches(p("rank").eq(l(null))));
+        assertEquals("b,c", matches(p("rank").ne(l(null))));
+        assertEquals("", matches(p("rank").gt(l(null))));
+        assertEquals("c", matches(p("rank").gt(l(1))));
+        assertEquals("b", matches(p("rank").add(l(1)).eq(l(2))));
+        assertEquals("a,c", matches(p("rank").add(l(1)).ne(l(2))));
+        assertEquals("b,c", matches(p("rank").lt(p("age"))));
+    }
+
+    @Test(expected = ODataBadRequestException.class)
+    public void rejectsComparingNumbersWithStrings() throws ODataException {
+        compile(p("age").eq(l("23")));
+    }
+
+    @Test(expected = ODataBadRequestException.class)
+    public void rejectsArithmeticOnStrings() throws ODataException {
+        compile(p("name").add(l(1)).eq(l(1)));
+    }
+
+    @Test(expected = ODataBadRequestException.class)
+    public void rejectsUnknownProperties() throws ODataException {
+        compile(p("height").eq(l(1)));
+    }
+
+    @Test
+    public void combinesWithAndAndOr() throws ODataException {
+        assertEquals("b", matches(p("age").gt(l(22)).and(p("age").lt(l(30)))));
+        assertEquals("a,c", matches(p("age").eq(l(22)).or(p("name").eq(l("c")))));
+    }
+
+    @Test
+    public void bindsTemplateParameters() throws ODataException {
+        CriteriaCompiler<Sample> compiler = new CriteriaCompiler<>(ACCESSORS);
+        CriteriaCompiler.Template<Sample> template = compiler.compileTemplate(
+                p("age").div(l(2)).eq(l(11)).and(p("name").ne(l("x"))));
+        assertEquals(3, compiler.getParameterCount());
+
+        assertEquals("a,b", filter(template.bind(new Object[]{2, 11, "x"})));
+        assertEquals("a", filter(template.bind(new Object[]{2.0, 11, "x"})));
+        assertEquals("b", filter(template.bind(new Object[]{2, 11, "a"})));
+    }
+
+    @Test
+    public void bindsLiteralComparisonsLikeCompiledLiterals() throws ODataException {
+        Object[][] literals = {{23}, {23L}, {3000000000L}, {22.5}, {new BigDecimal("20")}, {BigInteger.TEN},
+                {BigInteger.ONE.shiftLeft(70)}, {null}};
+        for (String property : Arrays.asList("age", "total", "score", "rank")) {
+            for (Object[] literal : literals) {
+                for (boolean flipped : new boolean[]{false, true}) {
+                    Criteria[] criteria = flipped
+                            ? new Criteria[]{l(literal[0]).eq(p(property)), l(literal[0]).ne(p(property)),
+                                    l(literal[0]).lt(p(property)), l(literal[0]).ge(p(property))}
+                            : new Criteria[]{p(property).eq(l(literal[0])), p(property).ne(l(literal[0])),
+                                    p(property).gt(l(literal[0])), p(property).le(l(literal[0]))};
+                    for (Criteria c : criteria) {
+                        CriteriaCompiler.Template<Sample> template = new CriteriaCompiler<>(ACCESSORS)
+                                .compileTemplate(c);
+                        assertEquals(c.toString(), matches(c), filter(template.bind(literal)));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bindsLiteralsOfAnotherTypeThanCompiled() throws ODataException {
+        CriteriaCompiler.Template<Sample> template = new CriteriaCompiler<>(ACCESSORS)
+                .compileTemplate(p("age").gt(l(22)).and(p("name").ne(l("b"))));
+
+        assertEquals("c", filter(template.bind(new Object[]{22, "b"})));
+        assertEquals("b,c", filter(template.bind(new Object[]{22.5, null})));
+        assertEquals("", filter(template.bind(new Object[]{Long.MAX_VALUE, "b"})));
+    }
+
+    @Test
+    public void decidesIntegralLiteralsByType() {
+        assertTrue(CriteriaCompiler.isIntegral(1));
+        assertTrue(CriteriaCompiler.isIntegral(1L));
+        assertTrue(CriteriaCompiler.isIntegral(BigInteger.TEN));
+        assertFalse(CriteriaCompiler.isIntegral(BigInteger.ONE.shiftLeft(70)));
+        assertFalse(CriteriaCompiler.isIntegral(2.0));
+        assertFalse(CriteriaCompiler.isIntegral(new BigDecimal("2")));
+
+        assertTrue(CriteriaCompiler.isWholeNumber(2.0));
+        assertTrue(CriteriaCompiler.isWholeNumber(new BigDecimal("2.00")));
+        assertFalse(CriteriaCompiler.isWholeNumber(2.5));
+
+        assertTrue(CriteriaCompiler.fitsInt(Integer.MAX_VALUE));
+        assertFalse(CriteriaCompiler.fitsInt(Integer.MAX_VALUE + 1L));
+        assertFalse(CriteriaCompiler.fitsInt(BigInteger.ONE.shiftLeft(64)));
+    }
+
+    private static String matches(Criteria criteria) throws ODataException {
+        return filter(compile(criteria));
+    }
+
+    private static Predicate<Sample> compile(Criteria criteria) throws ODataException {
+        return new CriteriaCompiler<>(ACCESSORS).compile(criteria);
+    }
+
+    private static String filter(Predicate<Sample> predicate) {
+        return SAMPLES.stream().filter(predicate).map(Sample::getName).collect(Collectors.joining(","));
+    }
+
+    private static CriteriaValue p(String name) {
+        return new PropertyCriteriaValue(name);
+    }
+
+    private static CriteriaValue l(Object value) {
+        return new LiteralCriteriaValue(value);
+    }
+
+    public static class Sample {
+        @EdmProperty(name = "name")
+        private String name;
+
+        @EdmProperty(name = "age")
+        private int age;
+
+        @EdmProperty(name = "total")
+        private long total;
+
+        @EdmProperty(name = "score")
+        private double score;
+
+        @EdmProperty(name = "rank")
+        private Integer rank;
+
+        public Sample(String name, int age, long total, double score, Integer rank) {
+            this.name = name;
+            this.age = age;
+            this.total = total;
+            this.score = score;
+            this.rank = rank;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getAge() {
+            return age;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public Integer getRank() {
+            return rank;
+        }
+    }
+}
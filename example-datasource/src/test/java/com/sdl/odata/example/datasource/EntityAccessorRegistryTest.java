@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.edm.annotations.EdmProperty;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EntityAccessorRegistryTest {
+
+    private final EntityAccessorRegistry registry = new EntityAccessorRegistry();
+
+    @Test
+    public void readsThroughPublicGettersOfANonPublicEntity() throws ODataException {
+        EntityAccessors<Duck> accessors = registry.getAccessors(Duck.class);
+        Duck duck = new Duck("donald", 34, true);
+
+        //The getter upper cases the name, so reading the field directly would be noticed
+        assertEquals("DONALD", accessors.getAccessor("name").get(duck));
+        PropertyAccessor<Duck> age = accessors.getAccessor("age");
+        assertTrue(age.isInt());
+        assertEquals(34, age.getInt(duck));
+        assertEquals(true, accessors.getAccessor("Swims").get(duck));
+    }
+
+    @Test
+    public void readsFieldsWithoutGetter() throws ODataException {
+        EntityAccessors<Duck> accessors = registry.getAccessors(Duck.class);
+        assertEquals("Duckburg", accessors.getAccessor("town").get(new Duck("daisy", 31, false)));
+    }
+
+    static class Duck {
+        @EdmProperty(name = "name")
+        private final String name;
+
+        @EdmProperty(name = "age")
+        private final int age;
+
+        @EdmProperty(name = "Swims")
+        private final boolean swims;
+
+        @EdmProperty(name = "town")
+        private final String town = "Duckburg";
+
+        Duck(String name, int age, boolean swims) {
+            this.name = name;
+            this.age = age;
+            this.swims = swims;
+        }
+
+        public String getName() {
+            return name.toUpperCase();
+        }
+
+        public int getAge() {
+            return age;
+        }
+
+        public boolean isSwims() {
+            return swims;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+
+public class EntityAggregatesTest {
+
+    private final ConcurrentMap<Integer, Long> contents = new ConcurrentHashMap<>();
+
+    @Test
+    public void fillsAnAggregateRegisteredWhileChangesAreApplied() throws Exception {
+        EntityAggregates<Long> aggregates = new EntityAggregates<>(() -> contents.values().stream());
+        assertConsistentUnderChanges(aggregates, () -> aggregates.register("value", new NumericAggregate<>(v -> v)));
+    }
+
+    @Test
+    public void fillsLazyAggregatesReadWhileChangesAreApplied() throws Exception {
+        EntityAggregates<Long> aggregates = EntityAggregates.lazy(() -> contents.values().stream());
+        aggregates.register("value", new NumericAggregate<>(v -> v));
+        assertConsistentUnderChanges(aggregates, () -> aggregates.getAggregate("value", NumericAggregate.class));
+    }
+
+    private void assertConsistentUnderChanges(EntityAggregates<Long> aggregates, Runnable exclusive)
+            throws Exception {
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicBoolean running = new AtomicBoolean(true);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int thread = i;
+                writers.add(executor.submit(() -> {
+                    for (long n = 0; running.get() || n < 1000; n++) {
+                        int key = thread * 100 + (int) (n % 100);
+                        long value = n % 7;
+                        aggregates.maintain(() -> {
+                            aggregates.replace(contents.put(key, value), value);
+                            return null;
+                        });
+                    }
+                    return null;
+                }));
+            }
+            Thread.sleep(20);
+            exclusive.run();
+            running.set(false);
+            for (Future<?> writer : writers) {
+                writer.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        NumericAggregate<?> aggregate = aggregates.getAggregate("value", NumericAggregate.class);
+        assertEquals(contents.size(), aggregate.getCount());
+        assertEquals(contents.values().stream().mapToLong(Long::longValue).sum(), aggregate.getSum());
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataBadRequestException;
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.example.AggregateGroup;
+import com.sdl.odata.example.Person;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class GroupAggregatorTest {
+
+    private static final List<Person> PERSONS = Arrays.asList(
+            new Person("donald", "Donald", "Duck", 34),
+            new Person("daisy", "Daisy", "Duck", 31),
+            new Person("donald2", "Donald", "Duck", 40),
+            new Person("scrooge", "Scrooge", "McDuck", 83),
+            new Person("gladstone", "Gladstone", "Gander", 34));
+
+    private final EntityAccessors<Person> accessors = new EntityAccessorRegistry().getAccessors(Person.class);
+
+    @Test
+    public void aggregatesPerGroupOrderedByGroupValue() throws ODataException {
+        assertEquals(Arrays.asList(
+                "[Duck] count=3.0 total=105.0 youngest=31.0 oldest=40.0 averageAge=35.0",
+                "[Gander] count=1.0 total=34.0 youngest=34.0 oldest=34.0 averageAge=34.0",
+                "[McDuck] count=1.0 total=83.0 youngest=83.0 oldest=83.0 averageAge=83.0"),
+                aggregate("groupby((lastName),aggregate($count as count,age with sum as total,"
+                        + "age with min as youngest,age with max as oldest,age with average as averageAge))",
+                        PERSONS.stream()));
+    }
+
+    @Test
+    public void groupsByMultipleProperties() throws ODataException {
+        assertEquals(Arrays.asList("[Daisy, Duck]", "[Donald, Duck]", "[Gladstone, Gander]", "[Scrooge, McDuck]"),
+                aggregate("groupby((firstName,lastName))", PERSONS.stream()));
+    }
+
+    @Test
+    public void countsDistinctValues() throws ODataException {
+        assertEquals(Arrays.asList("[] firstNames=4.0 ages=4.0"),
+                aggregate("aggregate(firstName with countdistinct as firstNames,age with countdistinct as ages)",
+                        PERSONS.stream()));
+        assertEquals(Arrays.asList("[Duck] firstNames=2.0", "[Gander] firstNames=1.0", "[McDuck] firstNames=1.0"),
+                aggregate("groupby((lastName),aggregate(firstName with countdistinct as firstNames))",
+                        PERSONS.stream()));
+    }
+
+    @Test
+    public void aggregatesNoPersonsToOneRowWithoutGrouping() throws ODataException {
+        assertEquals(Arrays.asList("[] count=0.0 firstNames=0.0 total=0.0 oldest=null averageAge=null"),
+                aggregate("aggregate($count as count,firstName with countdistinct as firstNames,"
+                        + "age with sum as total,age with max as oldest,age with average as averageAge)",
+                        Stream.empty()));
+        assertEquals(new ArrayList<String>(),
+                aggregate("groupby((lastName),aggregate($count as count))", Stream.empty()));
+    }
+
+    @Test
+    public void mergesParallelPartitions() throws ODataException {
+        List<Person> persons = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            persons.add(new Person("p" + i, "First" + (i % 100), "Last" + (i % 3), i % 50));
+        }
+        String apply = "groupby((lastName),aggregate($count as count,firstName with countdistinct as firstNames,"
+                + "age with sum as total,age with min as youngest,age with max as oldest))";
+        assertEquals(aggregate(apply, persons.stream()), aggregate(apply, persons.parallelStream()));
+    }
+
+    @Test(expected = ODataBadRequestException.class)
+    public void rejectsNumericAggregatesOverTextProperties() throws ODataException {
+        aggregate("aggregate(lastName with sum as total)", PERSONS.stream());
+    }
+
+    private List<String> aggregate(String apply, Stream<Person> persons) throws ODataException {
+        return new GroupAggregator<>(accessors, Aggregation.parse(apply)).aggregate(persons).stream()
+                .map(GroupAggregatorTest::toString).collect(Collectors.toList());
+    }
+
+    private static String toString(AggregateGroup group) {
+        return group.getGroup() + group.getValues().stream()
+                .map(value -> " " + value.getName() + "=" + value.getValue()).collect(Collectors.joining());
+    }
+}
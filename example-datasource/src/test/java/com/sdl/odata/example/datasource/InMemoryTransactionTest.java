@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.edm.model.NavigationProperty;
+import com.sdl.odata.api.processor.datasource.TransactionalDataSource;
+import com.sdl.odata.api.processor.link.ODataLink;
+import com.sdl.odata.example.Person;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryTransactionTest {
+
+    private InMemoryDataSource dataSource;
+
+    @Before
+    public void setUp() throws ODataException {
+        dataSource = new InMemoryDataSource(new EntityAccessorRegistry(), ParallelScanExecutor.sequential(),
+                WriteAheadLog.disabled(), QueryMetrics.disabled(), ChangeJournal.disabled());
+        dataSource.createAll(Arrays.asList(
+                new Person("donald", "Donald", "Duck", 34),
+                new Person("scrooge", "Scrooge", "McDuck", 83)));
+    }
+
+    @Test
+    public void failsTheSecondOfTwoConflictingCommits() throws ODataException {
+        TransactionalDataSource first = dataSource.startTransaction();
+        TransactionalDataSource second = dataSource.startTransaction();
+        first.update(null, new Person("donald", "Donald", "Duck", 35), null);
+        second.update(null, new Person("donald", "Donald", "Duck", 36), null);
+        second.create(null, new Person("daisy", "Daisy", "Duck", 31), null);
+
+        assertTrue(first.commit());
+        assertFalse(second.commit());
+
+        assertEquals(35, dataSource.getPersonConcurrentMap().get("donald").getAge());
+        assertNull(dataSource.getPersonConcurrentMap().get("daisy"));
+        assertEquals(0, dataSource.getVersionedKeyCount());
+    }
+
+    @Test
+    public void commitsOneOfConcurrentlyCommittingConflictingTransactions() throws Exception {
+        int threads = 8;
+        int rounds = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CyclicBarrier staged = new CyclicBarrier(threads);
+        try {
+            List<Future<Integer>> commits = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int age = 100 + i;
+                commits.add(executor.submit(() -> {
+                    int committed = 0;
+                    for (int round = 0; round < rounds; round++) {
+                        TransactionalDataSource transaction = dataSource.startTransaction();
+                        transaction.update(null, new Person("donald", "Donald", "Duck", age), null);
+                        staged.await(30, TimeUnit.SECONDS);
+                        if (transaction.commit()) {
+                            committed++;
+                        }
+                        staged.await(30, TimeUnit.SECONDS);
+                    }
+                    return committed;
+                }));
+            }
+            int committed = 0;
+            for (Future<Integer> commit : commits) {
+                committed += commit.get(60, TimeUnit.SECONDS);
+            }
+            assertEquals(rounds, committed);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, dataSource.getVersionedKeyCount());
+    }
+
+    @Test
+    public void releasesReadKeysOnRollback() throws ODataException {
+        TransactionalDataSource transaction = dataSource.startTransaction();
+        transaction.update(null, new Person("donald", "Donald", "Duck", 35), null);
+        transaction.create(null, new Person("daisy", "Daisy", "Duck", 31), null);
+        transaction.createLink(null, link(PersonLinks.MANAGER, "donald", "scrooge"), null);
+        assertEquals(3, dataSource.getVersionedKeyCount());
+
+        transaction.rollback();
+
+        assertFalse(transaction.isActive());
+        assertEquals(0, dataSource.getVersionedKeyCount());
+        assertEquals(34, dataSource.getPersonConcurrentMap().get("donald").getAge());
+        assertNull(dataSource.getPersonConcurrentMap().get("daisy"));
+        assertNull(dataSource.getLinks().getManager("donald"));
+    }
+
+    @Test
+    public void commitsALinkToAPersonCreatedInTheSameChangeset() throws ODataException {
+        TransactionalDataSource transaction = dataSource.startTransaction();
+        transaction.create(null, new Person("huey", "Huey", "Duck", 8), null);
+        transaction.createLink(null, link(PersonLinks.MANAGER, "huey", "donald"), null);
+        assertNull(dataSource.getLinks().getManager("huey"));
+
+        assertTrue(transaction.commit());
+
+        assertEquals("Huey", dataSource.getPersonConcurrentMap().get("huey").getFirstName());
+        assertEquals("donald", dataSource.getLinks().getManager("huey"));
+        assertEquals(0, dataSource.getVersionedKeyCount());
+    }
+
+    @Test
+    public void appliesNeitherPersonNorLinkIfTheLinkedPersonChanged() throws ODataException {
+        TransactionalDataSource transaction = dataSource.startTransaction();
+        transaction.create(null, new Person("huey", "Huey", "Duck", 8), null);
+        transaction.createLink(null, link(PersonLinks.REPORTS, "donald", "huey"), null);
+        dataSource.update(null, new Person("donald", "Donald", "Duck", 35), null);
+
+        assertFalse(transaction.commit());
+
+        assertNull(dataSource.getPersonConcurrentMap().get("huey"));
+        assertNull(dataSource.getLinks().getManager("huey"));
+        assertEquals(0, dataSource.getVersionedKeyCount());
+    }
+
+    private static ODataLink link(String propertyName, String from, String to) {
+        NavigationProperty property = (NavigationProperty) Proxy.newProxyInstance(
+                NavigationProperty.class.getClassLoader(), new Class<?>[]{NavigationProperty.class},
+                (proxy, method, args) -> "getName".equals(method.getName()) ? propertyName : null);
+        return new ODataLink(null, property, key(from), key(to));
+    }
+
+    private static scala.collection.immutable.Map<String, Object> key(String key) {
+        return new scala.collection.immutable.Map.Map1<>(StrategyBuilder.KEY_PROPERTY, key);
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.processor.datasource.ODataDataSourceException;
+import com.sdl.odata.example.Person;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class JsonPersonLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+    private InMemoryDataSource dataSource;
+
+    @Before
+    public void setUp() {
+        dataSource = new InMemoryDataSource(new EntityAccessorRegistry(), ParallelScanExecutor.sequential(),
+                WriteAheadLog.disabled(), QueryMetrics.disabled(), ChangeJournal.disabled()) {
+            @Override
+            public int createAll(Collection<Person> persons) throws ODataException {
+                batches.add(persons.size());
+                return super.createAll(persons);
+            }
+        };
+    }
+
+    @Test
+    public void insertsNewlineDelimitedFilesInChunks() throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            lines.add(String.format("{\"id\":\"p%02d\",\"firstName\":\"First%d\",\"lastName\":\"Last\",\"age\":%d}",
+                    i, i, i + 20));
+        }
+        Files.write(folder.newFile("persons.ndjson").toPath(), lines, StandardCharsets.UTF_8);
+
+        assertEquals(25, loader(4).load(dataSource));
+        assertEquals(25, dataSource.size());
+        Collections.sort(batches);
+        assertEquals(Arrays.asList(1, 4, 4, 4, 4, 4, 4), batches);
+
+        Person person = dataSource.getPersonConcurrentMap().get("p07");
+        assertEquals("First7", person.getFirstName());
+        assertEquals(27, person.getAge());
+    }
+
+    @Test
+    public void skipsPersonsWhoseKeyAlreadyExists() throws Exception {
+        dataSource.createAll(Collections.singletonList(new Person("donald", "Donald", "Duck", 34)));
+        Files.write(folder.newFile("ducks.ndjson").toPath(), Arrays.asList(
+                "{\"id\":\"donald\",\"firstName\":\"Impostor\",\"lastName\":\"Duck\",\"age\":1}",
+                "{\"id\":\"daisy\",\"firstName\":\"Daisy\",\"lastName\":\"Duck\",\"age\":31}",
+                "{\"id\":\"daisy\",\"firstName\":\"Impostor\",\"lastName\":\"Duck\",\"age\":1}"),
+                StandardCharsets.UTF_8);
+        //A pretty printed file is parsed as a whole
+        Files.write(folder.newFile("more.json").toPath(), Arrays.asList(
+                "{",
+                "  \"id\": \"donald\",",
+                "  \"firstName\": \"Impostor\"",
+                "}",
+                "{",
+                "  \"id\": \"scrooge\",",
+                "  \"firstName\": \"Scrooge\",",
+                "  \"lastName\": \"McDuck\",",
+                "  \"age\": 83",
+                "}"), StandardCharsets.UTF_8);
+
+        //Both files are loaded at the same time, the duplicates within a chunk keep the first person
+        assertEquals(2, loader(10).load(dataSource));
+        assertEquals(3, dataSource.size());
+        assertEquals("Donald", dataSource.getPersonConcurrentMap().get("donald").getFirstName());
+        assertEquals("Daisy", dataSource.getPersonConcurrentMap().get("daisy").getFirstName());
+        assertEquals("McDuck", dataSource.getPersonConcurrentMap().get("scrooge").getLastName());
+    }
+
+    @Test(expected = ODataDataSourceException.class)
+    public void rejectsPersonsWithoutKey() throws Exception {
+        Files.write(folder.newFile("persons.ndjson").toPath(),
+                Collections.singletonList("{\"firstName\":\"Donald\",\"lastName\":\"Duck\",\"age\":34}"),
+                StandardCharsets.UTF_8);
+        loader(10).load(dataSource);
+    }
+
+    private JsonPersonLoader loader(int batchSize) throws IOException {
+        return new JsonPersonLoader(folder.getRoot().getAbsolutePath(), batchSize, 2);
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class KeyVersionsTest {
+
+    private final KeyVersions keyVersions = new KeyVersions();
+    private final Map<String, String> values = new HashMap<>();
+
+    @Test
+    public void writesMayUseOtherKeys() throws Exception {
+        values.put("c", "written");
+        String result = keyVersions.withLock("a", () -> keyVersions.withLock("b", () -> {
+            KeyVersions.Versioned<String> snapshot = keyVersions.read("c", values::get);
+            keyVersions.release(snapshot);
+            return snapshot.getValue();
+        }));
+
+        assertEquals("written", result);
+        assertEquals(0, keyVersions.size());
+    }
+
+    @Test
+    public void removesSlotsOnceUnused() {
+        keyVersions.withLock("a", () -> values.put("a", "created"));
+        keyVersions.withLock("a", () -> values.remove("a"));
+        assertEquals(0, keyVersions.size());
+
+        KeyVersions.Versioned<String> snapshot = keyVersions.read("a", values::get);
+        assertNull(snapshot.getValue());
+        assertEquals(1, keyVersions.size());
+        keyVersions.release(snapshot);
+        assertEquals(0, keyVersions.size());
+    }
+
+    @Test
+    public void detectsWritesToPinnedKeys() {
+        KeyVersions.Versioned<String> snapshot = keyVersions.read("a", values::get);
+        keyVersions.withLock("a", () -> values.put("a", "created"));
+        keyVersions.withLock("a", () -> values.remove("a"));
+
+        assertFalse(KeyVersions.tryLock(snapshot));
+        keyVersions.release(snapshot);
+    }
+
+    @Test
+    public void locksUnchangedKeysWithoutWaiting() {
+        KeyVersions.Versioned<String> snapshot = keyVersions.read("a", values::get);
+        assertTrue(KeyVersions.tryLock(snapshot));
+        KeyVersions.unlock(snapshot, true);
+
+        assertFalse(KeyVersions.tryLock(snapshot));
+        keyVersions.release(snapshot);
+        assertEquals(0, keyVersions.size());
+    }
+}
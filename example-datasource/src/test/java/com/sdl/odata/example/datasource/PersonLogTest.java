@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.example.Person;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PersonLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsManagersAcrossReopenAndCompaction() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("persons.log");
+        try (PersonLog log = new PersonLog(path)) {
+            log.insert(new Person("donald", "Donald", "Duck", 34));
+            log.insert(new Person("daisy", "Daisy", "Duck", 31));
+            log.insert(new Person("scrooge", "Scrooge", "McDuck", 83));
+            log.setManager("donald", "scrooge");
+            log.setManager("daisy", "donald");
+            log.setManager("daisy", "scrooge");
+            log.setManager("donald", null);
+        }
+
+        try (PersonLog log = new PersonLog(path)) {
+            assertEquals(Collections.singletonMap("daisy", "scrooge"), log.getManagers());
+            log.compact();
+        }
+
+        try (PersonLog log = new PersonLog(path)) {
+            assertEquals(Collections.singletonMap("daisy", "scrooge"), log.getManagers());
+            assertEquals(3, log.size());
+            assertEquals(0, log.getGarbageBytes());
+        }
+    }
+
+    @Test
+    public void logsNothingToRemoveAnAbsentManager() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("persons.log");
+        try (PersonLog log = new PersonLog(path)) {
+            log.insert(new Person("donald", "Donald", "Duck", 34));
+            log.setManager("donald", null);
+            assertEquals(0, log.getGarbageBytes());
+
+            log.setManager("donald", "scrooge");
+            log.setManager("donald", null);
+        }
+
+        try (PersonLog log = new PersonLog(path)) {
+            assertTrue(log.getManagers().isEmpty());
+            assertTrue(log.contains("donald"));
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.processor.query.Ascending$;
+import com.sdl.odata.api.processor.query.Criteria;
+import com.sdl.odata.api.processor.query.CriteriaFilterOperation;
+import com.sdl.odata.api.processor.query.Descending$;
+import com.sdl.odata.api.processor.query.LimitOperation;
+import com.sdl.odata.api.processor.query.LiteralCriteriaValue;
+import com.sdl.odata.api.processor.query.OrderByDirection;
+import com.sdl.odata.api.processor.query.OrderByOperation;
+import com.sdl.odata.api.processor.query.OrderByProperty;
+import com.sdl.odata.api.processor.query.PropertyCriteriaValue;
+import com.sdl.odata.api.processor.query.QueryOperation;
+import com.sdl.odata.api.processor.query.SelectByKeyOperation;
+import com.sdl.odata.api.processor.query.SelectOperation;
+import com.sdl.odata.api.processor.query.SkipOperation;
+import com.sdl.odata.example.Person;
+import org.junit.Before;
+import org.junit.Test;
+import scala.collection.JavaConverters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QueryExecutorTest {
+
+    private static final int SIZE = 1000;
+
+    private final EntityAccessorRegistry registry = new EntityAccessorRegistry();
+    private final QueryPlanCache planCache = new QueryPlanCache(registry, true, 16);
+    private final QueryMetrics metrics = new QueryMetrics(true);
+    private InMemoryDataSource dataSource;
+
+    @Before
+    public void setUp() throws ODataException {
+        dataSource = new InMemoryDataSource(registry, ParallelScanExecutor.sequential(), WriteAheadLog.disabled(),
+                metrics, ChangeJournal.disabled());
+        List<Person> persons = new ArrayList<>();
+        for (int i = 0; i < SIZE; i++) {
+            //ages are unique and not in key order
+            persons.add(new Person(String.format("p%04d", i), "First" + i, "Last" + (i % 10), (i * 7) % SIZE));
+        }
+        dataSource.createAll(persons);
+        metrics.reset();
+    }
+
+    @Test
+    public void countsOnlyThePersonsPulledFromTheOrderIndex() throws ODataException {
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), ages(query(page(orderBy(all(), "age"), 0, 5))));
+        assertEquals(1, metrics.getCount("access.index-order"));
+        assertEquals(5, metrics.getCount("rows.candidates"));
+
+        metrics.reset();
+        assertEquals(Arrays.asList(10, 11, 12), ages(query(page(orderBy(all(), "age"), 10, 3))));
+        assertEquals(13, metrics.getCount("rows.candidates"));
+    }
+
+    @Test
+    public void readsTheSameOrderFromTheIndexAsFromAFullSort() throws ODataException {
+        Comparator<Person> byAge = Comparator.comparing(Person::getAge);
+        assertEquals(sorted(byAge, 20, 30), query(page(orderBy(all(), "age"), 20, 30)));
+        assertEquals(sorted(byAge.reversed(), 20, 30), query(page(orderBy(all(), "age", Descending$.MODULE$), 20, 30)));
+        assertEquals(2, metrics.getCount("access.index-order"));
+        assertEquals(0, metrics.getCount("access.scan"));
+    }
+
+    @Test
+    public void selectsTheTopPersonsWithoutAnOrderIndex() throws ODataException {
+        //Last names repeat, so equal persons are ordered by key
+        Comparator<Person> byLastName = Comparator.comparing(Person::getLastName).thenComparing(Person::getPersonId);
+        assertEquals(sorted(byLastName, 95, 10), query(page(orderBy(all(), "lastName"), 95, 10)));
+        assertEquals(0, metrics.getCount("access.index-order"));
+        assertEquals(1, metrics.getCount("access.scan"));
+
+        Comparator<Person> byLastNameDescending = Comparator.comparing(Person::getLastName).reversed()
+                .thenComparing(Person::getPersonId);
+        assertEquals(sorted(byLastNameDescending, 0, SIZE),
+                query(orderBy(all(), "lastName", Descending$.MODULE$)));
+    }
+
+    @Test
+    public void resolvesKeyLookupsWithoutScanning() throws ODataException {
+        assertEquals(Arrays.asList("p0042"), keys(query(byKey("p0042"))));
+        assertEquals(1, metrics.getCount("access.key"));
+        assertEquals(0, metrics.getCount("access.scan"));
+        assertEquals(1, metrics.getCount("rows.candidates"));
+
+        metrics.reset();
+        assertEquals(Collections.emptyList(), query(byKey("p9999")));
+        assertEquals(Collections.emptyList(), query(byKey("P0042")));
+        assertEquals(2, metrics.getCount("access.key"));
+        assertEquals(0, metrics.getCount("rows.candidates"));
+    }
+
+    @Test
+    public void filtersTheLookedUpPerson() throws ODataException {
+        assertEquals(Arrays.asList("p0042"), keys(query(filter(byKey("p0042"), lastName().eq(literal("Last2"))))));
+        assertEquals(Collections.emptyList(), query(filter(byKey("p0042"), lastName().eq(literal("Last3")))));
+        assertEquals(2, metrics.getCount("access.key"));
+        assertEquals(0, metrics.getCount("access.scan"));
+    }
+
+    @Test
+    public void stopsScanningOnceThePageIsFull() throws ODataException {
+        long[] pulled = new long[1];
+        QueryExecutor executor = countingExecutor(pulled);
+
+        //Every tenth person has last name Last3, so the page ends with the fifteenth match, p0143
+        StrategyBuilder builder = planCache.plan(page(filter(all(), lastName().eq(literal("Last3"))), 5, 10), false);
+        List<Person> page = executor.page(builder, builder.getPagePredicate());
+        assertEquals(10, page.size());
+        assertTrue(page.stream().allMatch(person -> person.getLastName().equals("Last3")));
+        assertEquals(144, pulled[0]);
+    }
+
+    @Test
+    public void countsAllMatchesRegardlessOfThePage() throws ODataException {
+        long[] pulled = new long[1];
+        QueryExecutor executor = countingExecutor(pulled);
+
+        StrategyBuilder builder = planCache.plan(page(filter(all(), lastName().eq(literal("Last3"))), 5, 10), true);
+        assertEquals(SIZE / 10, executor.count(builder, builder.getPredicate()));
+        assertEquals(SIZE, pulled[0]);
+        assertEquals(SIZE / 10, dataSource.count(builder));
+        assertEquals(10, dataSource.query(builder).size());
+    }
+
+    /**
+     * An executor over the persons of the data source without secondary indexes, counting the persons it scans.
+     */
+    private QueryExecutor countingExecutor(long[] pulled) {
+        Map<String, Person> persons = dataSource.getPersonConcurrentMap();
+        return new QueryExecutor(persons::get, () -> persons.values().stream().sorted(Comparator.comparing(
+                Person::getPersonId)).peek(person -> pulled[0]++), dataSource::size,
+                new EntityIndexes<>(Person::getPersonId, Collections.emptyList()), ParallelScanExecutor.sequential(),
+                metrics);
+    }
+
+    private List<Person> sorted(Comparator<Person> order, int skip, int limit) {
+        return dataSource.getPersonConcurrentMap().values().stream().sorted(order).skip(skip).limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private List<Person> query(QueryOperation operation) throws ODataException {
+        return dataSource.query(planCache.plan(operation, false));
+    }
+
+    private static List<Integer> ages(List<Person> persons) {
+        return persons.stream().map(Person::getAge).collect(Collectors.toList());
+    }
+
+    private static List<String> keys(List<Person> persons) {
+        return persons.stream().map(Person::getPersonId).collect(Collectors.toList());
+    }
+
+    private static QueryOperation all() {
+        return new SelectOperation("Persons", false);
+    }
+
+    private static QueryOperation byKey(String key) {
+        return new SelectByKeyOperation(all(),
+                new scala.collection.immutable.Map.Map1<>(StrategyBuilder.KEY_PROPERTY, key));
+    }
+
+    private static QueryOperation filter(QueryOperation source, Criteria criteria) {
+        return new CriteriaFilterOperation(source, criteria);
+    }
+
+    private static QueryOperation orderBy(QueryOperation source, String propertyName) {
+        return orderBy(source, propertyName, Ascending$.MODULE$);
+    }
+
+    private static QueryOperation orderBy(QueryOperation source, String propertyName, OrderByDirection direction) {
+        List<OrderByProperty> properties = Arrays.asList(new OrderByProperty(propertyName, direction));
+        return new OrderByOperation(source, JavaConverters.asScalaBufferConverter(properties).asScala().toList());
+    }
+
+    private static QueryOperation page(QueryOperation source, int skip, int limit) {
+        return new LimitOperation(skip == 0 ? source : new SkipOperation(source, skip), limit);
+    }
+
+    private static PropertyCriteriaValue lastName() {
+        return new PropertyCriteriaValue("lastName");
+    }
+
+    private static LiteralCriteriaValue literal(Object value) {
+        return new LiteralCriteriaValue(value);
+    }
+}
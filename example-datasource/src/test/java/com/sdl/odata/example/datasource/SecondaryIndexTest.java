@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.example.Person;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class SecondaryIndexTest {
+
+    private final EntityAccessors<Person> accessors = new EntityAccessorRegistry().getAccessors(Person.class);
+
+    @Test
+    public void tracksKeysAsTheyAreAddedAndRemoved() throws ODataException {
+        SortedIndex<Person> index = new SortedIndex<>(accessors.getAccessor("lastName"));
+        Person donald = new Person("donald", "Donald", "Duck", 34);
+        Person daisy = new Person("daisy", "Daisy", "Duck", 31);
+        index.add(donald, "donald");
+        assertEquals(Collections.singleton("donald"), index.lookup("Duck"));
+        assertEquals(1, index.count("Duck"));
+
+        index.add(daisy, "daisy");
+        assertEquals(new HashSet<>(Arrays.asList("donald", "daisy")), index.lookup("Duck"));
+        assertEquals(2, index.count("Duck"));
+        assertEquals(2, index.count(index.range("Duck", true, "Duck", true), Long.MAX_VALUE));
+
+        index.remove(donald, "donald");
+        assertEquals(Collections.singleton("daisy"), index.lookup("Duck"));
+        assertEquals(1, index.count("Duck"));
+        assertEquals("daisy", SortedIndex.keys(index.range(null, false, null, false)).collect(Collectors.joining(",")));
+
+        index.remove(daisy, "daisy");
+        assertEquals(Collections.emptySet(), index.lookup("Duck"));
+        assertEquals(0, index.count("Duck"));
+        assertEquals(0, index.count(index.range(null, false, null, false), Long.MAX_VALUE));
+    }
+
+    @Test
+    public void countsAndStreamsRanges() throws ODataException {
+        SortedIndex<Person> index = new SortedIndex<>(accessors.getAccessor("age"));
+        index.add(new Person("donald", "Donald", "Duck", 34), "donald");
+        index.add(new Person("daisy", "Daisy", "Duck", 31), "daisy");
+        index.add(new Person("gladstone", "Gladstone", "Gander", 34), "gladstone");
+        index.add(new Person("scrooge", "Scrooge", "McDuck", 83), "scrooge");
+
+        assertEquals(3, index.count(index.range(31, false, null, false), Long.MAX_VALUE));
+        assertEquals("daisy,donald,gladstone", SortedIndex.keys(index.range(null, false, 34, true)).sorted()
+                .collect(Collectors.joining(",")));
+    }
+
+    @Test
+    public void keepsReplacedEntityIndexedUntilRemoved() throws ODataException {
+        HashIndex<Person> index = new HashIndex<>(accessors.getAccessor("lastName"));
+        Person donald = new Person("donald", "Donald", "Duck", 34);
+        Person renamed = new Person("donald", "Donald", "Gander", 34);
+        index.add(donald, "donald");
+
+        index.add(renamed, "donald");
+        assertEquals(1, index.count("Duck"));
+        assertEquals(1, index.count("Gander"));
+
+        index.removeReplaced(donald, renamed, "donald");
+        assertEquals(0, index.count("Duck"));
+        assertEquals(1, index.count("Gander"));
+
+        index.removeReplaced(renamed, renamed, "donald");
+        assertEquals(1, index.count("Gander"));
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.processor.query.QueryOperation;
+import com.sdl.odata.api.processor.query.QueryResult;
+import com.sdl.odata.api.processor.query.SelectByKeyOperation;
+import com.sdl.odata.api.processor.query.SelectOperation;
+import com.sdl.odata.api.processor.query.SelectPropertiesOperation;
+import com.sdl.odata.example.Person;
+import org.junit.Before;
+import org.junit.Test;
+import scala.collection.JavaConverters;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SelectPropertiesTest {
+
+    private final EntityAccessorRegistry registry = new EntityAccessorRegistry();
+    private final QueryPlanCache planCache = new QueryPlanCache(registry, true, 16);
+    private InMemoryDataSource dataSource;
+
+    @Before
+    public void setUp() throws ODataException {
+        dataSource = new InMemoryDataSource(registry, ParallelScanExecutor.sequential(), WriteAheadLog.disabled(),
+                QueryMetrics.disabled(), ChangeJournal.disabled());
+        dataSource.createAll(Arrays.asList(
+                new Person("donald", "Donald", "Duck", 34),
+                new Person("scrooge", "Scrooge", "McDuck", 83)));
+    }
+
+    @Test
+    public void returnsTheValueOfASinglePropertyOfAPerson() throws ODataException {
+        assertEquals(83, execute(select(byKey("scrooge"), "age")).getData());
+        assertEquals("McDuck", execute(select(byKey("scrooge"), "lastName")).getData());
+    }
+
+    @Test
+    public void returnsNoValueForAPropertyOfAMissingPerson() throws ODataException {
+        assertEquals(Collections.emptyList(), execute(select(byKey("daisy"), "age")).getData());
+    }
+
+    @Test
+    public void returnsWholePersonsForSelectedPropertiesOfACollection() throws ODataException {
+        List<?> persons = (List<?>) execute(select(new SelectOperation("Persons", false), "firstName", "age"))
+                .getData();
+
+        assertEquals(2, persons.size());
+        for (Object person : persons) {
+            Person expected = dataSource.getPersonConcurrentMap().get(((Person) person).getPersonId());
+            assertEquals(expected.getFirstName(), ((Person) person).getFirstName());
+            assertEquals(expected.getLastName(), ((Person) person).getLastName());
+            assertEquals(expected.getAge(), ((Person) person).getAge());
+        }
+    }
+
+    @Test
+    public void returnsAnEmptyCollectionForSelectedPropertiesOfNoPersons() throws ODataException {
+        dataSource.getPersonConcurrentMap().clear();
+        assertEquals(Collections.emptyList(), execute(select(new SelectOperation("Persons", false), "age"))
+                .getData());
+    }
+
+    @Test
+    public void returnsTheWholePersonForSelectedPropertiesOfAPerson() throws ODataException {
+        List<?> persons = (List<?>) execute(select(byKey("donald"), "firstName", "age")).getData();
+
+        assertEquals(1, persons.size());
+        assertEquals("Duck", ((Person) persons.get(0)).getLastName());
+        assertEquals(34, ((Person) persons.get(0)).getAge());
+    }
+
+    private QueryResult execute(QueryOperation operation) throws ODataException {
+        return InMemoryDataSourceProvider.execute(planCache.plan(operation, false), dataSource,
+                QueryMetrics.disabled());
+    }
+
+    private static QueryOperation byKey(String key) {
+        return new SelectByKeyOperation(new SelectOperation("Persons", true),
+                new scala.collection.immutable.Map.Map1<>(StrategyBuilder.KEY_PROPERTY, key));
+    }
+
+    private static QueryOperation select(QueryOperation source, String... propertyNames) {
+        return new SelectPropertiesOperation(source,
+                JavaConverters.asScalaBufferConverter(Arrays.asList(propertyNames)).asScala().toList());
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.ODataBadRequestException;
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.processor.query.OrderByProperty;
+import com.sdl.odata.example.Person;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SkipTokenTest {
+
+    private static final List<OrderByProperty> BY_LAST_NAME_AND_AGE = Arrays.asList(
+            OrderByProperty.asc("lastName"), OrderByProperty.desc("age"));
+
+    private final EntityAccessors<Person> accessors = new EntityAccessorRegistry().getAccessors(Person.class);
+    private final Person donald = new Person("donald", "Donald", "Duck", 34);
+
+    @Test
+    public void decodesTheEncodedPosition() throws ODataException {
+        String token = token(donald, BY_LAST_NAME_AND_AGE);
+        SkipToken decoded = SkipToken.decode(token, accessors, BY_LAST_NAME_AND_AGE);
+        assertEquals("Duck", decoded.getFirstValue());
+        assertEquals("donald", decoded.getKey());
+        assertEquals(token, decoded.encode());
+    }
+
+    @Test
+    public void continuesAfterThePosition() throws ODataException {
+        Predicate<Person> after = SkipToken.decode(token(donald, BY_LAST_NAME_AND_AGE), accessors,
+                BY_LAST_NAME_AND_AGE).after(accessors, BY_LAST_NAME_AND_AGE, Person::getPersonId);
+
+        assertFalse(after.test(donald));
+        assertFalse(after.test(new Person("daisy", "Daisy", "Duck", 35)));
+        assertFalse(after.test(new Person("ann", "Ann", "Duck", 34)));
+        assertTrue(after.test(new Person("emil", "Emil", "Duck", 34)));
+        assertTrue(after.test(new Person("dewey", "Dewey", "Duck", 12)));
+        assertTrue(after.test(new Person("scrooge", "Scrooge", "McDuck", 83)));
+        assertFalse(after.test(new Person("cooter", "Cooter", "Coot", 30)));
+    }
+
+    @Test
+    public void keepsNullValuesInThePosition() throws ODataException {
+        String token = token(new Person("nobody", null, null, 0), BY_LAST_NAME_AND_AGE);
+        assertEquals(null, SkipToken.decode(token, accessors, BY_LAST_NAME_AND_AGE).getFirstValue());
+    }
+
+    @Test
+    public void rejectsTokensOfAnotherOrder() throws ODataException {
+        String token = token(donald, BY_LAST_NAME_AND_AGE);
+        assertRejected(token, Arrays.asList(OrderByProperty.asc("lastName"), OrderByProperty.asc("age")));
+        assertRejected(token, Arrays.asList(OrderByProperty.asc("lastName")));
+        assertRejected(token(donald, Arrays.asList(OrderByProperty.asc("lastName"))), BY_LAST_NAME_AND_AGE);
+    }
+
+    @Test
+    public void rejectsTamperedTokens() throws ODataException {
+        byte[] bytes = Base64.getUrlDecoder().decode(token(donald, BY_LAST_NAME_AND_AGE));
+
+        assertRejected("not a token!", BY_LAST_NAME_AND_AGE);
+        assertRejected(encode(Arrays.copyOf(bytes, bytes.length - 1)), BY_LAST_NAME_AND_AGE);
+        assertRejected(encode(Arrays.copyOf(bytes, bytes.length + 1)), BY_LAST_NAME_AND_AGE);
+
+        //The first value is tagged as a string, claim an int for it instead
+        byte[] retyped = bytes.clone();
+        int tag = indexOf(retyped, (byte) 's', "lastName asc,age desc".length() + 3);
+        retyped[tag] = 'i';
+        assertRejected(encode(retyped), BY_LAST_NAME_AND_AGE);
+
+        byte[] unknownType = bytes.clone();
+        unknownType[tag] = 'x';
+        assertRejected(encode(unknownType), BY_LAST_NAME_AND_AGE);
+    }
+
+    @Test
+    public void rejectsValuesOfAnotherTypeThanTheProperty() throws ODataException {
+        //A token positioned on age with a string value, as if handed out by a query ordered by lastName
+        List<OrderByProperty> byAge = Arrays.asList(OrderByProperty.asc("age"));
+        byte[] bytes = Base64.getUrlDecoder().decode(token(donald, Arrays.asList(OrderByProperty.asc("lastName"))));
+        byte[] order = "age asc".getBytes(StandardCharsets.UTF_8);
+        byte[] moved = new byte[bytes.length - "lastName asc".length() + order.length];
+        moved[1] = (byte) order.length;
+        System.arraycopy(order, 0, moved, 2, order.length);
+        System.arraycopy(bytes, 2 + "lastName asc".length(), moved, 2 + order.length,
+                bytes.length - 2 - "lastName asc".length());
+        assertRejected(encode(moved), byAge);
+    }
+
+    private String token(Person person, List<OrderByProperty> orderByProperties) throws ODataException {
+        return SkipToken.of(person, accessors, orderByProperties, Person::getPersonId).encode();
+    }
+
+    private void assertRejected(String token, List<OrderByProperty> orderByProperties) throws ODataException {
+        try {
+            SkipToken.decode(token, accessors, orderByProperties);
+            fail("Token should have been rejected: " + token);
+        } catch (ODataBadRequestException e) {
+            //expected
+        }
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No " + (char) value + " in token");
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class TopKTest {
+
+    private static final Comparator<Integer> ORDER = Comparator.naturalOrder();
+
+    @Test
+    public void selectsTheSameElementsAsAFullSort() {
+        List<Integer> values = randomValues(10_000, 500);
+        for (int k : new int[]{1, 10, 499, 10_000, 20_000}) {
+            List<Integer> expected = values.stream().sorted(ORDER).limit(k).collect(Collectors.toList());
+            assertEquals(expected, values.stream().collect(TopK.collector(ORDER, k)));
+            assertEquals(expected, values.parallelStream().collect(TopK.collector(ORDER, k)));
+        }
+    }
+
+    @Test
+    public void followsTheGivenOrder() {
+        List<Integer> values = randomValues(1_000, 1_000_000);
+        List<Integer> expected = values.stream().sorted(ORDER.reversed()).limit(25).collect(Collectors.toList());
+        assertEquals(expected, values.stream().collect(TopK.collector(ORDER.reversed(), 25)));
+    }
+
+    @Test
+    public void selectsNothingForAnEmptyStreamOrZeroElements() {
+        assertEquals(Collections.emptyList(), new ArrayList<Integer>().stream().collect(TopK.collector(ORDER, 10)));
+        assertEquals(Collections.emptyList(), randomValues(100, 10).stream().collect(TopK.collector(ORDER, 0)));
+    }
+
+    private static List<Integer> randomValues(int size, int bound) {
+        Random random = new Random(42);
+        List<Integer> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(random.nextInt(bound));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,330 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.datasource;
+
+import com.sdl.odata.api.processor.datasource.ODataDataSourceException;
+import com.sdl.odata.example.Person;
+import com.sdl.odata.example.PersonChange;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class WriteAheadLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<FailingChannel> channels = new ArrayList<>();
+    private final List<String> replayed = new ArrayList<>();
+    private WriteAheadLog log;
+
+    @After
+    public void tearDown() throws Exception {
+        if (log != null) {
+            log.destroy();
+        }
+    }
+
+    @Test
+    public void replaysCommittedRecords() throws Exception {
+        open();
+        log.await(log.logPut(person("donald")));
+        log.await(log.logPut(person("daisy")));
+        log.await(log.logDelete("donald"));
+        log.await(log.logChanges(Collections.singletonList(person("scrooge")), Collections.singletonList("daisy")));
+
+        assertEquals("put donald,put daisy,delete donald,put scrooge,delete daisy", reopen());
+    }
+
+    @Test
+    public void replaysManagers() throws Exception {
+        open();
+        log.await(log.logManager("donald", "scrooge"));
+        log.await(log.logManager("donald", null));
+
+        assertEquals("manager donald scrooge,manager donald null", reopen());
+    }
+
+    @Test
+    public void writesManagersToSnapshots() throws Exception {
+        open();
+        log.await(log.logPut(person("donald")));
+        log.snapshot(() -> Arrays.asList(person("donald"), person("scrooge")),
+                () -> Collections.singletonMap("donald", "scrooge"));
+
+        assertEquals("put donald,put scrooge,manager donald scrooge", reopen());
+    }
+
+    @Test
+    public void truncatesTornTail() throws Exception {
+        open();
+        log.await(log.logPut(person("donald")));
+        log.await(log.logPut(person("daisy")));
+        log.destroy();
+
+        Path file = logFile();
+        long size = Files.size(file);
+        byte[] torn = PersonRecords.frame(PersonRecords.encodePut(person("scrooge")));
+        Files.write(file, Arrays.copyOf(torn, torn.length / 2), StandardOpenOption.APPEND);
+
+        assertEquals("put donald,put daisy", reopen());
+        assertEquals(size, Files.size(file));
+    }
+
+    @Test
+    public void discardsRecordWithCorruptChecksum() throws Exception {
+        open();
+        log.await(log.logPut(person("donald")));
+        log.await(log.logPut(person("daisy")));
+        log.destroy();
+
+        Path file = logFile();
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file, bytes);
+
+        assertEquals("put donald", reopen());
+    }
+
+    @Test
+    public void rejectsRecordLengthBeyondTheFile() throws Exception {
+        open();
+        log.await(log.logPut(person("donald")));
+        log.destroy();
+
+        Files.write(logFile(), ByteBuffer.allocate(PersonRecords.HEADER_SIZE).putInt(Integer.MAX_VALUE - 8).array(),
+                StandardOpenOption.APPEND);
+
+        assertEquals("put donald", reopen());
+    }
+
+    @Test
+    public void keepsCommitsAfterFailedBatch() throws Exception {
+        open();
+        log.await(log.logPut(person("donald")));
+        channels.get(0).failWrites = true;
+        try {
+            log.await(log.logPut(person("daisy")));
+            fail("Expected the commit to fail");
+        } catch (ODataDataSourceException e) {
+            channels.get(0).failWrites = false;
+        }
+        log.await(log.logPut(person("scrooge")));
+
+        assertEquals("put donald,put scrooge", reopen());
+    }
+
+    @Test
+    public void failsPermanentlyWhenFailedBatchCannotBeCutOff() throws Exception {
+        open();
+        log.await(log.logPut(person("donald")));
+        channels.get(0).failWrites = true;
+        channels.get(0).failTruncates = true;
+        try {
+            log.await(log.logPut(person("daisy")));
+            fail("Expected the commit to fail");
+        } catch (ODataDataSourceException e) {
+            channels.get(0).failWrites = false;
+        }
+        try {
+            log.await(log.logPut(person("scrooge")));
+            fail("Expected the log to have failed");
+        } catch (ODataDataSourceException e) {
+            assertEquals(1, log.getMetrics().getFailedCommits());
+        }
+    }
+
+    @Test
+    public void failedCommitIsNotVisible() throws Exception {
+        open();
+        ChangeJournal changeJournal = new ChangeJournal(true, 100, 100);
+        InMemoryDataSource dataSource = new InMemoryDataSource(new EntityAccessorRegistry(),
+                ParallelScanExecutor.sequential(), log, QueryMetrics.disabled(), changeJournal);
+        String deltaToken = changeJournal.changesSince("").getDeltaToken();
+        dataSource.create(null, person("donald"), null);
+
+        channels.get(0).failWrites = true;
+        try {
+            dataSource.create(null, person("daisy"), null);
+            fail("Expected the create to fail");
+        } catch (ODataDataSourceException e) {
+            assertFalse(dataSource.getPersonConcurrentMap().containsKey("daisy"));
+            assertEquals(1, dataSource.getVersion());
+            assertEquals(Collections.singletonList("donald"), changeJournal.changesSince(deltaToken).getChanges()
+                    .stream().map(PersonChange::getPersonId).collect(Collectors.toList()));
+        }
+    }
+
+    private void open() {
+        log = new WriteAheadLog(true, folder.getRoot().getPath(), 1024, 0, 3600, channel -> {
+            FailingChannel failing = new FailingChannel(channel);
+            channels.add(failing);
+            return failing;
+        });
+        log.open(person -> replayed.add("put " + person.getPersonId()), key -> replayed.add("delete " + key),
+                (key, manager) -> replayed.add("manager " + key + " " + manager), Collections::emptyList,
+                Collections::emptyMap);
+    }
+
+    private String reopen() throws Exception {
+        log.destroy();
+        replayed.clear();
+        open();
+        return replayed.stream().collect(Collectors.joining(","));
+    }
+
+    private Path logFile() throws IOException {
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            return files.filter(file -> file.getFileName().toString().startsWith("wal-")).sorted()
+                    .reduce((first, second) -> second).get();
+        }
+    }
+
+    private static Person person(String id) {
+        return new Person(id, id, "Duck", 30);
+    }
+
+    /**
+     * A file channel that can tear its writes in half and fail to truncate, like a full or failing disk.
+     */
+    private static final class FailingChannel extends FileChannel {
+        private final FileChannel delegate;
+        private volatile boolean failWrites;
+        private volatile boolean failTruncates;
+
+        private FailingChannel(FileChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            if (failWrites) {
+                ByteBuffer half = srcs[offset].duplicate();
+                half.limit(half.position() + half.remaining() / 2);
+                delegate.write(half);
+                throw new IOException("No space left on device");
+            }
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return (int) write(new ByteBuffer[] {src}, 0, 1);
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            if (failTruncates) {
+                throw new IOException("Input/output error");
+            }
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+}
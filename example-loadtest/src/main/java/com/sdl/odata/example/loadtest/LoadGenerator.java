@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the requests of a mix to the service, either in a closed loop where every client thread sends its next
+ * request when the previous one completed, or in an open loop where requests are started at a fixed rate. In the
+ * open loop the latency of a request is measured from the moment it was scheduled to start, so requests queued up
+ * behind a slow response are not left out of the measurement.
+ */
+public final class LoadGenerator implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(LoadGenerator.class);
+    private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+
+    private final String baseUrl;
+    private final RequestMix mix;
+    private final SyntheticDataSet dataSet;
+    private final LoadTestOptions options;
+    private final CloseableHttpClient client;
+
+    public LoadGenerator(String baseUrl, RequestMix mix, SyntheticDataSet dataSet, LoadTestOptions options) {
+        this.baseUrl = baseUrl;
+        this.mix = mix;
+        this.dataSet = dataSet;
+        this.options = options;
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(options.getThreads());
+        connectionManager.setDefaultMaxPerRoute(options.getThreads());
+        this.client = HttpClients.custom().setConnectionManager(connectionManager).build();
+    }
+
+    /**
+     * Generates load for the given number of seconds, printing a progress line every second.
+     */
+    public LoadReport run(String phase, int seconds, PrintStream progress) throws InterruptedException {
+        LoadReport report = new LoadReport();
+        ExecutorService clients = Executors.newFixedThreadPool(options.getThreads());
+        report.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        Thread dispatcher = null;
+        if (options.getMode() == LoadTestOptions.Mode.CLOSED) {
+            for (int i = 0; i < options.getThreads(); i++) {
+                clients.execute(() -> {
+                    while (System.nanoTime() < deadline) {
+                        send(System.nanoTime(), report);
+                    }
+                });
+            }
+        } else {
+            dispatcher = new Thread(() -> dispatch(clients, deadline, report), "load-dispatcher");
+            dispatcher.start();
+        }
+
+        long started = System.nanoTime();
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(Math.min(PROGRESS_INTERVAL_MILLIS,
+                    Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()))));
+            Histogram interval = report.interval();
+            double elapsed = (System.nanoTime() - started) / (double) TimeUnit.SECONDS.toNanos(1);
+            progress.printf("%-8s %6.1fs %s%n", phase, elapsed,
+                    LoadReport.summary(interval, PROGRESS_INTERVAL_MILLIS / 1000.0));
+        }
+
+        if (dispatcher != null) {
+            dispatcher.join();
+        }
+        //Requests still queued in the open loop were scheduled before the deadline and count towards the phase
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.MINUTES);
+        report.stop();
+        return report;
+    }
+
+    private void dispatch(ExecutorService clients, long deadline, LoadReport report) {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, options.getRate());
+        long next = System.nanoTime();
+        while (next < deadline) {
+            long intendedStart = next;
+            for (long wait = intendedStart - System.nanoTime(); wait > 0; wait = intendedStart - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            clients.execute(() -> send(intendedStart, report));
+            next += intervalNanos;
+        }
+    }
+
+    private void send(long intendedStart, LoadReport report) {
+        RequestTemplate template = mix.next();
+        HttpRequestBase request = template.create(baseUrl, dataSet);
+        try (CloseableHttpResponse response = client.execute(request)) {
+            EntityUtils.consume(response.getEntity());
+            report.record(template, response.getStatusLine().getStatusCode(), System.nanoTime() - intendedStart);
+        } catch (IOException e) {
+            LOG.debug("Request {} to {} failed", template, request.getURI(), e);
+            report.recordError(template, System.nanoTime() - intendedStart);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the latencies and outcomes of the requests of one load test phase. Latencies are recorded from all client
+ * threads into an HdrHistogram recorder in nanoseconds, the report takes an interval histogram out of it for every
+ * progress line and adds it to the histogram of the whole phase.
+ */
+public final class LoadReport {
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final String ERROR = "error";
+
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final Histogram total = new Histogram(SIGNIFICANT_DIGITS);
+    private final ConcurrentMap<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final LongAdder failures = new LongAdder();
+    private long startNanos;
+    private long endNanos;
+
+    public void start() {
+        startNanos = System.nanoTime();
+    }
+
+    public void stop() {
+        endNanos = System.nanoTime();
+        total.add(recorder.getIntervalHistogram());
+    }
+
+    public void record(RequestTemplate template, int status, long latencyNanos) {
+        recorder.recordValue(latencyNanos);
+        outcomes.computeIfAbsent(template.getName() + " " + status, outcome -> new LongAdder()).increment();
+        if (status >= 400) {
+            failures.increment();
+        }
+    }
+
+    public void recordError(RequestTemplate template, long latencyNanos) {
+        recorder.recordValue(latencyNanos);
+        outcomes.computeIfAbsent(template.getName() + " " + ERROR, outcome -> new LongAdder()).increment();
+        failures.increment();
+    }
+
+    /**
+     * Takes the latencies recorded since the previous interval, to be called from a single thread only.
+     */
+    public Histogram interval() {
+        Histogram interval = recorder.getIntervalHistogram();
+        total.add(interval);
+        return interval;
+    }
+
+    public Histogram getHistogram() {
+        return total;
+    }
+
+    public double getSeconds() {
+        return (endNanos - startNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    public static String summary(Histogram histogram, double seconds) {
+        return String.format("%,10d requests %,10.1f req/s   p50 %8.2f ms   p99 %8.2f ms   p99.9 %8.2f ms   max %8.2f ms",
+                histogram.getTotalCount(), histogram.getTotalCount() / seconds,
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+                millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue()));
+    }
+
+    public void print(PrintStream out) {
+        out.println();
+        out.println("Total:    " + summary(total, getSeconds()));
+        out.printf("Failures: %,d%n", failures.sum());
+        out.println();
+        out.println("Responses per request:");
+        for (Map.Entry<String, LongAdder> outcome : new TreeMap<>(outcomes).entrySet()) {
+            out.printf("  %-40s %,12d%n", outcome.getKey(), outcome.getValue().sum());
+        }
+        out.println();
+        out.println("Latency distribution (ms):");
+        total.outputPercentileDistribution(out, NANOS_PER_MILLI);
+    }
+
+    /**
+     * Writes the percentile distribution of the phase in milliseconds, in the format of the HdrHistogram plotter,
+     * so the latencies of different builds can be plotted against each other.
+     */
+    public void write(Path file) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, "UTF-8")) {
+            total.outputPercentileDistribution(out, NANOS_PER_MILLI);
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.loadtest;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.example.datasource.InMemoryDataSourceProvider;
+import com.sdl.odata.example.service.ServiceContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * End-to-end load test of the example service. Starts the service container on a random local port, seeds it with
+ * synthetic persons and replays a mix of OData requests against it through the full HTTP stack, reporting throughput
+ * and the latency distribution of the measured phase. See {@link LoadTestOptions} for the available options, for
+ * example:
+ *
+ * <pre>
+ * java -jar example-loadtest.jar --mode=open --rate=2000 --threads=64 --duration=120 --output=build-a.hgrm
+ * </pre>
+ */
+public final class LoadTest {
+    private static final Logger LOG = LoggerFactory.getLogger(LoadTest.class);
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        if (options.getSize() <= 0) {
+            throw new IllegalArgumentException("The data set needs at least one person, got size: " + options.getSize());
+        }
+        RequestMix mix = RequestMix.load(options.getMix());
+        SyntheticDataSet dataSet = new SyntheticDataSet(options.getSize());
+
+        ConfigurableApplicationContext context = startService(dataSet);
+        String baseUrl = "http://localhost:"
+                + ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+        try (LoadGenerator generator = new LoadGenerator(baseUrl, mix, dataSet, options)) {
+            System.out.println("Load test against " + baseUrl + " with " + options + ", requests: " + mix.getTemplates());
+            if (options.getWarmupSeconds() > 0) {
+                generator.run("warmup", options.getWarmupSeconds(), System.out);
+            }
+
+            LoadReport report = generator.run("measure", options.getDurationSeconds(), System.out);
+            report.print(System.out);
+            if (!options.getOutput().isEmpty()) {
+                report.write(Paths.get(options.getOutput()));
+                System.out.println("Latency distribution written to " + options.getOutput());
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    private static ConfigurableApplicationContext startService(SyntheticDataSet dataSet) throws ODataException {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", "0");
+        //Request logging would dominate the measured latencies
+        properties.put("logging.level.com.sdl.odata", "WARN");
+
+        SpringApplication application = new SpringApplication(ServiceContainer.class);
+        application.setShowBanner(false);
+        application.setDefaultProperties(properties);
+        ConfigurableApplicationContext context = application.run();
+
+        LOG.info("Seeding {} synthetic persons", dataSet.getSize());
+        dataSet.seed(context.getBean(InMemoryDataSourceProvider.class).getPersonDataSource());
+        return context;
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The options of a load test run, parsed from '--name=value' command line arguments. Every option has a default, so
+ * the load test runs without any arguments.
+ */
+public final class LoadTestOptions {
+    public enum Mode {
+        /**
+         * Every client thread sends its next request as soon as the previous one completed.
+         */
+        CLOSED,
+        /**
+         * Requests are started at a fixed rate regardless of how fast the service responds, and their latency is
+         * measured from the moment they should have started.
+         */
+        OPEN
+    }
+
+    private final Map<String, String> values;
+
+    private LoadTestOptions(Map<String, String> values) {
+        this.values = values;
+    }
+
+    public static LoadTestOptions parse(String... args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected an option of the form --name=value, got: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return new LoadTestOptions(values);
+    }
+
+    /**
+     * The classpath resource or file with the request mix to replay.
+     */
+    public String getMix() {
+        return values.getOrDefault("mix", "mixes/default.mix");
+    }
+
+    public Mode getMode() {
+        return Mode.valueOf(values.getOrDefault("mode", "closed").toUpperCase());
+    }
+
+    /**
+     * The number of client threads, which is also the number of connections to the service.
+     */
+    public int getThreads() {
+        return Integer.parseInt(values.getOrDefault("threads", "16"));
+    }
+
+    /**
+     * The number of requests started per second in open loop mode.
+     */
+    public int getRate() {
+        return Integer.parseInt(values.getOrDefault("rate", "1000"));
+    }
+
+    public int getWarmupSeconds() {
+        return Integer.parseInt(values.getOrDefault("warmup", "10"));
+    }
+
+    public int getDurationSeconds() {
+        return Integer.parseInt(values.getOrDefault("duration", "60"));
+    }
+
+    /**
+     * The number of synthetic persons seeded into the data source before the test starts.
+     */
+    public int getSize() {
+        return Integer.parseInt(values.getOrDefault("size", "100000"));
+    }
+
+    /**
+     * The file to write the recorded latency histogram to, empty to only print the report.
+     */
+    public String getOutput() {
+        return values.getOrDefault("output", "");
+    }
+
+    @Override
+    public String toString() {
+        return "mode=" + getMode() + ", threads=" + getThreads() + (getMode() == Mode.OPEN ? ", rate=" + getRate() : "")
+                + ", warmup=" + getWarmupSeconds() + "s, duration=" + getDurationSeconds() + "s, size=" + getSize()
+                + ", mix=" + getMix();
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A weighted mix of request templates. A mix is read from a classpath resource or a file with one request per line:
+ *
+ * <pre>
+ * # name      weight  method  path                                    [body]
+ * read-key    50      GET     /example.svc/Persons('{key}')
+ * create      5       POST    /example.svc/Persons                    @create-person.json
+ * </pre>
+ *
+ * A body is either given inline as the rest of the line or, prefixed with '@', read from a resource or file next to
+ * the mix. Empty lines and lines starting with '#' are ignored.
+ */
+public final class RequestMix {
+    private static final int NAME = 0;
+    private static final int WEIGHT = 1;
+    private static final int METHOD = 2;
+    private static final int PATH = 3;
+    private static final int BODY = 4;
+
+    private final List<RequestTemplate> templates;
+    private final int[] cumulativeWeights;
+
+    private RequestMix(List<RequestTemplate> templates, List<Integer> weights) {
+        this.templates = Collections.unmodifiableList(templates);
+        this.cumulativeWeights = new int[weights.size()];
+        int total = 0;
+        for (int i = 0; i < weights.size(); i++) {
+            total += weights.get(i);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    public static RequestMix load(String location) throws IOException {
+        String base = location.contains("/") ? location.substring(0, location.lastIndexOf('/') + 1) : "";
+        List<RequestTemplate> templates = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+
+        for (String line : read(location).split("\n")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] fields = line.split("\\s+", BODY + 1);
+            if (fields.length <= PATH) {
+                throw new IllegalArgumentException("Expected 'name weight method path [body]' in mix line: " + line);
+            }
+            String body = fields.length > BODY ? fields[BODY] : null;
+            if (body != null && body.startsWith("@")) {
+                body = read(base + body.substring(1));
+            }
+
+            int weight = Integer.parseInt(fields[WEIGHT]);
+            if (weight > 0) {
+                templates.add(new RequestTemplate(fields[NAME], fields[METHOD], fields[PATH], body));
+                weights.add(weight);
+            }
+        }
+
+        if (templates.isEmpty()) {
+            throw new IllegalArgumentException("Request mix has no requests with a positive weight: " + location);
+        }
+        return new RequestMix(templates, weights);
+    }
+
+    private static String read(String location) throws IOException {
+        try (InputStream resource = RequestMix.class.getClassLoader().getResourceAsStream(location)) {
+            if (resource != null) {
+                return toString(resource);
+            }
+        }
+
+        Path file = Paths.get(location);
+        if (!Files.isRegularFile(file)) {
+            throw new IOException("No classpath resource or file found: " + location);
+        }
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private static String toString(InputStream in) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            content.write(buffer, 0, read);
+        }
+        return new String(content.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    public List<RequestTemplate> getTemplates() {
+        return templates;
+    }
+
+    /**
+     * Picks a random request template, in proportion to the weights of the mix.
+     */
+    public RequestTemplate next() {
+        int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return templates.get(i);
+            }
+        }
+        return templates.get(templates.size() - 1);
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.loadtest;
+
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.StringEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A request of a mix, of which the path and body are templates filled from the synthetic data set for every
+ * request that is sent.
+ */
+public final class RequestTemplate {
+    private static final String BATCH_BOUNDARY_PREFIX = "--";
+
+    private final String name;
+    private final String method;
+    private final String path;
+    private final String body;
+    private final String contentType;
+
+    public RequestTemplate(String name, String method, String path, String body) {
+        this.name = name;
+        this.method = method.toUpperCase();
+        this.path = path;
+        if (body != null && body.startsWith(BATCH_BOUNDARY_PREFIX)) {
+            //A body that starts with a multipart boundary is sent as a batch request, its lines must end in CRLF
+            int end = body.indexOf('\n');
+            String boundary = body.substring(BATCH_BOUNDARY_PREFIX.length(), end < 0 ? body.length() : end).trim();
+            this.body = body.replace("\r\n", "\n").replace("\n", "\r\n");
+            this.contentType = "multipart/mixed; boundary=" + boundary;
+        } else {
+            this.body = body;
+            this.contentType = "application/json";
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public HttpRequestBase create(String baseUrl, SyntheticDataSet dataSet) {
+        Map<String, String> bound = new HashMap<>();
+        String uri = baseUrl + dataSet.expand(path, bound);
+        switch (method) {
+            case "GET":
+                return new HttpGet(uri);
+            case "DELETE":
+                return new HttpDelete(uri);
+            case "POST":
+                return withBody(new HttpPost(uri), dataSet, bound);
+            case "PUT":
+                return withBody(new HttpPut(uri), dataSet, bound);
+            case "PATCH":
+                return withBody(new HttpPatch(uri), dataSet, bound);
+            default:
+                throw new IllegalArgumentException("Unsupported request method: " + method);
+        }
+    }
+
+    private HttpRequestBase withBody(HttpEntityEnclosingRequestBase request, SyntheticDataSet dataSet,
+                                     Map<String, String> bound) {
+        if (body != null) {
+            StringEntity entity = new StringEntity(dataSet.expand(body, bound), StandardCharsets.UTF_8);
+            entity.setContentType(contentType);
+            request.setEntity(entity);
+        }
+        return request;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.loadtest;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.example.Person;
+import com.sdl.odata.example.datasource.PersonDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The synthetic persons a load test runs against. Every person is derived from its index only, so request templates
+ * can be filled with existing keys and property values without querying the service.
+ *
+ * The placeholders a template can use are '{key}' for the key of a random existing person, '{newKey}' for a key
+ * that has not been used yet, '{lastName}' and '{age}' for random existing property values and '{skip}' for a
+ * random offset within the data set. A placeholder that is used more than once in the same request has the same value
+ * everywhere in it, a numeric suffix binds an independent value, for example '{key1}' and '{key2}'.
+ */
+public final class SyntheticDataSet {
+    private static final int LAST_NAMES = 1000;
+    private static final int AGES = 100;
+    private static final int LOAD_BATCH_SIZE = 100000;
+    private static final String[] FIRST_NAMES = {
+            "Darkwing", "Mickey", "Minnie", "Donald", "Daisy", "Scrooge", "Huey", "Dewey", "Louie", "Goofy"
+    };
+
+    private final int size;
+    private final AtomicInteger nextKey;
+
+    public SyntheticDataSet(int size) {
+        this.size = size;
+        this.nextKey = new AtomicInteger(size);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void seed(PersonDataSource dataSource) throws ODataException {
+        for (int from = 0; from < size; from += LOAD_BATCH_SIZE) {
+            int count = Math.min(LOAD_BATCH_SIZE, size - from);
+            List<Person> persons = new ArrayList<>(count);
+            for (int i = from; i < from + count; i++) {
+                persons.add(new Person(key(i), FIRST_NAMES[i % FIRST_NAMES.length], lastName(i), i % AGES));
+            }
+            dataSource.createAll(persons);
+        }
+    }
+
+    /**
+     * Replaces the placeholders in the given template with random values from the data set, reusing the values
+     * already bound to placeholders of the same request.
+     */
+    public String expand(String template, Map<String, String> bound) {
+        if (template.indexOf('{') < 0) {
+            return template;
+        }
+
+        StringBuilder expanded = new StringBuilder(template.length() + 16);
+        int position = 0;
+        while (position < template.length()) {
+            int start = template.indexOf('{', position);
+            int end = start < 0 ? -1 : template.indexOf('}', start);
+            if (end < 0) {
+                expanded.append(template, position, template.length());
+                break;
+            }
+
+            expanded.append(template, position, start);
+            String value = bound.computeIfAbsent(template.substring(start + 1, end), this::value);
+            if (value != null) {
+                expanded.append(value);
+                position = end + 1;
+            } else {
+                //Not a placeholder, for example the braces of a JSON body
+                expanded.append('{');
+                position = start + 1;
+            }
+        }
+        return expanded.toString();
+    }
+
+    private String value(String placeholder) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int suffix = placeholder.length();
+        while (suffix > 0 && Character.isDigit(placeholder.charAt(suffix - 1))) {
+            suffix--;
+        }
+        switch (placeholder.substring(0, suffix)) {
+            case "key":
+                return key(random.nextInt(size));
+            case "newKey":
+                return key(nextKey.getAndIncrement());
+            case "lastName":
+                return lastName(random.nextInt(LAST_NAMES));
+            case "age":
+                return String.valueOf(random.nextInt(AGES));
+            case "skip":
+                return String.valueOf(random.nextInt(size));
+            default:
+                return null;
+        }
+    }
+
+    private static String key(int index) {
+        return "person-" + index;
+    }
+
+    private static String lastName(int index) {
+        return "Lastname" + (index % LAST_NAMES);
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example;
+
+import com.sdl.odata.api.edm.annotations.EdmComplex;
+import com.sdl.odata.api.edm.annotations.EdmProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One row of an aggregation: the values of the grouping properties, in the order they were grouped by, and the
+ * aggregated values of the group.
+ */
+@EdmComplex(namespace = "SDL.OData.Example")
+public class AggregateGroup {
+
+    @EdmProperty(name = "group", nullable = false)
+    private List<String> group = new ArrayList<>();
+
+    @EdmProperty(name = "values", nullable = false)
+    private List<AggregateValue> values = new ArrayList<>();
+
+    public AggregateGroup(List<String> group, List<AggregateValue> values) {
+        this.group = group;
+        this.values = values;
+    }
+
+    public AggregateGroup() {
+    }
+
+    public List<String> getGroup() {
+        return group;
+    }
+
+    public void setGroup(List<String> group) {
+        this.group = group;
+    }
+
+    public List<AggregateValue> getValues() {
+        return values;
+    }
+
+    public void setValues(List<AggregateValue> values) {
+        this.values = values;
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example;
+
+import com.sdl.odata.api.edm.annotations.EdmComplex;
+import com.sdl.odata.api.edm.annotations.EdmProperty;
+
+/**
+ * An aggregated value of a group, by the alias it was requested under. The value is null for the minimum,
+ * maximum and average of a group without values.
+ */
+@EdmComplex(namespace = "SDL.OData.Example")
+public class AggregateValue {
+
+    @EdmProperty(name = "name", nullable = false)
+    private String name;
+
+    @EdmProperty(name = "value")
+    private Double value;
+
+    public AggregateValue(String name, Double value) {
+        this.name = name;
+        this.value = value;
+    }
+
+    public AggregateValue() {
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Double getValue() {
+        return value;
+    }
+
+    public void setValue(Double value) {
+        this.value = value;
+    }
+}
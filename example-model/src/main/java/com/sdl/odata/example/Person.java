@@ -17,8 +17,11 @@ package com.sdl.odata.example;
 
 import com.sdl.odata.api.edm.annotations.EdmEntity;
 import com.sdl.odata.api.edm.annotations.EdmEntitySet;
+import com.sdl.odata.api.edm.annotations.EdmNavigationProperty;
 import com.sdl.odata.api.edm.annotations.EdmProperty;
 
+import java.util.List;
+
 /**
  * @author rdevries
  */
@@ -26,18 +29,33 @@ import com.sdl.odata.api.edm.annotations.EdmProperty;
 @EdmEntitySet
 public class Person {
 
+    @Indexed(Indexed.Type.SORTED)
     @EdmProperty(name = "id", nullable = false)
     private String personId;
 
+    @Indexed
     @EdmProperty(name = "firstName", nullable = false)
     private String firstName;
 
+    @Indexed
     @EdmProperty(name = "lastName", nullable = false)
     private String lastName;
 
+    @Indexed(Indexed.Type.SORTED)
     @EdmProperty(name = "age", nullable = false)
     private int age;
 
+    /*
+     * The navigation properties are only filled on the copies of persons returned for an $expand, the links
+     * themselves are stored by the data source.
+     */
+
+    @EdmNavigationProperty(name = "manager", nullable = true, partner = "reports")
+    private Person manager;
+
+    @EdmNavigationProperty(name = "reports", partner = "manager")
+    private List<Person> reports;
+
     public Person(String personId, String firstName, String lastName, int age) {
         this.personId = personId;
         this.firstName = firstName;
@@ -79,4 +97,20 @@ public class Person {
     public void setAge(int age) {
         this.age = age;
     }
+
+    public Person getManager() {
+        return manager;
+    }
+
+    public void setManager(Person manager) {
+        this.manager = manager;
+    }
+
+    public List<Person> getReports() {
+        return reports;
+    }
+
+    public void setReports(List<Person> reports) {
+        this.reports = reports;
+    }
 }
@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example;
+
+import com.sdl.odata.api.edm.annotations.EdmComplex;
+import com.sdl.odata.api.edm.annotations.EdmProperty;
+
+/**
+ * The latest change to one person: either its state after it was created or updated, or its deletion. The
+ * properties of the person are null for a deletion.
+ */
+@EdmComplex(namespace = "SDL.OData.Example")
+public class PersonChange {
+    public static final String CHANGED = "changed";
+    public static final String DELETED = "deleted";
+
+    @EdmProperty(name = "sequence", nullable = false)
+    private long sequence;
+
+    @EdmProperty(name = "id", nullable = false)
+    private String personId;
+
+    @EdmProperty(name = "operation", nullable = false)
+    private String operation;
+
+    @EdmProperty(name = "firstName")
+    private String firstName;
+
+    @EdmProperty(name = "lastName")
+    private String lastName;
+
+    @EdmProperty(name = "age")
+    private Integer age;
+
+    public PersonChange(long sequence, String personId, Person person) {
+        this.sequence = sequence;
+        this.personId = personId;
+        this.operation = person != null ? CHANGED : DELETED;
+        if (person != null) {
+            this.firstName = person.getFirstName();
+            this.lastName = person.getLastName();
+            this.age = person.getAge();
+        }
+    }
+
+    public PersonChange() {
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public String getPersonId() {
+        return personId;
+    }
+
+    public void setPersonId(String personId) {
+        this.personId = personId;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+
+    public Integer getAge() {
+        return age;
+    }
+
+    public void setAge(Integer age) {
+        this.age = age;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example;
+
+import com.sdl.odata.api.edm.annotations.EdmComplex;
+import com.sdl.odata.api.edm.annotations.EdmProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page of the changes to persons since a delta token, in the order they were made, and the delta token to ask
+ * for the changes after them with. More changes may be waiting if the page is full.
+ */
+@EdmComplex(namespace = "SDL.OData.Example")
+public class PersonChanges {
+
+    @EdmProperty(name = "deltaToken", nullable = false)
+    private String deltaToken;
+
+    @EdmProperty(name = "hasMore", nullable = false)
+    private boolean hasMore;
+
+    @EdmProperty(name = "changes", nullable = false)
+    private List<PersonChange> changes = new ArrayList<>();
+
+    public PersonChanges(String deltaToken, boolean hasMore, List<PersonChange> changes) {
+        this.deltaToken = deltaToken;
+        this.hasMore = hasMore;
+        this.changes = changes;
+    }
+
+    public PersonChanges() {
+    }
+
+    public String getDeltaToken() {
+        return deltaToken;
+    }
+
+    public void setDeltaToken(String deltaToken) {
+        this.deltaToken = deltaToken;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+
+    public List<PersonChange> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<PersonChange> changes) {
+        this.changes = changes;
+    }
+}
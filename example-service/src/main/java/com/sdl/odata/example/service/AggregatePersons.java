@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.service;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.edm.annotations.EdmFunction;
+import com.sdl.odata.api.edm.annotations.EdmParameter;
+import com.sdl.odata.api.edm.annotations.EdmReturnType;
+import com.sdl.odata.api.edm.model.Operation;
+import com.sdl.odata.api.processor.datasource.factory.DataSourceFactory;
+import com.sdl.odata.api.service.ODataRequestContext;
+import com.sdl.odata.example.AggregateGroup;
+import com.sdl.odata.example.datasource.Aggregation;
+import com.sdl.odata.example.datasource.PersonDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Groups and aggregates persons on the server, so only the aggregated rows are returned. The framework has no
+ * $apply support, the transformation is passed as a parameter instead:
+ * <pre>
+ *     /Persons/SDL.OData.Example.Aggregate(apply='groupby((lastName),aggregate(age with average as averageAge))')
+ * </pre>
+ */
+@EdmFunction(name = "Aggregate", namespace = "SDL.OData.Example", isBound = true)
+@EdmReturnType(type = "Collection(SDL.OData.Example.AggregateGroup)")
+public class AggregatePersons implements Operation<List<AggregateGroup>> {
+    private static final Logger LOG = LoggerFactory.getLogger(AggregatePersons.class);
+
+    @EdmParameter(name = "apply", nullable = false)
+    private String apply;
+
+    @Override
+    public List<AggregateGroup> doOperation(ODataRequestContext oDataRequestContext, DataSourceFactory dataSourceFactory) throws ODataException {
+        LOG.debug("Executing function 'Aggregate' with: {}", apply);
+
+        PersonDataSource dataSource = (PersonDataSource) dataSourceFactory.getDataSource(oDataRequestContext, "SDL.OData.Example.Person");
+        List<AggregateGroup> groups = dataSource.aggregate(Aggregation.parse(apply));
+        LOG.debug("Aggregated into {} groups", groups.size());
+
+        return groups;
+    }
+}
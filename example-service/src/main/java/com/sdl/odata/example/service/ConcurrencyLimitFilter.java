@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.service;
+
+import com.sdl.odata.example.datasource.QueryMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of OData requests that are handled at the same time, so that a burst of requests cannot occupy
+ * every thread of the servlet container. A request that finds the limit reached waits at most the queue timeout for
+ * another request to finish and is otherwise rejected right away with '503 Service Unavailable' and a Retry-After
+ * header, which keeps the latency of the admitted requests stable instead of queueing everything behind them.
+ *
+ * Batch requests carry many operations each, they have a separate and lower limit on top of the overall one.
+ */
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrencyLimitFilter.class);
+    private static final String BATCH_SUFFIX = "/$batch";
+
+    private final int maxInFlight;
+    private final int maxBatchesInFlight;
+    private final Semaphore requests;
+    private final Semaphore batches;
+    private final long queueTimeoutMillis;
+    private final int retryAfterSeconds;
+    private final QueryMetrics queryMetrics;
+
+    public ConcurrencyLimitFilter(int maxInFlight, int maxBatchesInFlight, long queueTimeoutMillis,
+                                  int retryAfterSeconds, QueryMetrics queryMetrics) {
+        this.maxInFlight = maxInFlight;
+        this.maxBatchesInFlight = maxBatchesInFlight;
+        this.requests = new Semaphore(maxInFlight);
+        this.batches = new Semaphore(maxBatchesInFlight);
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.queryMetrics = queryMetrics;
+        LOG.info("Limiting OData requests in flight to {}, batches to {}, queue timeout: {} ms",
+                maxInFlight, maxBatchesInFlight, queueTimeoutMillis);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        boolean batch = request.getRequestURI().endsWith(BATCH_SUFFIX);
+        if (batch && !acquire(batches)) {
+            reject(response, "batch");
+            return;
+        }
+
+        try {
+            if (!acquire(requests)) {
+                reject(response, "request");
+                return;
+            }
+            try {
+                filterChain.doFilter(request, response);
+            } finally {
+                requests.release();
+            }
+        } finally {
+            if (batch) {
+                batches.release();
+            }
+        }
+    }
+
+    private boolean acquire(Semaphore permits) {
+        if (queueTimeoutMillis <= 0) {
+            return permits.tryAcquire();
+        }
+
+        try {
+            return permits.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void reject(HttpServletResponse response, String limit) throws IOException {
+        queryMetrics.increment("http.rejected." + limit);
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        response.setContentType("text/plain;charset=UTF-8");
+        response.getWriter().write("The service is handling too many requests, please retry later");
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("maxInFlight", maxInFlight);
+        values.put("inFlight", maxInFlight - requests.availablePermits());
+        values.put("maxBatchesInFlight", maxBatchesInFlight);
+        values.put("batchesInFlight", maxBatchesInFlight - batches.availablePermits());
+        values.put("queueTimeoutMillis", queueTimeoutMillis);
+        values.put("rejectedRequests", queryMetrics.getCount("http.rejected.request"));
+        values.put("rejectedBatches", queryMetrics.getCount("http.rejected.batch"));
+        return values;
+    }
+}
@@ -18,8 +18,15 @@ package com.sdl.odata.example.service;
 import com.google.common.collect.Lists;
 import com.sdl.odata.api.ODataException;
 import com.sdl.odata.api.edm.registry.ODataEdmRegistry;
+import com.sdl.odata.example.AggregateGroup;
+import com.sdl.odata.example.AggregateValue;
 import com.sdl.odata.example.Person;
-import com.sdl.odata.example.datasource.InMemoryDataSource;
+import com.sdl.odata.example.PersonChange;
+import com.sdl.odata.example.PersonChanges;
+import com.sdl.odata.example.datasource.EntityAccessorRegistry;
+import com.sdl.odata.example.datasource.InMemoryDataSourceProvider;
+import com.sdl.odata.example.datasource.JsonPersonLoader;
+import com.sdl.odata.example.datasource.PersonDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -39,7 +46,13 @@ public class EntityServiceRegistar {
     private ODataEdmRegistry oDataEdmRegistry;
 
     @Autowired
-    private InMemoryDataSource inMemoryDataSource;
+    private InMemoryDataSourceProvider dataSourceProvider;
+
+    @Autowired
+    private EntityAccessorRegistry entityAccessorRegistry;
+
+    @Autowired
+    private JsonPersonLoader personLoader;
 
     @PostConstruct
     public void registerEntities() throws ODataException {
@@ -47,16 +60,33 @@ public class EntityServiceRegistar {
 
         oDataEdmRegistry.registerClasses(Lists.newArrayList(
                 Person.class,
-                GetAverageAge.class
+                AggregateGroup.class,
+                AggregateValue.class,
+                PersonChange.class,
+                PersonChanges.class,
+                GetAverageAge.class,
+                AggregatePersons.class,
+                GetChanges.class
         ));
+        entityAccessorRegistry.register(Person.class);
+
+        PersonDataSource dataSource = dataSourceProvider.getPersonDataSource();
+        if (personLoader.isConfigured()) {
+            personLoader.load(dataSource);
+            return;
+        }
+
+        //A persistent storage backend keeps its persons across restarts, only an empty store is seeded
+        if (dataSource.size() > 0) {
+            LOG.debug("Data source already holds {} persons, not seeding example persons", dataSource.size());
+            return;
+        }
 
         List<Person> persons = Lists.newArrayList(
                 new Person("MyHero", "Darkwing", "Duck", 23),
                 new Person("Sidekick", "Launchpad", "McQuack", 35),
                 new Person("Waddlemeyer", "Gosalyn", "Mallard", 9));
 
-        for (Person person : persons) {
-            inMemoryDataSource.create(null, person, null);
-        }
+        dataSource.createAll(persons);
     }
 }
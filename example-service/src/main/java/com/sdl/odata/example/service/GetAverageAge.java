@@ -21,12 +21,11 @@ import com.sdl.odata.api.edm.annotations.EdmReturnType;
 import com.sdl.odata.api.edm.model.Operation;
 import com.sdl.odata.api.processor.datasource.factory.DataSourceFactory;
 import com.sdl.odata.api.service.ODataRequestContext;
-import com.sdl.odata.example.Person;
-import com.sdl.odata.example.datasource.InMemoryDataSource;
+import com.sdl.odata.example.datasource.PersonDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.ConcurrentMap;
+import java.util.OptionalDouble;
 
 /**
  * @author rdevries
@@ -40,9 +39,14 @@ public class GetAverageAge implements Operation<Double> {
     public Double doOperation(ODataRequestContext oDataRequestContext, DataSourceFactory dataSourceFactory) throws ODataException {
         LOG.debug("Executing function 'GetAverageAge'");
 
-        InMemoryDataSource dataSource = (InMemoryDataSource) dataSourceFactory.getDataSource(oDataRequestContext, "SDL.OData.Example.Person");
-        ConcurrentMap<String, Person> personConcurrentMap = dataSource.getPersonConcurrentMap();
-        Double result = personConcurrentMap.values().stream().mapToInt(Person::getAge).average().getAsDouble();
+        PersonDataSource dataSource = (PersonDataSource) dataSourceFactory.getDataSource(oDataRequestContext, "SDL.OData.Example.Person");
+        OptionalDouble averageAge = dataSource.averageAge();
+        if (!averageAge.isPresent()) {
+            LOG.debug("No persons, there is no average age");
+            return null;
+        }
+
+        Double result = averageAge.getAsDouble();
         LOG.debug("Average age: {}", result);
 
         return result;
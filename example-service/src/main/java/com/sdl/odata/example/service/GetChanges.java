@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.service;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.api.edm.annotations.EdmFunction;
+import com.sdl.odata.api.edm.annotations.EdmParameter;
+import com.sdl.odata.api.edm.annotations.EdmReturnType;
+import com.sdl.odata.api.edm.model.Operation;
+import com.sdl.odata.api.processor.datasource.factory.DataSourceFactory;
+import com.sdl.odata.api.service.ODataRequestContext;
+import com.sdl.odata.example.PersonChanges;
+import com.sdl.odata.example.datasource.PersonDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Returns the changes to persons since a delta token, so clients keep their copy in sync without reading all
+ * persons again. The framework has no $deltatoken support, the token is passed as a parameter instead; an empty
+ * token returns the token to start from:
+ * <pre>
+ *     /Persons/SDL.OData.Example.GetChanges(deltaToken='')
+ * </pre>
+ */
+@EdmFunction(name = "GetChanges", namespace = "SDL.OData.Example", isBound = true)
+@EdmReturnType(type = "SDL.OData.Example.PersonChanges")
+public class GetChanges implements Operation<PersonChanges> {
+    private static final Logger LOG = LoggerFactory.getLogger(GetChanges.class);
+
+    @EdmParameter(name = "deltaToken", nullable = false)
+    private String deltaToken;
+
+    @Override
+    public PersonChanges doOperation(ODataRequestContext oDataRequestContext, DataSourceFactory dataSourceFactory) throws ODataException {
+        LOG.debug("Executing function 'GetChanges' with: {}", deltaToken);
+
+        PersonDataSource dataSource = (PersonDataSource) dataSourceFactory.getDataSource(oDataRequestContext, "SDL.OData.Example.Person");
+        PersonChanges changes = dataSource.getChangeJournal().changesSince(deltaToken);
+        LOG.debug("Returning {} changes, next delta token: {}", changes.getChanges().size(), changes.getDeltaToken());
+
+        return changes;
+    }
+}
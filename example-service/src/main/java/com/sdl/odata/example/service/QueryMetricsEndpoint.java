@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.service;
+
+import com.sdl.odata.api.ODataException;
+import com.sdl.odata.example.datasource.InMemoryDataSourceProvider;
+import com.sdl.odata.example.datasource.PersonDataSource;
+import com.sdl.odata.example.datasource.QueryMetrics;
+import com.sdl.odata.example.datasource.QueryPlanCache;
+import com.sdl.odata.example.datasource.QueryResultCache;
+import com.sdl.odata.example.datasource.WriteAheadLog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint at '/querymetrics' exposing the metrics of the query and write paths: the timers and counters
+ * of the {@link QueryMetrics}, the hit rates of the plan and result caches, the write-ahead log, the requests in
+ * flight if their number is limited, the size of the storage backend and the change journal.
+ *
+ * The 'http.*' timers cover whole requests including parsing and rendering, the 'query.total' timer the execution
+ * of their queries, so the difference between the two is the time spent in the framework.
+ */
+@Component
+public class QueryMetricsEndpoint extends AbstractEndpoint<Map<String, Object>> {
+    private final QueryMetrics queryMetrics;
+    private final QueryPlanCache queryPlanCache;
+    private final QueryResultCache resultCache;
+    private final WriteAheadLog writeAheadLog;
+    private final InMemoryDataSourceProvider dataSourceProvider;
+
+    @Autowired(required = false)
+    private ConcurrencyLimitFilter concurrencyLimitFilter;
+
+    @Autowired
+    public QueryMetricsEndpoint(QueryMetrics queryMetrics, QueryPlanCache queryPlanCache,
+                                QueryResultCache resultCache, WriteAheadLog writeAheadLog,
+                                InMemoryDataSourceProvider dataSourceProvider) {
+        super("querymetrics");
+        this.queryMetrics = queryMetrics;
+        this.queryPlanCache = queryPlanCache;
+        this.resultCache = resultCache;
+        this.writeAheadLog = writeAheadLog;
+        this.dataSourceProvider = dataSourceProvider;
+    }
+
+    @Override
+    public Map<String, Object> invoke() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("query", queryMetrics.toMap());
+        metrics.put("planCache", queryPlanCache.toMap());
+        metrics.put("resultCache", resultCache.toMap());
+        if (writeAheadLog.isEnabled()) {
+            metrics.put("writeAheadLog", writeAheadLog.getMetrics().toMap());
+        }
+        if (concurrencyLimitFilter != null) {
+            metrics.put("concurrency", concurrencyLimitFilter.toMap());
+        }
+        metrics.put("storage", storage());
+        metrics.put("changes", dataSourceProvider.getPersonDataSource().getChangeJournal().toMap());
+        return metrics;
+    }
+
+    private Map<String, Object> storage() {
+        PersonDataSource dataSource = dataSourceProvider.getPersonDataSource();
+        Map<String, Object> storage = new LinkedHashMap<>();
+        storage.put("backend", dataSource.getClass().getSimpleName());
+        storage.put("version", dataSource.getVersion());
+        try {
+            storage.put("size", dataSource.size());
+        } catch (ODataException e) {
+            storage.put("size", "unavailable: " + e.getMessage());
+        }
+        return storage;
+    }
+}
@@ -16,17 +16,23 @@
 package com.sdl.odata.example.service;
 
 import com.sdl.odata.example.datasource.InMemoryDataSourceConfiguration;
+import com.sdl.odata.example.datasource.QueryMetrics;
 import com.sdl.odata.service.ODataServiceConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
 import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.context.embedded.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.Ordered;
 
 /**
  * @author rdevries
@@ -52,4 +58,30 @@ public class ServiceContainer {
         LOG.info("Example Service application container started");
     }
 
+    /**
+     * Back-pressure on the OData endpoint, switched on with 'odata.example.concurrency.enabled'. The number of
+     * requests in flight should stay below the thread pool of the container ('server.tomcat.max-threads', 200 by
+     * default), so the container keeps threads to answer the rejected requests and the actuator endpoints.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "odata.example.concurrency", name = "enabled", havingValue = "true")
+    public ConcurrencyLimitFilter concurrencyLimitFilter(
+            QueryMetrics queryMetrics,
+            @Value("${odata.example.concurrency.max-in-flight:100}") int maxInFlight,
+            @Value("${odata.example.concurrency.max-batches-in-flight:10}") int maxBatchesInFlight,
+            @Value("${odata.example.concurrency.queue-timeout:0}") long queueTimeoutMillis,
+            @Value("${odata.example.concurrency.retry-after:1}") int retryAfterSeconds) {
+        return new ConcurrencyLimitFilter(maxInFlight, maxBatchesInFlight, queueTimeoutMillis, retryAfterSeconds,
+                queryMetrics);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "odata.example.concurrency", name = "enabled", havingValue = "true")
+    public FilterRegistrationBean concurrencyLimitFilterRegistration(ConcurrencyLimitFilter concurrencyLimitFilter) {
+        FilterRegistrationBean registration = new FilterRegistrationBean(concurrencyLimitFilter);
+        registration.addUrlPatterns("/example.svc/*");
+        //Rejecting runs before any other filter, so a rejected request costs as little as possible
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
 }
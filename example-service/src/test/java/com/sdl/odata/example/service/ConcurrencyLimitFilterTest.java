@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2015 SDL Group
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.sdl.odata.example.service;
+
+import com.sdl.odata.example.datasource.QueryMetrics;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrencyLimitFilterTest {
+
+    private final QueryMetrics metrics = new QueryMetrics(true);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<Future<MockHttpServletResponse>> inFlight = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void rejectsRequestsBeyondTheLimitWithRetryAfter() throws Exception {
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(2, 1, 0, 3, metrics);
+        block(filter, "/example.svc/Persons", 2);
+
+        MockHttpServletResponse rejected = filter(filter, "/example.svc/Persons", new MockFilterChain());
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, rejected.getStatus());
+        assertEquals("3", rejected.getHeader("Retry-After"));
+        assertEquals(1, metrics.getCount("http.rejected.request"));
+        assertEquals(2, filter.toMap().get("inFlight"));
+
+        finish();
+        assertEquals(HttpServletResponse.SC_OK,
+                filter(filter, "/example.svc/Persons", new MockFilterChain()).getStatus());
+        assertEquals(0, filter.toMap().get("inFlight"));
+    }
+
+    @Test
+    public void limitsBatchesSeparately() throws Exception {
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(3, 1, 0, 1, metrics);
+        block(filter, "/example.svc/$batch", 1);
+
+        MockHttpServletResponse rejected = filter(filter, "/example.svc/$batch", new MockFilterChain());
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+        assertEquals(1, metrics.getCount("http.rejected.batch"));
+        assertEquals(0, metrics.getCount("http.rejected.request"));
+
+        //Other requests are still admitted while the batch limit is reached
+        assertEquals(HttpServletResponse.SC_OK,
+                filter(filter, "/example.svc/Persons", new MockFilterChain()).getStatus());
+
+        finish();
+        assertEquals(HttpServletResponse.SC_OK,
+                filter(filter, "/example.svc/$batch", new MockFilterChain()).getStatus());
+        assertEquals(0, filter.toMap().get("batchesInFlight"));
+    }
+
+    /**
+     * Starts the given number of requests whose handling blocks until {@link #finish()}, and waits until all of them
+     * have been admitted.
+     */
+    private void block(ConcurrencyLimitFilter filter, String uri, int requests) throws InterruptedException {
+        CountDownLatch admitted = new CountDownLatch(requests);
+        FilterChain blocking = (request, response) -> {
+            admitted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        for (int i = 0; i < requests; i++) {
+            inFlight.add(executor.submit(() -> filter(filter, uri, blocking)));
+        }
+        assertTrue(admitted.await(10, TimeUnit.SECONDS));
+    }
+
+    private void finish() throws Exception {
+        release.countDown();
+        for (Future<MockHttpServletResponse> response : inFlight) {
+            assertEquals(HttpServletResponse.SC_OK, response.get(10, TimeUnit.SECONDS).getStatus());
+        }
+    }
+
+    private static MockHttpServletResponse filter(ConcurrencyLimitFilter filter, String uri, FilterChain chain)
+            throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}